@@ -0,0 +1,97 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+import org.spongepowered.api.entity.living.player.User;
+
+import io.github.rm2023.rbounty.RBountyData;
+
+/**
+ * Reads and writes of single bounties through {@link RBountyData}, including
+ * the cache, leaderboard and playerdata work each one does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BountyDataBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    public int players;
+
+    @Param({ "false", "true" })
+    public boolean writeBehind;
+
+    private StandInUsers users;
+    private RBountyData data;
+
+    @Setup
+    public void setup() {
+	users = new StandInUsers(players, 0.1, 42);
+	data = new RBountyData(NOPLogger.NOP_LOGGER, users.getService(), null, false, writeBehind);
+	data.load(null, 1, 500);
+    }
+
+    private User randomUser() {
+	return users.getUser(ThreadLocalRandom.current().nextInt(players));
+    }
+
+    @Benchmark
+    public int getBounty() {
+	return data.getBounty(randomUser());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int getBountyContended() {
+	return data.getBounty(randomUser());
+    }
+
+    @Benchmark
+    public boolean setBounty() {
+	return data.setBounty(randomUser(), ThreadLocalRandom.current().nextInt(100000));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean setBountyContended() {
+	return data.setBounty(randomUser(), ThreadLocalRandom.current().nextInt(100000));
+    }
+
+    @Benchmark
+    public int addBounty() {
+	return data.addBounty(randomUser(), 1);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,93 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.rm2023.rbounty.data.BountyData;
+import io.github.rm2023.rbounty.data.ImmBountyData;
+
+/**
+ * Creating bounty data manipulators and their values, the way Sponge does on
+ * every offer and respawn. Run with -prof gc to see the bytes each operation
+ * allocates (gc.alloc.rate.norm). The eager benchmark makes an immutable
+ * manipulator the way it was made before pooling, for comparison.
+ *
+ * Bounties are drawn from a mix that is mostly 0 and round amounts, like a
+ * server where most players have no bounty.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BountyValueBenchmark {
+    private final int[] amounts = new int[1024];
+    private int next;
+    private BountyData data;
+
+    @Setup
+    public void setup() {
+	StandInRegistry.install();
+	Random random = new Random(42);
+	for (int i = 0; i < amounts.length; i++) {
+	    double kind = random.nextDouble();
+	    amounts[i] = kind < 0.6 ? 0 : kind < 0.9 ? 100 * (1 + random.nextInt(1000)) : 1 + random.nextInt(100000);
+	}
+	data = new BountyData(amounts[0]);
+    }
+
+    private int nextAmount() {
+	next = (next + 1) & (amounts.length - 1);
+	return amounts[next];
+    }
+
+    @Benchmark
+    public Object eagerImmutable() {
+	ImmBountyData immutable = new ImmBountyData(nextAmount());
+	return immutable.getValueGetter();
+    }
+
+    @Benchmark
+    public Object pooledImmutable() {
+	return ImmBountyData.of(nextAmount()).getValueGetter();
+    }
+
+    /**
+     * A bounty set on a mutable manipulator and handed over as an immutable one,
+     * as an offer does.
+     */
+    @Benchmark
+    public Object transfer() {
+	data.setValue(nextAmount());
+	return data.asImmutable().getValueGetter();
+    }
+}
\ No newline at end of file
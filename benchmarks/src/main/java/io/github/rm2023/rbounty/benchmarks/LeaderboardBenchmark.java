@@ -0,0 +1,100 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.github.rm2023.rbounty.BountyLeaderboard;
+import io.github.rm2023.rbounty.UuidIntMap;
+
+/**
+ * The leaderboard on its own, where every player has a bounty. A full rebuild
+ * is what every leaderboard view used to cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LeaderboardBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    public int players;
+
+    private UUID[] uuids;
+    private UuidIntMap bounties;
+    private BountyLeaderboard leaderboard;
+
+    @Setup
+    public void setup() {
+	Random random = new Random(42);
+	uuids = new UUID[players];
+	bounties = new UuidIntMap(players);
+	for (int i = 0; i < players; i++) {
+	    uuids[i] = new UUID(random.nextLong(), random.nextLong());
+	    bounties.put(uuids[i], 1 + random.nextInt(100000));
+	}
+	leaderboard = new BountyLeaderboard();
+	leaderboard.rebuild(bounties);
+    }
+
+    @Benchmark
+    public BountyLeaderboard rebuild() {
+	BountyLeaderboard rebuilt = new BountyLeaderboard();
+	rebuilt.rebuild(bounties);
+	return rebuilt;
+    }
+
+    @Benchmark
+    public List<Entry<UUID, Integer>> firstPage() {
+	return leaderboard.page(0, 10);
+    }
+
+    @Benchmark
+    public List<Entry<UUID, Integer>> middlePage() {
+	return leaderboard.page(players / 2, players / 2 + 10);
+    }
+
+    @Benchmark
+    public int rank() {
+	return leaderboard.rank(uuids[ThreadLocalRandom.current().nextInt(players)]);
+    }
+
+    @Benchmark
+    public void update() {
+	ThreadLocalRandom random = ThreadLocalRandom.current();
+	leaderboard.update(uuids[random.nextInt(players)], 1 + random.nextInt(100000));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+import org.spongepowered.api.text.Text;
+
+import io.github.rm2023.rbounty.LeaderboardRenderer;
+import io.github.rm2023.rbounty.RBountyData;
+
+/**
+ * Rendering leaderboard pages for /bounty top, with and without the page cache.
+ * The churn benchmark changes a random bounty before every view, so it shows
+ * the cache under a steady stream of bounty changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LeaderboardRenderBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    public int players;
+
+    private StandInUsers users;
+    private RBountyData data;
+    private LeaderboardRenderer renderer;
+
+    @Setup
+    public void setup() {
+	users = new StandInUsers(players, 0.1, 42);
+	data = new RBountyData(NOPLogger.NOP_LOGGER, users.getService(), null, false, true);
+	data.load(null, 1, 500);
+	renderer = new LeaderboardRenderer(data, users.createNameCache(data, 10000), amount -> "$" + amount);
+    }
+
+    @Benchmark
+    public Text firstPageUncached() {
+	return renderer.renderUncached(0, 10, false);
+    }
+
+    @Benchmark
+    public Text firstPageCached() {
+	return renderer.render(0, 10, false);
+    }
+
+    @Benchmark
+    public Text lastPageCached() {
+	int start = Math.max(0, data.getLeaderboardSize() - 10);
+	return renderer.render(start, start + 10, false);
+    }
+
+    @Benchmark
+    public Text firstPageCachedWithChurn() {
+	ThreadLocalRandom random = ThreadLocalRandom.current();
+	data.setBounty(users.getUser(random.nextInt(players)), random.nextInt(100000));
+	return renderer.render(0, 10, false);
+    }
+}
\ No newline at end of file
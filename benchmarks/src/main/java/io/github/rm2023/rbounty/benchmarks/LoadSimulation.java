@@ -0,0 +1,144 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import io.github.rm2023.rbounty.LatencyRecorder;
+import io.github.rm2023.rbounty.benchmarks.TrafficEvent.Type;
+
+/**
+ * Drives RBountyPlugin on a {@link SimulatedServer} with a synthetic workload or a recorded trace
+ * and reports throughput, tail latency and allocation rate.
+ *
+ * Options are given as --name=value:
+ * <ul>
+ * <li>players (100000), onlinePlayers (200)</li>
+ * <li>seconds (30), rate (2000 events per second) and mix (40,20,25,5,10 for
+ * add, death, top, topOnline and view) for synthetic workloads</li>
+ * <li>burstSize (200) and burstInterval (5 seconds) for mass PvP deaths</li>
+ * <li>trace, a trace file to replay instead, and record, a file to write the
+ * events to</li>
+ * <li>speed (1.0), how fast to replay, or 0 to send every event at once</li>
+ * <li>economyLatency (5ms), asyncThreads (8) and flushInterval (5 seconds, 0
+ * for no write-behind)</li>
+ * </ul>
+ */
+public class LoadSimulation {
+    public static void main(String[] args) throws Exception {
+	Map<String, String> options = new HashMap<String, String>();
+	for (String arg : args) {
+	    int split = arg.indexOf('=');
+	    if (!arg.startsWith("--") || split < 0) {
+		System.err.println("Options must be given as --name=value, not " + arg);
+		System.exit(1);
+	    }
+	    options.put(arg.substring(2, split), arg.substring(split + 1));
+	}
+	int players = Integer.parseInt(options.getOrDefault("players", "100000"));
+	double speed = Double.parseDouble(options.getOrDefault("speed", "1.0"));
+
+	List<TrafficEvent> events;
+	if (options.containsKey("trace")) {
+	    events = TrafficTrace.read(Paths.get(options.get("trace")));
+	} else {
+	    String[] weights = options.getOrDefault("mix", "40,20,25,5,10").split(",");
+	    int[] mix = new int[Type.values().length];
+	    for (int i = 0; i < mix.length && i < weights.length; i++) {
+		mix[i] = Integer.parseInt(weights[i].trim());
+	    }
+	    events = TrafficTrace.synthetic(players, Integer.parseInt(options.getOrDefault("seconds", "30")),
+		    Integer.parseInt(options.getOrDefault("rate", "2000")), mix,
+		    Integer.parseInt(options.getOrDefault("burstSize", "200")),
+		    Integer.parseInt(options.getOrDefault("burstInterval", "5")), 42);
+	}
+	if (options.containsKey("record")) {
+	    TrafficTrace.write(events, Paths.get(options.get("record")));
+	}
+
+	System.out.println("Starting " + players + " players for " + events.size() + " events.");
+	SimulatedServer server = new SimulatedServer(players,
+		Integer.parseInt(options.getOrDefault("onlinePlayers", "200")),
+		Long.parseLong(options.getOrDefault("economyLatency", "5")),
+		Integer.parseInt(options.getOrDefault("asyncThreads", "8")),
+		Integer.parseInt(options.getOrDefault("flushInterval", "5")));
+
+	CountDownLatch done = new CountDownLatch(events.size());
+	long allocatedBefore = allocatedBytes();
+	long start = System.nanoTime();
+	for (TrafficEvent event : events) {
+	    if (speed > 0) {
+		long wait = start + (long) (event.getOffsetMillis() * 1_000_000 / speed) - System.nanoTime();
+		if (wait > 0) {
+		    LockSupport.parkNanos(wait);
+		}
+	    }
+	    server.submit(event).whenComplete((result, error) -> done.countDown());
+	}
+	done.await();
+	double seconds = (System.nanoTime() - start) / 1e9;
+	long allocated = allocatedBytes() - allocatedBefore;
+	server.close();
+
+	System.out.printf("Handled %d events in %.2fs (%.0f events/s), %d failed.%n", events.size(), seconds,
+		events.size() / seconds, server.getFailures());
+	System.out.printf("%-14s %9s %9s %9s %9s %9s %9s%n", "latency (ms)", "count", "avg", "p50", "p99", "p99.9",
+		"max");
+	for (Type type : Type.values()) {
+	    print(server.getLatency(type));
+	}
+	print(server.getServerThreadTime());
+	print(server.getMetrics().getDeathEventLatency());
+	print(server.getPipeline().getWithdrawLatency());
+	print(server.getPipeline().getDepositLatency());
+	print(server.getData().getFlushLatency());
+	System.out.printf("Allocated %.1fMB (%.1fMB/s).%n", allocated / 1e6, allocated / 1e6 / seconds);
+    }
+
+    private static void print(LatencyRecorder latency) {
+	if (latency.getCount() == 0) {
+	    return;
+	}
+	System.out.printf("%-14s %9d %9.3f %9.3f %9.3f %9.3f %9.3f%n", latency.getName(), latency.getCount(),
+		latency.getAverageMillis(), latency.getPercentileMillis(50), latency.getPercentileMillis(99),
+		latency.getPercentileMillis(99.9), latency.getMaxMillis());
+    }
+
+    /**
+     * @return the bytes allocated so far by every live thread, or 0 if the JVM
+     *         doesn't track it
+     */
+    private static long allocatedBytes() {
+	if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+	    return 0;
+	}
+	com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+		.getThreadMXBean();
+	long total = 0;
+	for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+	    total += Math.max(0, allocated);
+	}
+	return total;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.github.rm2023.rbounty.economy.EconomyBackend;
+import io.github.rm2023.rbounty.economy.EconomyPipeline.Status;
+
+/**
+ * An in-memory {@link EconomyBackend} that stands in for an economy plugin in
+ * the simulations. Every player starts with the same balance, and every call
+ * can be delayed to act like a remote, database backed economy.
+ */
+public class LocalEconomyBackend implements EconomyBackend {
+    private final ConcurrentHashMap<UUID, BigDecimal> balances = new ConcurrentHashMap<UUID, BigDecimal>();
+    private final BigDecimal startingBalance;
+    private final long latencyMillis;
+
+    /**
+     * @param startingBalance the balance of a player's account when first used
+     * @param latencyMillis   how long every call blocks for
+     */
+    public LocalEconomyBackend(BigDecimal startingBalance, long latencyMillis) {
+	this.startingBalance = startingBalance;
+	this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public Status withdraw(UUID player, BigDecimal amount, Object... cause) {
+	simulateLatency();
+	boolean[] paid = { false };
+	balances.compute(player, (uuid, balance) -> {
+	    BigDecimal current = balance == null ? startingBalance : balance;
+	    if (current.compareTo(amount) < 0) {
+		return current;
+	    }
+	    paid[0] = true;
+	    return current.subtract(amount);
+	});
+	return paid[0] ? Status.SUCCESS : Status.NOT_ENOUGH_MONEY;
+    }
+
+    @Override
+    public boolean deposit(UUID player, BigDecimal amount, Object... cause) {
+	simulateLatency();
+	balances.merge(player, startingBalance.add(amount), (balance, ignored) -> balance.add(amount));
+	return true;
+    }
+
+    @Override
+    public String format(BigDecimal amount) {
+	return "$" + amount.toPlainString();
+    }
+
+    /**
+     * @return a player's balance, which is the starting balance until it is used
+     */
+    public BigDecimal getBalance(UUID player) {
+	return balances.getOrDefault(player, startingBalance);
+    }
+
+    private void simulateLatency() {
+	if (latencyMillis <= 0) {
+	    return;
+	}
+	try {
+	    TimeUnit.MILLISECONDS.sleep(latencyMillis);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+}
\ No newline at end of file
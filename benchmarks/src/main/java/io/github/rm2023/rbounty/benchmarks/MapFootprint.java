@@ -0,0 +1,117 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import io.github.rm2023.rbounty.UuidIntMap;
+
+/**
+ * Measures how much heap the bounty cache's {@link UuidIntMap} retains next to
+ * a HashMap&lt;UUID, Integer&gt; holding the same bounties. Each map is filled
+ * with random players and bounties, and its size is the heap used after a full
+ * collection with the map alive, less the heap used before it was built. The
+ * median of several runs is reported.
+ *
+ * Options are given as --name=value: sizes (100000,1000000), runs (5) and seed
+ * (42). Numbers are steadiest with a fixed heap and a single collector, such as
+ * -Xms2g -Xmx2g -XX:+UseSerialGC.
+ */
+public class MapFootprint {
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    // Keeps the map being measured reachable until its size is read
+    private static Object retained;
+
+    public static void main(String[] args) {
+	Map<String, String> options = new HashMap<String, String>();
+	for (String arg : args) {
+	    int split = arg.indexOf('=');
+	    if (!arg.startsWith("--") || split < 0) {
+		System.err.println("Options must be given as --name=value, not " + arg);
+		System.exit(1);
+	    }
+	    options.put(arg.substring(2, split), arg.substring(split + 1));
+	}
+	int runs = Integer.parseInt(options.getOrDefault("runs", "5"));
+	long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+
+	System.out.printf("%-10s %16s %9s %16s %9s %7s%n", "entries", "UuidIntMap (B)", "per entry", "HashMap (B)",
+		"per entry", "ratio");
+	for (String option : options.getOrDefault("sizes", "100000,1000000").split(",")) {
+	    int size = Integer.parseInt(option.trim());
+	    long compact = median(runs, () -> {
+		Random random = new Random(seed);
+		UuidIntMap map = new UuidIntMap();
+		for (int i = 0; i < size; i++) {
+		    map.put(random.nextLong(), random.nextLong(), 1 + random.nextInt(1000000));
+		}
+		return map;
+	    });
+	    long boxed = median(runs, () -> {
+		Random random = new Random(seed);
+		Map<UUID, Integer> map = new HashMap<UUID, Integer>();
+		for (int i = 0; i < size; i++) {
+		    map.put(new UUID(random.nextLong(), random.nextLong()), 1 + random.nextInt(1000000));
+		}
+		return map;
+	    });
+	    System.out.printf("%-10d %16d %9.1f %16d %9.1f %6.1fx%n", size, compact, (double) compact / size, boxed,
+		    (double) boxed / size, (double) boxed / compact);
+	}
+    }
+
+    /**
+     * @return the median number of bytes retained by what the builder returns
+     */
+    private static long median(int runs, Supplier<Object> builder) {
+	long[] sizes = new long[runs];
+	for (int i = 0; i < runs; i++) {
+	    long before = usedAfterGc();
+	    retained = builder.get();
+	    sizes[i] = usedAfterGc() - before;
+	    retained = null;
+	}
+	Arrays.sort(sizes);
+	return sizes[runs / 2];
+    }
+
+    /**
+     * Collects until the used heap stops shrinking, so only live objects are
+     * counted.
+     */
+    private static long usedAfterGc() {
+	long used = Long.MAX_VALUE;
+	for (int i = 0; i < 10; i++) {
+	    MEMORY.gc();
+	    long now = MEMORY.getHeapMemoryUsage().getUsed();
+	    if (now >= used) {
+		return now;
+	    }
+	    used = now;
+	}
+	return used;
+    }
+}
\ No newline at end of file
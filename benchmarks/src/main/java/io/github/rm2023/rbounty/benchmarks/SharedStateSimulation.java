@@ -0,0 +1,144 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.slf4j.helpers.NOPLogger;
+import org.spongepowered.api.entity.living.player.User;
+
+import io.github.rm2023.rbounty.RBountyData;
+import io.github.rm2023.rbounty.storage.SqlBountyStorage;
+
+/**
+ * Runs several RBounty data layers in one JVM on a shared in-memory H2
+ * database, the way several servers behind a proxy share one database with
+ * sharedState enabled. Every server adds to and claims the bounties of a small
+ * set of players at once, then the run checks that no bounty was paid out
+ * twice and that every server's cache ended up the same.
+ *
+ * Options are given as --name=value: servers (3), threads (4 per server),
+ * players (50), seconds (10) and pollInterval (100ms).
+ */
+public class SharedStateSimulation {
+    public static void main(String[] args) throws Exception {
+	Map<String, String> options = new HashMap<String, String>();
+	for (String arg : args) {
+	    int split = arg.indexOf('=');
+	    if (!arg.startsWith("--") || split < 0) {
+		System.err.println("Options must be given as --name=value, not " + arg);
+		System.exit(1);
+	    }
+	    options.put(arg.substring(2, split), arg.substring(split + 1));
+	}
+	int serverCount = Integer.parseInt(options.getOrDefault("servers", "3"));
+	int threads = Integer.parseInt(options.getOrDefault("threads", "4"));
+	int players = Integer.parseInt(options.getOrDefault("players", "50"));
+	int seconds = Integer.parseInt(options.getOrDefault("seconds", "10"));
+	int pollInterval = Integer.parseInt(options.getOrDefault("pollInterval", "100"));
+
+	JdbcDataSource dataSource = new JdbcDataSource();
+	dataSource.setURL("jdbc:h2:mem:rbounty-shared;DB_CLOSE_DELAY=-1");
+	StandInUsers users = new StandInUsers(players, 0, 42);
+	List<RBountyData> servers = new ArrayList<RBountyData>();
+	for (int i = 0; i < serverCount; i++) {
+	    SqlBountyStorage storage = new SqlBountyStorage(dataSource, NOPLogger.NOP_LOGGER, false, true);
+	    storage.createSchema();
+	    RBountyData data = new RBountyData(NOPLogger.NOP_LOGGER, users.getService(), storage, null, false, false);
+	    data.load(null, 1, 500);
+	    servers.add(data);
+	}
+
+	ScheduledExecutorService pollers = Executors.newScheduledThreadPool(serverCount);
+	for (RBountyData data : servers) {
+	    pollers.scheduleWithFixedDelay(data::pollChanges, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+	}
+	AtomicLong placed = new AtomicLong();
+	AtomicLong paid = new AtomicLong();
+	AtomicLong adds = new AtomicLong();
+	AtomicLong claims = new AtomicLong();
+	long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+	ExecutorService workers = Executors.newFixedThreadPool(serverCount * threads);
+	for (RBountyData data : servers) {
+	    for (int i = 0; i < threads; i++) {
+		workers.execute(() -> {
+		    ThreadLocalRandom random = ThreadLocalRandom.current();
+		    while (System.nanoTime() < end) {
+			User user = users.getUser(random.nextInt(players));
+			if (random.nextInt(10) < 7) {
+			    int amount = 1 + random.nextInt(100);
+			    if (data.addBounty(user, amount) >= 0) {
+				placed.addAndGet(amount);
+				adds.incrementAndGet();
+			    }
+			} else {
+			    int claimed = data.claimBounty(user);
+			    if (claimed > 0) {
+				paid.addAndGet(claimed);
+				claims.incrementAndGet();
+			    }
+			}
+		    }
+		});
+	    }
+	}
+	workers.shutdown();
+	workers.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+	pollers.shutdown();
+	pollers.awaitTermination(10, TimeUnit.SECONDS);
+
+	long polled = 0;
+	for (RBountyData data : servers) {
+	    data.pollChanges();
+	    polled += data.getPolledChanges();
+	}
+	int mismatches = 0;
+	long outstanding = 0;
+	for (int i = 0; i < players; i++) {
+	    User user = users.getUser(i);
+	    int bounty = servers.get(0).getBounty(user);
+	    for (RBountyData data : servers) {
+		if (data.getBounty(user) != bounty) {
+		    mismatches++;
+		}
+	    }
+	    outstanding += servers.get(0).claimBounty(user);
+	}
+
+	System.out.printf("%d servers made %d adds and %d claims in %ds (%d changes polled).%n", serverCount,
+		adds.get(), claims.get(), seconds, polled);
+	System.out.printf("Placed %d, paid %d, %d still outstanding.%n", placed.get(), paid.get(), outstanding);
+	System.out.println(placed.get() == paid.get() + outstanding ? "Every bounty was paid out exactly once."
+		: "Bounties were paid out more or less than once!");
+	System.out.println(mismatches == 0 ? "Every server's cache matches."
+		: mismatches + " cached bounties differ between servers!");
+	if (placed.get() != paid.get() + outstanding || mismatches != 0) {
+	    System.exit(1);
+	}
+    }
+}
\ No newline at end of file
@@ -0,0 +1,278 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandExecutor;
+import org.spongepowered.api.command.spec.CommandSpec;
+import org.spongepowered.api.entity.living.player.Player;
+
+import com.google.inject.Inject;
+
+import io.github.rm2023.rbounty.LatencyRecorder;
+import io.github.rm2023.rbounty.RBountyData;
+import io.github.rm2023.rbounty.RBountyMetrics;
+import io.github.rm2023.rbounty.RBountyPlugin;
+import io.github.rm2023.rbounty.benchmarks.TrafficEvent.Type;
+import io.github.rm2023.rbounty.economy.EconomyPipeline;
+
+/**
+ * RBountyPlugin started on a {@link StandInGame}, with an in-memory economy and
+ * playerdata storage. Deaths are sent to its death listener and commands to
+ * its command executors, so the claim guard, ledger, expiry, rate limiter and
+ * broadcaster all take part as they would on a server.
+ */
+public class SimulatedServer implements AutoCloseable {
+    private final StandInUsers users;
+    private final StandInGame game;
+    private final RBountyPlugin plugin;
+    private final Path configDir;
+    private final CommandExecutor add;
+    private final CommandExecutor top;
+    private final CommandExecutor topOnline;
+    private final CommandExecutor view;
+
+    private final Map<Type, LatencyRecorder> latencies = new EnumMap<Type, LatencyRecorder>(Type.class);
+    private final LatencyRecorder serverThreadTime = new LatencyRecorder("server thread");
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * @param players        the number of players
+     * @param onlinePlayers  how many of them are online
+     * @param economyLatency how long every economy call blocks for, in ms
+     * @param asyncThreads   the size of the async scheduler pool
+     * @param flushInterval  the seconds between write-behind flushes, or 0 to
+     *                       write playerdata on every change
+     */
+    public SimulatedServer(int players, int onlinePlayers, long economyLatency, int asyncThreads,
+	    int flushInterval) throws Exception {
+	users = new StandInUsers(players, 0.1, 42);
+	game = new StandInGame(users.getService(), users.setOnline(Math.min(players, onlinePlayers)),
+		new LocalEconomyBackend(BigDecimal.valueOf(1000000000), economyLatency), asyncThreads);
+	configDir = Files.createTempDirectory("rbounty-simulation");
+	// Bounties are loaded before the first event, as after a finished hydration
+	Files.write(configDir.resolve("rbounty.conf"),
+		Arrays.asList("asyncHydration = false", "snapshots = false", "writeBehind = " + (flushInterval > 0),
+			"writeBehindInterval = " + Math.max(1, flushInterval)));
+	plugin = new RBountyPlugin();
+	inject(countingLogger(errors), configDir, game.getGame(), game.getPluginContainer());
+	add = executor("bountyAdd");
+	top = executor("bountyTop");
+	topOnline = executor("bountyTopOnline");
+	view = executor("bountyView");
+	game.runOnServerThread(() -> {
+	    plugin.onReload(null);
+	    plugin.onServerStarted(null);
+	});
+	for (Type type : Type.values()) {
+	    latencies.put(type, new LatencyRecorder(type.name().toLowerCase()));
+	}
+    }
+
+    /**
+     * Sets the plugin's injected fields the way Sponge would.
+     */
+    private void inject(Object... values) throws IllegalAccessException {
+	for (Field field : RBountyPlugin.class.getDeclaredFields()) {
+	    if (!field.isAnnotationPresent(Inject.class)) {
+		continue;
+	    }
+	    for (Object value : values) {
+		if (field.getType().isInstance(value)) {
+		    field.setAccessible(true);
+		    field.set(plugin, value);
+		}
+	    }
+	}
+    }
+
+    private CommandExecutor executor(String spec) throws ReflectiveOperationException {
+	Field field = RBountyPlugin.class.getDeclaredField(spec);
+	field.setAccessible(true);
+	return ((CommandSpec) field.get(plugin)).getExecutor();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T component(Class<T> type) {
+	try {
+	    for (Field field : RBountyPlugin.class.getDeclaredFields()) {
+		if (field.getType() == type) {
+		    field.setAccessible(true);
+		    return (T) field.get(plugin);
+		}
+	    }
+	} catch (IllegalAccessException e) {
+	    throw new IllegalStateException(e);
+	}
+	throw new IllegalArgumentException("RBountyPlugin has no " + type.getSimpleName());
+    }
+
+    /**
+     * Queues an event on the server thread.
+     *
+     * @return a future completed once the event has been fully handled,
+     *         including any economy calls it made
+     */
+    public CompletableFuture<Void> submit(TrafficEvent event) {
+	long submitted = System.nanoTime();
+	Player player = user(event.getPlayer());
+	Player target = user(event.getTarget());
+	return game.handle(() -> {
+	    long start = System.nanoTime();
+	    try {
+		handle(event.getType(), player, target, event.getAmount());
+	    } finally {
+		serverThreadTime.recordSince(start);
+	    }
+	}).whenComplete((result, error) -> latencies.get(event.getType()).recordSince(submitted));
+    }
+
+    private void handle(Type type, Player player, Player target, int amount) {
+	CommandContext args = new CommandContext();
+	switch (type) {
+	case ADD:
+	    args.putArg("user", target);
+	    args.putArg("bounty", amount);
+	    execute(add, player, args);
+	    break;
+	case DEATH:
+	    plugin.onEntityDeath(game.death(target, player));
+	    break;
+	case TOP:
+	case TOP_ONLINE:
+	    args.putArg("page", Math.max(1, amount));
+	    execute(type == Type.TOP ? top : topOnline, player, args);
+	    break;
+	case VIEW:
+	    args.putArg("user", target);
+	    execute(view, player, args);
+	    break;
+	}
+    }
+
+    private static void execute(CommandExecutor executor, Player src, CommandContext args) {
+	try {
+	    executor.execute(src, args);
+	} catch (CommandException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    private Player user(int index) {
+	return users.getUser(Math.floorMod(index, users.size()));
+    }
+
+    /**
+     * @return the time from submitting an event of the given type until it was
+     *         fully handled
+     */
+    public LatencyRecorder getLatency(Type type) {
+	return latencies.get(type);
+    }
+
+    /**
+     * @return the time the server thread spent on each event, not counting the
+     *         work it queued
+     */
+    public LatencyRecorder getServerThreadTime() {
+	return serverThreadTime;
+    }
+
+    public EconomyPipeline getPipeline() {
+	return component(EconomyPipeline.class);
+    }
+
+    public RBountyData getData() {
+	return component(RBountyData.class);
+    }
+
+    public RBountyMetrics getMetrics() {
+	return component(RBountyMetrics.class);
+    }
+
+    /**
+     * @return how many events threw an exception or made the plugin log an error
+     */
+    public long getFailures() {
+	return game.getFailures() + errors.get();
+    }
+
+    /**
+     * Stops the plugin on the server thread, which flushes queued writes, then
+     * stops every thread and deletes the plugin's files.
+     */
+    @Override
+    public void close() throws Exception {
+	game.runOnServerThread(() -> plugin.onServerStopping(null));
+	game.close();
+	try (Stream<Path> files = Files.walk(configDir)) {
+	    files.sorted(Comparator.reverseOrder()).forEach(file -> {
+		try {
+		    Files.delete(file);
+		} catch (IOException e) {
+		    throw new IllegalStateException(e);
+		}
+	    });
+	}
+    }
+
+    /**
+     * A logger that drops every message, only counting errors.
+     */
+    private static Logger countingLogger(AtomicLong errors) {
+	InvocationHandler handler = (proxy, method, args) -> {
+	    if (method.getName().equals("equals")) {
+		return proxy == args[0];
+	    }
+	    if (method.getReturnType() == boolean.class) {
+		return method.getName().equals("isErrorEnabled");
+	    }
+	    switch (method.getName()) {
+	    case "error":
+		errors.incrementAndGet();
+		return null;
+	    case "getName":
+		return "RBounty";
+	    case "hashCode":
+		return System.identityHashCode(proxy);
+	    case "toString":
+		return "RBounty";
+	    }
+	    return null;
+	};
+	return (Logger) Proxy.newProxyInstance(SimulatedServer.class.getClassLoader(), new Class<?>[] { Logger.class },
+		handler);
+    }
+}
\ No newline at end of file
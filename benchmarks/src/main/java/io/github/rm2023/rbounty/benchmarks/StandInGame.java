@@ -0,0 +1,444 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.spongepowered.api.Game;
+import org.spongepowered.api.Server;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.entity.living.Living;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.EventManager;
+import org.spongepowered.api.event.cause.Cause;
+import org.spongepowered.api.event.cause.EventContext;
+import org.spongepowered.api.event.entity.DestructEntityEvent;
+import org.spongepowered.api.plugin.PluginContainer;
+import org.spongepowered.api.profile.GameProfileCache;
+import org.spongepowered.api.profile.GameProfileManager;
+import org.spongepowered.api.scheduler.Scheduler;
+import org.spongepowered.api.scheduler.SpongeExecutorService;
+import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.service.ServiceManager;
+import org.spongepowered.api.service.economy.Currency;
+import org.spongepowered.api.service.economy.EconomyService;
+import org.spongepowered.api.service.economy.account.UniqueAccount;
+import org.spongepowered.api.service.economy.transaction.ResultType;
+import org.spongepowered.api.service.economy.transaction.TransactionResult;
+import org.spongepowered.api.service.user.UserStorageService;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.channel.MessageChannel;
+
+import io.github.rm2023.rbounty.economy.EconomyPipeline.Status;
+
+/**
+ * A stand-in Sponge game, built from dynamic proxies so RBountyPlugin itself
+ * runs on a plain JVM. A single thread plays the server thread, scheduled
+ * tasks run on it or on an async pool, the only services are the stand-in user
+ * storage and an economy over a {@link LocalEconomyBackend}, and broadcasts are
+ * dropped.
+ *
+ * Work the plugin queues on its executors is traced back to the event or
+ * command that queued it, so {@link #handle} can tell when one has been fully
+ * handled. Only the calls RBountyPlugin makes are supported.
+ */
+public class StandInGame implements AutoCloseable {
+    private static final long TICK_MILLIS = 50;
+
+    /**
+     * One event or command and the work it queued that hasn't run yet.
+     */
+    private static final class Handling {
+	final AtomicInteger pending = new AtomicInteger(1);
+	final CompletableFuture<Void> done = new CompletableFuture<Void>();
+
+	void finish() {
+	    if (pending.decrementAndGet() == 0) {
+		done.complete(null);
+	    }
+	}
+    }
+
+    private final ExecutorService serverThread;
+    private final ExecutorService asyncPool;
+    private final ScheduledExecutorService timer;
+    private final ThreadLocal<Handling> handling = new ThreadLocal<Handling>();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile Thread mainThread;
+    private final Game game;
+    private final PluginContainer container;
+
+    /**
+     * @param users         the user storage the plugin is given
+     * @param onlinePlayers the players already online when the plugin starts
+     * @param economy       the balances the economy service keeps
+     * @param asyncThreads  the size of the async scheduler pool
+     */
+    public StandInGame(UserStorageService users, Collection<Player> onlinePlayers, LocalEconomyBackend economy,
+	    int asyncThreads) {
+	// Daemons, so a plugin that fails to start doesn't keep the JVM running
+	serverThread = Executors.newSingleThreadExecutor(runnable -> {
+	    mainThread = daemon(runnable, "Server thread");
+	    return mainThread;
+	});
+	asyncPool = Executors.newFixedThreadPool(asyncThreads, runnable -> daemon(runnable, "Async thread"));
+	timer = Executors.newSingleThreadScheduledExecutor(runnable -> daemon(runnable, "Scheduler"));
+	Scheduler scheduler = proxy(Scheduler.class, (proxy, method, args) -> {
+	    switch (method.getName()) {
+	    case "createTaskBuilder":
+		return taskBuilder();
+	    case "createSyncExecutor":
+		return executor(serverThread);
+	    case "createAsyncExecutor":
+		return executor(asyncPool);
+	    case "isMainThread":
+		return Thread.currentThread() == mainThread;
+	    }
+	    return objectMethod(proxy, method.getName(), args, "Scheduler");
+	});
+	EconomyService economyService = economyService(economy);
+	ServiceManager services = proxy(ServiceManager.class, (proxy, method, args) -> {
+	    if (method.getName().equals("provide")) {
+		if (args[0] == UserStorageService.class) {
+		    return Optional.of(users);
+		}
+		return args[0] == EconomyService.class ? Optional.of(economyService) : Optional.empty();
+	    }
+	    return objectMethod(proxy, method.getName(), args, "ServiceManager");
+	});
+	GameProfileCache profiles = proxy(GameProfileCache.class, (proxy, method, args) -> {
+	    if (method.getName().equals("getById")) {
+		return Optional.empty();
+	    }
+	    return objectMethod(proxy, method.getName(), args, "GameProfileCache");
+	});
+	GameProfileManager profileManager = proxy(GameProfileManager.class, (proxy, method, args) -> {
+	    if (method.getName().equals("getCache")) {
+		return profiles;
+	    }
+	    return objectMethod(proxy, method.getName(), args, "GameProfileManager");
+	});
+	MessageChannel broadcasts = proxy(MessageChannel.class, (proxy, method, args) -> {
+	    if (method.getName().equals("send")) {
+		return null;
+	    }
+	    return objectMethod(proxy, method.getName(), args, "MessageChannel");
+	});
+	Collection<Player> online = Collections.unmodifiableCollection(onlinePlayers);
+	Server server = proxy(Server.class, (proxy, method, args) -> {
+	    switch (method.getName()) {
+	    case "getOnlinePlayers":
+		return online;
+	    case "getPlayer":
+		return online.stream().filter(player -> player.getUniqueId().equals(args[0])).findFirst();
+	    case "getBroadcastChannel":
+		return broadcasts;
+	    case "getGameProfileManager":
+		return profileManager;
+	    }
+	    return objectMethod(proxy, method.getName(), args, "Server");
+	});
+	EventManager events = proxy(EventManager.class, (proxy, method, args) -> {
+	    if (method.getName().equals("unregisterPluginListeners")) {
+		return null;
+	    }
+	    return objectMethod(proxy, method.getName(), args, "EventManager");
+	});
+	game = proxy(Game.class, (proxy, method, args) -> {
+	    switch (method.getName()) {
+	    case "getServer":
+		return server;
+	    case "getScheduler":
+		return scheduler;
+	    case "getServiceManager":
+		return services;
+	    case "getEventManager":
+		return events;
+	    }
+	    return objectMethod(proxy, method.getName(), args, "Game");
+	});
+	install(game, scheduler, services, events);
+	container = proxy(PluginContainer.class,
+		(proxy, method, args) -> objectMethod(proxy, method.getName(), args, "PluginContainer"));
+    }
+
+    /**
+     * @return an economy service whose accounts keep their balances in the given
+     *         backend, so the plugin makes its calls through SpongeEconomyBackend
+     */
+    private static EconomyService economyService(LocalEconomyBackend economy) {
+	Currency currency = proxy(Currency.class, (proxy, method, args) -> {
+	    if (method.getName().equals("format")) {
+		return Text.of(economy.format((BigDecimal) args[0]));
+	    }
+	    return objectMethod(proxy, method.getName(), args, "Currency");
+	});
+	return proxy(EconomyService.class, (proxy, method, args) -> {
+	    switch (method.getName()) {
+	    case "getDefaultCurrency":
+		return currency;
+	    case "getOrCreateAccount":
+		return Optional.of(account(economy, (UUID) args[0]));
+	    }
+	    return objectMethod(proxy, method.getName(), args, "EconomyService");
+	});
+    }
+
+    private static UniqueAccount account(LocalEconomyBackend economy, UUID player) {
+	return proxy(UniqueAccount.class, (proxy, method, args) -> {
+	    switch (method.getName()) {
+	    case "getUniqueId":
+		return player;
+	    case "hasBalance":
+		return true;
+	    case "getBalance":
+		return economy.getBalance(player);
+	    case "withdraw":
+		Status status = economy.withdraw(player, (BigDecimal) args[1]);
+		return result(status == Status.SUCCESS ? ResultType.SUCCESS : ResultType.ACCOUNT_NO_FUNDS);
+	    case "deposit":
+		return result(economy.deposit(player, (BigDecimal) args[1]) ? ResultType.SUCCESS : ResultType.FAILED);
+	    }
+	    return objectMethod(proxy, method.getName(), args, "UniqueAccount");
+	});
+    }
+
+    private static TransactionResult result(ResultType type) {
+	return proxy(TransactionResult.class, (proxy, method, args) -> {
+	    if (method.getName().equals("getResult")) {
+		return type;
+	    }
+	    return objectMethod(proxy, method.getName(), args, "TransactionResult");
+	});
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+	Thread thread = new Thread(runnable, name);
+	thread.setDaemon(true);
+	return thread;
+    }
+
+    public Game getGame() {
+	return game;
+    }
+
+    public PluginContainer getPluginContainer() {
+	return container;
+    }
+
+    /**
+     * Sets Sponge's static services to the stand-ins, by type so it doesn't
+     * depend on how Sponge names them.
+     */
+    private static void install(Object... services) {
+	try {
+	    for (Field field : Sponge.class.getDeclaredFields()) {
+		if (!Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers())) {
+		    continue;
+		}
+		for (Object service : services) {
+		    if (field.getType().isInstance(service)) {
+			field.setAccessible(true);
+			field.set(null, service);
+		    }
+		}
+	    }
+	} catch (ReflectiveOperationException e) {
+	    throw new IllegalStateException("Could not install the stand-in game", e);
+	}
+    }
+
+    /**
+     * Runs an event or command handler on the server thread.
+     *
+     * @return a future completed once the handler and all the work it queued on
+     *         the plugin's executors have run
+     */
+    public CompletableFuture<Void> handle(Runnable handler) {
+	Handling started = new Handling();
+	serverThread.execute(() -> run(started, handler));
+	return started.done;
+    }
+
+    private void run(Handling owner, Runnable task) {
+	handling.set(owner);
+	try {
+	    task.run();
+	} catch (RuntimeException e) {
+	    failures.incrementAndGet();
+	} finally {
+	    handling.remove();
+	    owner.finish();
+	}
+    }
+
+    /**
+     * @return an executor that traces work back to the handler queuing it
+     */
+    private SpongeExecutorService executor(Executor executor) {
+	return proxy(SpongeExecutorService.class, (proxy, method, args) -> {
+	    if (method.getName().equals("execute")) {
+		Runnable task = (Runnable) args[0];
+		Handling owner = handling.get();
+		if (owner == null) {
+		    executor.execute(task);
+		} else {
+		    owner.pending.incrementAndGet();
+		    executor.execute(() -> run(owner, task));
+		}
+		return null;
+	    }
+	    return objectMethod(proxy, method.getName(), args, "SpongeExecutorService");
+	});
+    }
+
+    private Task.Builder taskBuilder() {
+	Object[] body = new Object[1];
+	boolean[] async = new boolean[1];
+	long[] delay = new long[1];
+	long[] interval = new long[1];
+	return proxy(Task.Builder.class, (proxy, method, args) -> {
+	    switch (method.getName()) {
+	    case "execute":
+		body[0] = args[0];
+		return proxy;
+	    case "async":
+		async[0] = true;
+		return proxy;
+	    case "delay":
+		delay[0] = ((TimeUnit) args[1]).toMillis((Long) args[0]);
+		return proxy;
+	    case "delayTicks":
+		delay[0] = (Long) args[0] * TICK_MILLIS;
+		return proxy;
+	    case "interval":
+		interval[0] = ((TimeUnit) args[1]).toMillis((Long) args[0]);
+		return proxy;
+	    case "intervalTicks":
+		interval[0] = (Long) args[0] * TICK_MILLIS;
+		return proxy;
+	    case "name":
+		return proxy;
+	    case "submit":
+		return submit(body[0], async[0] ? asyncPool : serverThread, delay[0], interval[0]);
+	    }
+	    return objectMethod(proxy, method.getName(), args, "Task.Builder");
+	});
+    }
+
+    @SuppressWarnings("unchecked")
+    private Task submit(Object body, Executor executor, long delay, long interval) {
+	Future<?>[] scheduled = new Future<?>[1];
+	Task task = proxy(Task.class, (proxy, method, args) -> {
+	    if (method.getName().equals("cancel")) {
+		return scheduled[0].cancel(false);
+	    }
+	    return objectMethod(proxy, method.getName(), args, "Task");
+	});
+	Runnable run = body instanceof Runnable ? (Runnable) body : () -> ((Consumer<Task>) body).accept(task);
+	Runnable queue = () -> executor.execute(run);
+	if (interval > 0) {
+	    scheduled[0] = timer.scheduleAtFixedRate(queue, delay, interval, TimeUnit.MILLISECONDS);
+	} else {
+	    scheduled[0] = timer.schedule(queue, delay, TimeUnit.MILLISECONDS);
+	}
+	return task;
+    }
+
+    /**
+     * Creates a death event for a player killed by another.
+     */
+    public DestructEntityEvent.Death death(Living victim, Player killer) {
+	Cause cause = Cause.of(EventContext.empty(), killer);
+	return proxy(DestructEntityEvent.Death.class, (proxy, method, args) -> {
+	    switch (method.getName()) {
+	    case "isCancelled":
+		return false;
+	    case "getTargetEntity":
+		return victim;
+	    case "getCause":
+		return cause;
+	    case "getContext":
+		return cause.getContext();
+	    }
+	    return objectMethod(proxy, method.getName(), args, "Death");
+	});
+    }
+
+    /**
+     * Runs a task on the server thread and waits for it.
+     */
+    public void runOnServerThread(Runnable task) throws Exception {
+	CompletableFuture.runAsync(task, serverThread).get();
+    }
+
+    /**
+     * @return how many handlers or the work they queued threw an exception
+     */
+    public long getFailures() {
+	return failures.get();
+    }
+
+    /**
+     * Stops the scheduled tasks, then lets queued work finish and stops every
+     * thread.
+     */
+    @Override
+    public void close() throws InterruptedException {
+	timer.shutdownNow();
+	serverThread.shutdown();
+	serverThread.awaitTermination(1, TimeUnit.MINUTES);
+	asyncPool.shutdown();
+	asyncPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private static Object objectMethod(Object proxy, String method, Object[] args, String name) {
+	switch (method) {
+	case "equals":
+	    return proxy == args[0];
+	case "hashCode":
+	    return System.identityHashCode(proxy);
+	case "toString":
+	    return name;
+	}
+	throw new UnsupportedOperationException(method + " is not supported by the stand-in " + name);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+	return (T) Proxy.newProxyInstance(StandInGame.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,109 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+import org.spongepowered.api.GameRegistry;
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.data.value.ValueFactory;
+import org.spongepowered.api.data.value.immutable.ImmutableValue;
+import org.spongepowered.api.data.value.mutable.Value;
+
+/**
+ * A stand-in {@link GameRegistry} whose value factory makes simple values, so
+ * RBounty's data manipulators can create their values on a plain JVM.
+ *
+ * Only the calls the manipulators make are supported. Each value is one proxy
+ * object, about what a real value costs.
+ */
+public class StandInRegistry {
+    private static final class ValueState {
+	Object element;
+    }
+
+    /**
+     * Installs the stand-in registry in place of the one Sponge injects.
+     */
+    public static void install() {
+	ValueFactory factory = proxy(ValueFactory.class, (proxy, method, args) -> {
+	    if (method.getName().equals("createValue")) {
+		return value(args[1]);
+	    }
+	    return objectMethod(proxy, method.getName(), args);
+	});
+	GameRegistry registry = proxy(GameRegistry.class, (proxy, method, args) -> {
+	    if (method.getName().equals("getValueFactory")) {
+		return factory;
+	    }
+	    return objectMethod(proxy, method.getName(), args);
+	});
+	try {
+	    Field field = Sponge.class.getDeclaredField("registry");
+	    field.setAccessible(true);
+	    field.set(null, registry);
+	} catch (ReflectiveOperationException e) {
+	    throw new IllegalStateException("Could not install the stand-in registry", e);
+	}
+    }
+
+    private static Value<?> value(Object element) {
+	ValueState state = new ValueState();
+	state.element = element;
+	return proxy(Value.class, (proxy, method, args) -> {
+	    switch (method.getName()) {
+	    case "get":
+		return state.element;
+	    case "set":
+		state.element = args[0];
+		return proxy;
+	    case "asImmutable":
+		return immutableValue(state.element);
+	    }
+	    return objectMethod(proxy, method.getName(), args);
+	});
+    }
+
+    private static ImmutableValue<?> immutableValue(Object element) {
+	return proxy(ImmutableValue.class, (proxy, method, args) -> {
+	    if (method.getName().equals("get")) {
+		return element;
+	    }
+	    return objectMethod(proxy, method.getName(), args);
+	});
+    }
+
+    private static Object objectMethod(Object proxy, String method, Object[] args) {
+	switch (method) {
+	case "equals":
+	    return proxy == args[0];
+	case "hashCode":
+	    return System.identityHashCode(proxy);
+	case "toString":
+	    return "stand-in";
+	}
+	throw new UnsupportedOperationException(method + " is not supported by the stand-in registry");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+	return (T) Proxy.newProxyInstance(StandInRegistry.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}
\ No newline at end of file
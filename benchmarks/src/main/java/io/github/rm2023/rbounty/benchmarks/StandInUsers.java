@@ -0,0 +1,215 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+
+import org.spongepowered.api.data.DataTransactionResult;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.entity.living.player.User;
+import org.spongepowered.api.profile.GameProfile;
+import org.spongepowered.api.service.user.UserStorageService;
+
+import io.github.rm2023.rbounty.PlayerNameIndex;
+import io.github.rm2023.rbounty.ProfileNameCache;
+import io.github.rm2023.rbounty.RBountyData;
+
+/**
+ * A population of stand-in users behind a stand-in {@link UserStorageService},
+ * built from dynamic proxies so RBounty's data layer runs on a plain JVM.
+ *
+ * Only the calls RBounty makes are supported. Users are players, so they can
+ * run commands and be killed, but messages sent to them are dropped and they
+ * have no permissions. Users only hold a bounty, so any key is taken to be the
+ * bounty key, and every write succeeds. Offering a new
+ * {@code BountyData} manipulator is not supported, so every user starts out
+ * with a bounty value, 0 for most.
+ */
+public class StandInUsers {
+    private static class UserState {
+	final UUID uuid;
+	final String name;
+	volatile Integer bounty;
+	volatile boolean online;
+
+	UserState(UUID uuid, String name, Integer bounty) {
+	    this.uuid = uuid;
+	    this.name = name;
+	    this.bounty = bounty;
+	}
+    }
+
+    private final Player[] users;
+    private final Map<UUID, User> byUuid = new HashMap<UUID, User>();
+    private final List<UserState> states = new ArrayList<UserState>();
+    private final List<GameProfile> profiles = new ArrayList<GameProfile>();
+    private final UserStorageService service;
+
+    /**
+     * @param count            the number of users
+     * @param bountiedFraction the fraction of users that start with a bounty
+     * @param seed             the seed for UUIDs and bounties
+     */
+    public StandInUsers(int count, double bountiedFraction, long seed) {
+	Random random = new Random(seed);
+	users = new Player[count];
+	for (int i = 0; i < count; i++) {
+	    UUID uuid = new UUID(random.nextLong(), random.nextLong());
+	    String name = "player" + i;
+	    int bounty = random.nextDouble() < bountiedFraction ? 1 + random.nextInt(100000) : 0;
+	    UserState state = new UserState(uuid, name, bounty);
+	    states.add(state);
+	    users[i] = user(state);
+	    byUuid.put(uuid, users[i]);
+	    profiles.add(profile(uuid, name));
+	}
+	service = proxy(UserStorageService.class, (proxy, method, args) -> {
+	    switch (method.getName()) {
+	    case "get":
+		if (args[0] instanceof UUID) {
+		    return Optional.ofNullable(byUuid.get(args[0]));
+		}
+		if (args[0] instanceof GameProfile) {
+		    return Optional.ofNullable(byUuid.get(((GameProfile) args[0]).getUniqueId()));
+		}
+		break;
+	    case "getAll":
+		return Collections.unmodifiableList(profiles);
+	    }
+	    return objectMethod(proxy, method.getName(), args, "UserStorageService");
+	});
+    }
+
+    public UserStorageService getService() {
+	return service;
+    }
+
+    /**
+     * Creates a name cache that names these users the way the plugin does, from
+     * a name index of every user.
+     *
+     * @param data     the bounty data the index ranks suggestions by
+     * @param capacity the most names to cache
+     * @return the name cache
+     */
+    public ProfileNameCache createNameCache(RBountyData data, int capacity) {
+	PlayerNameIndex index = new PlayerNameIndex(data);
+	index.build(profiles);
+	return new ProfileNameCache(capacity, index, null);
+    }
+
+    public Player getUser(int index) {
+	return users[index];
+    }
+
+    /**
+     * Marks the first users as online.
+     *
+     * @param count how many users are online
+     * @return the online users
+     */
+    public List<Player> setOnline(int count) {
+	List<Player> online = new ArrayList<Player>();
+	for (int i = 0; i < users.length; i++) {
+	    states.get(i).online = i < count;
+	    if (i < count) {
+		online.add(users[i]);
+	    }
+	}
+	return online;
+    }
+
+    public int size() {
+	return users.length;
+    }
+
+    private static Player user(UserState state) {
+	return proxy(Player.class, (proxy, method, args) -> {
+	    switch (method.getName()) {
+	    case "getUniqueId":
+		return state.uuid;
+	    case "getName":
+		return state.name;
+	    case "isOnline":
+		return state.online;
+	    case "getPlayer":
+		return state.online ? Optional.of(proxy) : Optional.empty();
+	    case "hasPermission":
+		return false;
+	    case "sendMessage":
+		return null;
+	    case "get":
+		if (args.length == 1 && !(args[0] instanceof Class)) {
+		    return Optional.ofNullable(state.bounty);
+		}
+		break;
+	    case "offer":
+		if (args.length == 2 && !(args[0] instanceof Class)) {
+		    state.bounty = (Integer) args[1];
+		    return DataTransactionResult.successNoData();
+		}
+		break;
+	    case "remove":
+		if (args.length == 1 && args[0] instanceof Class) {
+		    state.bounty = null;
+		    return DataTransactionResult.successNoData();
+		}
+		break;
+	    }
+	    return objectMethod(proxy, method.getName(), args, state.name);
+	});
+    }
+
+    private static GameProfile profile(UUID uuid, String name) {
+	return proxy(GameProfile.class, (proxy, method, args) -> {
+	    switch (method.getName()) {
+	    case "getUniqueId":
+		return uuid;
+	    case "getName":
+		return Optional.of(name);
+	    }
+	    return objectMethod(proxy, method.getName(), args, name);
+	});
+    }
+
+    private static Object objectMethod(Object proxy, String method, Object[] args, String name) {
+	switch (method) {
+	case "equals":
+	    return proxy == args[0];
+	case "hashCode":
+	    return System.identityHashCode(proxy);
+	case "toString":
+	    return name;
+	}
+	throw new UnsupportedOperationException(method + " is not supported by the stand-in " + name);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+	return (T) Proxy.newProxyInstance(StandInUsers.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+}
\ No newline at end of file
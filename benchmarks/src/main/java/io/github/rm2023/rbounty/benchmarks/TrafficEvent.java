@@ -0,0 +1,83 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+/**
+ * One command or event sent to the {@link SimulatedServer}. Players are
+ * referred to by their index in {@link StandInUsers}.
+ */
+public class TrafficEvent {
+    public enum Type {
+	/** /bounty add, from player to target */
+	ADD,
+	/** A player death, where target is killed by player */
+	DEATH,
+	/** /bounty top, where amount is the page */
+	TOP,
+	/** /bounty topOnline, where amount is the page */
+	TOP_ONLINE,
+	/** /bounty view on target */
+	VIEW
+    }
+
+    private final long offsetMillis;
+    private final Type type;
+    private final int player;
+    private final int target;
+    private final int amount;
+
+    /**
+     * @param offsetMillis when the event happens, from the start of the run
+     * @param type         the kind of event
+     * @param player       the player sending the command or killing the target
+     * @param target       the player the command or death is about
+     * @param amount       the bounty added, or the leaderboard page
+     */
+    public TrafficEvent(long offsetMillis, Type type, int player, int target, int amount) {
+	this.offsetMillis = offsetMillis;
+	this.type = type;
+	this.player = player;
+	this.target = target;
+	this.amount = amount;
+    }
+
+    public long getOffsetMillis() {
+	return offsetMillis;
+    }
+
+    public Type getType() {
+	return type;
+    }
+
+    public int getPlayer() {
+	return player;
+    }
+
+    public int getTarget() {
+	return target;
+    }
+
+    public int getAmount() {
+	return amount;
+    }
+
+    @Override
+    public String toString() {
+	return offsetMillis + " " + type.name().toLowerCase() + " " + player + " " + target + " " + amount;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,137 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.github.rm2023.rbounty.benchmarks.TrafficEvent.Type;
+
+/**
+ * Reads, writes and generates traffic traces.
+ *
+ * A trace is a text file with one event per line, as
+ * {@code <offset millis> <type> <player> <target> <amount>}, in the order they
+ * happen. Blank lines and lines starting with # are skipped.
+ */
+public class TrafficTrace {
+    private TrafficTrace() {
+    }
+
+    public static List<TrafficEvent> read(Path file) throws IOException {
+	List<TrafficEvent> events = new ArrayList<TrafficEvent>();
+	try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+	    String line;
+	    int number = 0;
+	    while ((line = reader.readLine()) != null) {
+		number++;
+		line = line.trim();
+		if (line.isEmpty() || line.startsWith("#")) {
+		    continue;
+		}
+		String[] fields = line.split("\\s+");
+		try {
+		    events.add(new TrafficEvent(Long.parseLong(fields[0]), Type.valueOf(fields[1].toUpperCase()),
+			    Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4])));
+		} catch (RuntimeException e) {
+		    throw new IOException("Bad event on line " + number + " of " + file + ": " + line, e);
+		}
+	    }
+	}
+	return events;
+    }
+
+    public static void write(List<TrafficEvent> events, Path file) throws IOException {
+	try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+	    writer.write("# offsetMillis type player target amount");
+	    writer.newLine();
+	    for (TrafficEvent event : events) {
+		writer.write(event.toString());
+		writer.newLine();
+	    }
+	}
+    }
+
+    /**
+     * Generates a synthetic trace. Most events involve a small group of active
+     * players, and every burstInterval seconds a mass PvP fight kills burstSize
+     * of them at once.
+     *
+     * @param players       the number of players
+     * @param seconds       how long the trace lasts
+     * @param rate          the steady events per second
+     * @param mix           the relative weights of add, death, top, topOnline
+     *                      and view events
+     * @param burstSize     the deaths per burst, or 0 for no bursts
+     * @param burstInterval the seconds between bursts
+     * @param seed          the random seed
+     * @return the events, in order
+     */
+    public static List<TrafficEvent> synthetic(int players, int seconds, int rate, int[] mix, int burstSize,
+	    int burstInterval, long seed) {
+	Random random = new Random(seed);
+	int total = 0;
+	for (int weight : mix) {
+	    total += weight;
+	}
+	int active = Math.max(2, players / 5);
+	List<TrafficEvent> events = new ArrayList<TrafficEvent>();
+	long count = (long) seconds * rate;
+	long nextBurst = burstInterval * 1000L;
+	for (long i = 0; i < count; i++) {
+	    long offset = i * 1000 / rate;
+	    while (burstSize > 0 && offset >= nextBurst) {
+		for (int j = 0; j < burstSize; j++) {
+		    events.add(new TrafficEvent(nextBurst, Type.DEATH, random.nextInt(active), random.nextInt(active),
+			    0));
+		}
+		nextBurst += burstInterval * 1000L;
+	    }
+	    int pick = random.nextInt(total);
+	    int type = 0;
+	    while (pick >= mix[type]) {
+		pick -= mix[type++];
+	    }
+	    // Four out of five events are about the active players
+	    int player = random.nextInt(5) > 0 ? random.nextInt(active) : random.nextInt(players);
+	    int target = random.nextInt(5) > 0 ? random.nextInt(active) : random.nextInt(players);
+	    int amount;
+	    switch (Type.values()[type]) {
+	    case ADD:
+		amount = 1 + random.nextInt(1000);
+		break;
+	    case TOP:
+	    case TOP_ONLINE:
+		// Mostly the first page
+		amount = random.nextInt(4) > 0 ? 1 : 1 + random.nextInt(20);
+		break;
+	    default:
+		amount = 0;
+	    }
+	    events.add(new TrafficEvent(offset, Type.values()[type], player, target, amount));
+	}
+	return events;
+    }
+}
\ No newline at end of file
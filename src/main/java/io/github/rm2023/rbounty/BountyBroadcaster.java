@@ -0,0 +1,233 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Announces bounty changes, merging changes to the same player within a window
+ * into one message and capping how many messages go out per second.
+ *
+ * Changes of the same kind to a player are merged until the window after the
+ * first one ends, so twelve contributions become one "rose by" message. A change
+ * of another kind sends what was merged so far right away. Messages over the
+ * per second cap are dropped and counted, and the next second starts with a
+ * note saying how many were hidden.
+ */
+public class BountyBroadcaster {
+    private enum Kind {
+	SET, INCREASE, CLAIM
+    }
+
+    private static class Pending {
+	final Kind kind;
+	final String name;
+	final long opened;
+	int count;
+	int amount;
+	int bounty;
+	String claimer;
+
+	Pending(Kind kind, String name, long opened) {
+	    this.kind = kind;
+	    this.name = name;
+	    this.opened = opened;
+	}
+    }
+
+    private final Consumer<String> channel;
+    private final IntFunction<String> format;
+
+    // Oldest first, so only the head ever needs checking for an ended window
+    private final Map<UUID, Pending> pending = new LinkedHashMap<UUID, Pending>();
+    private long windowNanos = TimeUnit.SECONDS.toNanos(3);
+    private int perSecond = 4;
+
+    private long secondStart = System.nanoTime();
+    private int sentThisSecond = 0;
+    private int hidden = 0;
+    private long sent = 0;
+    private long suppressed = 0;
+
+    /**
+     * @param channel where messages are sent
+     * @param format  formats an amount of money
+     */
+    public BountyBroadcaster(Consumer<String> channel, IntFunction<String> format) {
+	this.channel = channel;
+	this.format = format;
+    }
+
+    /**
+     * @param windowMillis how long changes to a player are merged for, or 0 to
+     *                     announce every change right away
+     * @param perSecond    the most messages sent per second, or 0 for no limit
+     */
+    public synchronized void configure(long windowMillis, int perSecond) {
+	this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMillis));
+	this.perSecond = Math.max(0, perSecond);
+    }
+
+    /**
+     * Announces that a player's bounty was set.
+     */
+    public synchronized void set(UUID target, String name, int bounty) {
+	Pending change = open(target, Kind.SET, name);
+	change.count++;
+	change.bounty = bounty;
+	closeIfUnwindowed(target);
+    }
+
+    /**
+     * Announces that a player's bounty was increased.
+     *
+     * @param amount the amount added
+     * @param bounty the bounty after adding it
+     */
+    public synchronized void increase(UUID target, String name, int amount, int bounty) {
+	Pending change = open(target, Kind.INCREASE, name);
+	change.count++;
+	change.amount += amount;
+	change.bounty = bounty;
+	closeIfUnwindowed(target);
+    }
+
+    /**
+     * Announces that a player's bounty was claimed.
+     */
+    public synchronized void claim(UUID target, String name, String claimer) {
+	Pending change = open(target, Kind.CLAIM, name);
+	change.count++;
+	change.claimer = claimer;
+	closeIfUnwindowed(target);
+    }
+
+    /**
+     * Sends every merged change whose window has ended. Called every few ticks.
+     */
+    public synchronized void tick() {
+	long now = System.nanoTime();
+	nextSecond(now);
+	Iterator<Pending> iterator = pending.values().iterator();
+	while (iterator.hasNext()) {
+	    Pending change = iterator.next();
+	    if (now - change.opened < windowNanos) {
+		break;
+	    }
+	    iterator.remove();
+	    send(render(change));
+	}
+    }
+
+    /**
+     * @return the number of messages sent
+     */
+    public synchronized long getSent() {
+	return sent;
+    }
+
+    /**
+     * @return the number of messages dropped by the per second cap
+     */
+    public synchronized long getSuppressed() {
+	return suppressed;
+    }
+
+    /**
+     * @return the number of players with merged changes waiting to be sent
+     */
+    public synchronized int getPending() {
+	return pending.size();
+    }
+
+    private Pending open(UUID target, Kind kind, String name) {
+	Pending change = pending.get(target);
+	if (change != null && change.kind == kind) {
+	    return change;
+	}
+	if (change != null) {
+	    pending.remove(target);
+	    send(render(change));
+	}
+	change = new Pending(kind, name, System.nanoTime());
+	pending.put(target, change);
+	return change;
+    }
+
+    private void closeIfUnwindowed(UUID target) {
+	if (windowNanos == 0) {
+	    send(render(pending.remove(target)));
+	}
+    }
+
+    private String render(Pending change) {
+	switch (change.kind) {
+	case SET:
+	    return change.name + "'s bounty has been set to " + format.apply(change.bounty) + "!";
+	case INCREASE:
+	    if (change.count > 1) {
+		return change.name + "'s bounty rose by " + format.apply(change.amount) + " (" + change.count
+			+ " contributions) and is now at " + format.apply(change.bounty) + "!";
+	    }
+	    if (change.amount == change.bounty) {
+		return "A bounty of " + format.apply(change.amount) + " has been set on " + change.name + "!";
+	    }
+	    return change.name + "'s bounty has been increased by " + format.apply(change.amount) + " and is now at "
+		    + format.apply(change.bounty) + "!";
+	default:
+	    if (change.count > 1) {
+		return change.name + "'s bounty has been claimed " + change.count + " times, last by " + change.claimer
+			+ "!";
+	    }
+	    return change.claimer + " has claimed " + change.name + "'s bounty!";
+	}
+    }
+
+    private void send(String message) {
+	nextSecond(System.nanoTime());
+	if (perSecond > 0 && sentThisSecond >= perSecond) {
+	    hidden++;
+	    suppressed++;
+	    return;
+	}
+	sentThisSecond++;
+	sent++;
+	channel.accept(message);
+    }
+
+    private void nextSecond(long now) {
+	if (now - secondStart < TimeUnit.SECONDS.toNanos(1)) {
+	    return;
+	}
+	secondStart = now;
+	sentThisSecond = 0;
+	if (hidden > 0) {
+	    String note = hidden + " more bounty announcement" + (hidden == 1 ? " was" : "s were") + " hidden.";
+	    hidden = 0;
+	    sentThisSecond++;
+	    sent++;
+	    channel.accept(note);
+	}
+    }
+}
\ No newline at end of file
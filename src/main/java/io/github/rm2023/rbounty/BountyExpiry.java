@@ -0,0 +1,373 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import io.github.rm2023.rbounty.economy.EconomyPipeline;
+import io.github.rm2023.rbounty.ledger.BountyLedger;
+import io.github.rm2023.rbounty.ledger.LedgerRecord.Type;
+
+/**
+ * Expires bounties that nobody has added to for a while, refunding their
+ * contributors, and takes a percentage off every bounty at a fixed interval.
+ *
+ * Deadlines are kept in two {@link TimingWheel}s ticking once a second, so each
+ * tick only touches the bounties that are due. Every bounty that is due in the
+ * same tick is changed in one batch through {@link RBountyData#changeBounties}.
+ *
+ * Only bounties set or added to since expiry or decay was enabled are tracked.
+ */
+public class BountyExpiry {
+    private static final int MAGIC = 0x52425850; // "RBXP"
+    private static final int VERSION = 1;
+
+    private static class Tracked {
+	long expiresAt;
+	long decaysAt;
+	final Map<UUID, Integer> contributions = new HashMap<UUID, Integer>();
+    }
+
+    private final RBountyData data;
+    private final EconomyPipeline pipeline;
+    private final BountyLedger ledger;
+    private final Logger logger;
+    private final Map<UUID, Tracked> tracked = new HashMap<UUID, Tracked>();
+    private final TimingWheel<UUID> expiries;
+    private final TimingWheel<UUID> decays;
+
+    private long expiryMillis = 0;
+    private int decayPercent = 0;
+    private long decayMillis = 0;
+
+    private long expired = 0;
+    private long decayed = 0;
+    private long refunded = 0;
+
+    /**
+     * @param data     the bounty data
+     * @param pipeline the pipeline refunds are paid through
+     * @param ledger   the ledger expiries and refunds are recorded in, or null
+     * @param logger   the plugin logger
+     */
+    public BountyExpiry(RBountyData data, EconomyPipeline pipeline, BountyLedger ledger, Logger logger) {
+	this.data = data;
+	this.pipeline = pipeline;
+	this.ledger = ledger;
+	this.logger = logger;
+	long now = tick(System.currentTimeMillis());
+	expiries = new TimingWheel<UUID>(now);
+	decays = new TimingWheel<UUID>(now);
+    }
+
+    private static long tick(long millis) {
+	return TimeUnit.MILLISECONDS.toSeconds(millis);
+    }
+
+    /**
+     * Changes the settings. Bounties already tracked keep their current
+     * deadlines.
+     *
+     * @param expiryMinutes        how long a bounty lasts after it was last added
+     *                             to, or 0 for forever
+     * @param decayPercent         the percentage taken off at each decay, or 0 for
+     *                             no decay
+     * @param decayIntervalMinutes how often bounties decay
+     */
+    public synchronized void configure(int expiryMinutes, int decayPercent, int decayIntervalMinutes) {
+	this.expiryMillis = TimeUnit.MINUTES.toMillis(Math.max(0, expiryMinutes));
+	this.decayPercent = Math.max(0, Math.min(100, decayPercent));
+	this.decayMillis = TimeUnit.MINUTES.toMillis(Math.max(1, decayIntervalMinutes));
+    }
+
+    /**
+     * @return whether bounties expire or decay at all
+     */
+    public synchronized boolean isEnabled() {
+	return expiryMillis > 0 || decayPercent > 0;
+    }
+
+    /**
+     * Records a contribution to a bounty and restarts its expiry.
+     *
+     * @param target      the player whose bounty was raised
+     * @param contributor the player who paid
+     * @param amount      the amount paid
+     */
+    public synchronized void contributed(UUID target, UUID contributor, int amount) {
+	if (!isEnabled()) {
+	    return;
+	}
+	Tracked bounty = track(target);
+	bounty.contributions.merge(contributor, amount, Integer::sum);
+	if (expiryMillis > 0) {
+	    bounty.expiresAt = System.currentTimeMillis() + expiryMillis;
+	    expiries.schedule(target, tick(bounty.expiresAt));
+	}
+    }
+
+    /**
+     * Records a bounty being set without a contributor, restarting its expiry.
+     *
+     * @param target the player whose bounty was set
+     * @param bounty the new bounty
+     */
+    public synchronized void set(UUID target, int bounty) {
+	if (bounty == 0) {
+	    tracked.remove(target);
+	    return;
+	}
+	if (!isEnabled()) {
+	    return;
+	}
+	Tracked tracking = track(target);
+	if (expiryMillis > 0) {
+	    tracking.expiresAt = System.currentTimeMillis() + expiryMillis;
+	    expiries.schedule(target, tick(tracking.expiresAt));
+	}
+    }
+
+    /**
+     * Stops tracking a bounty that was claimed.
+     *
+     * @param target the player whose bounty was claimed
+     */
+    public synchronized void claimed(UUID target) {
+	tracked.remove(target);
+    }
+
+    /**
+     * Starts tracking a bounty, scheduling its first decay.
+     */
+    private Tracked track(UUID target) {
+	Tracked bounty = tracked.get(target);
+	if (bounty == null) {
+	    bounty = new Tracked();
+	    tracked.put(target, bounty);
+	    if (decayPercent > 0) {
+		bounty.decaysAt = System.currentTimeMillis() + decayMillis;
+		decays.schedule(target, tick(bounty.decaysAt));
+	    }
+	}
+	return bounty;
+    }
+
+    /**
+     * Expires and decays every bounty that is due. Must be called on the main
+     * thread, unless the bounty data is shared, where every change is a database
+     * transaction that is better made off it.
+     */
+    public synchronized void tick() {
+	long now = System.currentTimeMillis();
+	// Changes in the same second schedule the same deadline more than once
+	Set<UUID> expiring = new LinkedHashSet<UUID>();
+	expiries.advance(tick(now), (target, deadline) -> {
+	    Tracked bounty = tracked.get(target);
+	    // Skip deadlines that were pushed back since they were scheduled
+	    if (bounty != null && expiryMillis > 0 && tick(bounty.expiresAt) == deadline) {
+		expiring.add(target);
+	    }
+	});
+	List<UUID> decaying = new ArrayList<UUID>();
+	decays.advance(tick(now), (target, deadline) -> {
+	    Tracked bounty = tracked.get(target);
+	    if (bounty != null && decayPercent > 0 && tick(bounty.decaysAt) == deadline) {
+		decaying.add(target);
+		bounty.decaysAt = now + decayMillis;
+		decays.schedule(target, tick(bounty.decaysAt));
+	    }
+	});
+	if (!expiring.isEmpty()) {
+	    expire(expiring);
+	}
+	if (!decaying.isEmpty()) {
+	    decay(decaying);
+	}
+    }
+
+    /**
+     * Resets the given bounties and refunds their contributors. If the bounty has
+     * decayed, every contributor gets back the same share of what they paid.
+     */
+    private void expire(Set<UUID> targets) {
+	UuidIntMap claimed = data.changeBounties(targets, bounty -> 0);
+	int count = 0;
+	for (UUID target : targets) {
+	    Tracked bounty = tracked.remove(target);
+	    int amount = claimed.get(target, 0);
+	    if (bounty == null || amount <= 0) {
+		continue;
+	    }
+	    expired++;
+	    count++;
+	    if (ledger != null) {
+		ledger.record(Type.EXPIRE, target, null, amount, 0);
+	    }
+	    long contributed = 0;
+	    for (int paid : bounty.contributions.values()) {
+		contributed += paid;
+	    }
+	    for (Entry<UUID, Integer> contribution : bounty.contributions.entrySet()) {
+		int refund = (int) (contributed <= amount ? contribution.getValue()
+			: (long) contribution.getValue() * amount / contributed);
+		if (refund > 0) {
+		    pipeline.refund(contribution.getKey(), refund, target);
+		    refunded += refund;
+		    if (ledger != null) {
+			ledger.record(Type.REFUND, target, contribution.getKey(), refund, 0);
+		    }
+		}
+	    }
+	}
+	logger.info("Expired " + count + " bounties.");
+    }
+
+    /**
+     * Takes decayPercent off the given bounties, and at least 1 so every bounty
+     * eventually runs out.
+     */
+    private void decay(List<UUID> targets) {
+	int percent = decayPercent;
+	UuidIntMap changed = data.changeBounties(targets,
+		bounty -> bounty <= 0 ? bounty : bounty - (int) Math.max(1, (long) bounty * percent / 100));
+	decayed += changed.size();
+	for (UUID target : targets) {
+	    // Ran out, or was claimed without this being told
+	    if (data.getCachedBounty(target) == 0) {
+		tracked.remove(target);
+	    }
+	}
+    }
+
+    /**
+     * Writes every tracked bounty's deadlines and contributions to a file, so
+     * they survive a restart.
+     *
+     * @param file the file to write
+     * @throws IOException if the file could not be written
+     */
+    public synchronized void save(Path file) throws IOException {
+	Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+	try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeInt(tracked.size());
+	    for (Entry<UUID, Tracked> entry : tracked.entrySet()) {
+		writeUuid(out, entry.getKey());
+		out.writeLong(entry.getValue().expiresAt);
+		out.writeLong(entry.getValue().decaysAt);
+		out.writeInt(entry.getValue().contributions.size());
+		for (Entry<UUID, Integer> contribution : entry.getValue().contributions.entrySet()) {
+		    writeUuid(out, contribution.getKey());
+		    out.writeInt(contribution.getValue());
+		}
+	    }
+	}
+	Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the tracked bounties written by {@link #save}, scheduling their
+     * deadlines. Deadlines that passed while the server was down are due on the
+     * next tick.
+     *
+     * @param file the file to read
+     * @throws IOException if the file is missing, from another version or corrupt
+     */
+    public synchronized void load(Path file) throws IOException {
+	try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+	    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+		throw new IOException("Not a bounty expiry file of a supported version.");
+	    }
+	    int count = in.readInt();
+	    for (int i = 0; i < count; i++) {
+		UUID target = readUuid(in);
+		Tracked bounty = new Tracked();
+		bounty.expiresAt = in.readLong();
+		bounty.decaysAt = in.readLong();
+		int contributions = in.readInt();
+		for (int j = 0; j < contributions; j++) {
+		    bounty.contributions.put(readUuid(in), in.readInt());
+		}
+		tracked.put(target, bounty);
+		if (bounty.expiresAt > 0) {
+		    expiries.schedule(target, tick(bounty.expiresAt));
+		}
+		if (bounty.decaysAt > 0) {
+		    decays.schedule(target, tick(bounty.decaysAt));
+		}
+	    }
+	}
+	logger.info("Read expiry and decay times for " + tracked.size() + " bounties.");
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+	out.writeLong(uuid.getMostSignificantBits());
+	out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+	return new UUID(in.readLong(), in.readLong());
+    }
+
+    /**
+     * @return the number of bounties being tracked
+     */
+    public synchronized int getTracked() {
+	return tracked.size();
+    }
+
+    /**
+     * @return how many bounties have expired
+     */
+    public synchronized long getExpired() {
+	return expired;
+    }
+
+    /**
+     * @return how many times a bounty has decayed
+     */
+    public synchronized long getDecayed() {
+	return decayed;
+    }
+
+    /**
+     * @return the total refunded to contributors of expired bounties
+     */
+    public synchronized long getRefunded() {
+	return refunded;
+    }
+}
\ No newline at end of file
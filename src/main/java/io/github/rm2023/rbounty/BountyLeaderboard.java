@@ -0,0 +1,519 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * A leaderboard of non-zero bounties kept sorted as bounties change, so it never
+ * has to be rebuilt. Players are ordered by bounty, highest first, and then by
+ * UUID so that ties always come out in the same order.
+ *
+ * It is a treap where every node knows the size of its subtree, which gives
+ * O(log n) updates and rank lookups and O(log n + k) page slices. A second
+ * treap ordered by UUID finds a player's bounty. Nodes on the leaderboard are
+ * never changed, updates copy the O(log n) nodes on their path instead, so
+ * {@link #snapshot} can hand out both trees as they are in O(1).
+ */
+public class BountyLeaderboard {
+    /**
+     * Told which ranks changed whenever the leaderboard changes.
+     */
+    public interface ChangeListener {
+	/**
+	 * Called while the leaderboard is locked, so it must not call back into it.
+	 *
+	 * @param from    the first rank that may have changed
+	 * @param to      the rank after the last one that may have changed, or
+	 *                Integer.MAX_VALUE if every rank from there on may
+	 *                have changed
+	 * @param version the version of the leaderboard after the changes, see
+	 *                {@link Snapshot#getVersion}
+	 */
+	void changed(int from, int to, long version);
+    }
+
+    private static class Node {
+	final UUID uuid;
+	final int bounty;
+	final int priority;
+	// Only changed by rebuild, before the node is on the leaderboard
+	int size = 1;
+	Node left;
+	Node right;
+
+	Node(UUID uuid, int bounty, int priority) {
+	    this.uuid = uuid;
+	    this.bounty = bounty;
+	    this.priority = priority;
+	}
+
+	/**
+	 * Copies a node with new children.
+	 */
+	Node(Node node, Node left, Node right) {
+	    this(node.uuid, node.bounty, node.priority);
+	    this.left = left;
+	    this.right = right;
+	    size = 1 + size(left) + size(right);
+	}
+
+	/**
+	 * Copies a node with a new bounty.
+	 */
+	Node(Node node, int bounty) {
+	    this(node.uuid, bounty, node.priority);
+	    left = node.left;
+	    right = node.right;
+	    size = node.size;
+	}
+    }
+
+    /**
+     * The leaderboard as it was when {@link BountyLeaderboard#snapshot} was
+     * called. It never changes, so it can be read from any thread without
+     * locking.
+     */
+    public static final class Snapshot {
+	private final Node root;
+	private final Node players;
+	private final long version;
+
+	private Snapshot(Node root, Node players, long version) {
+	    this.root = root;
+	    this.players = players;
+	    this.version = version;
+	}
+
+	/**
+	 * @return the number of players on the leaderboard
+	 */
+	public int size() {
+	    return BountyLeaderboard.size(root);
+	}
+
+	/**
+	 * @return how many changes the leaderboard had seen when this was taken
+	 */
+	public long getVersion() {
+	    return version;
+	}
+
+	/**
+	 * @param uuid the player's UUID
+	 * @return the player's bounty, or 0 if they are not on the leaderboard
+	 */
+	public int getBounty(UUID uuid) {
+	    Node node = find(players, uuid);
+	    return node == null ? 0 : node.bounty;
+	}
+
+	/**
+	 * @param uuid the player's UUID
+	 * @return the zero based rank of the player, or -1 if they are not on the
+	 *         leaderboard
+	 */
+	public int rank(UUID uuid) {
+	    Node node = find(players, uuid);
+	    return node == null ? -1 : countBefore(root, node);
+	}
+
+	/**
+	 * Gets a slice of the leaderboard, see {@link BountyLeaderboard#page}.
+	 */
+	public List<Entry<UUID, Integer>> page(int start, int end) {
+	    return BountyLeaderboard.page(root, start, end);
+	}
+    }
+
+    private static final Comparator<Node> BY_RANK = BountyLeaderboard::compare;
+    private static final Comparator<Node> BY_UUID = (a, b) -> a.uuid.compareTo(b.uuid);
+
+    private final Random random = new Random();
+    private Node root;
+    // The same players and bounties ordered by UUID
+    private Node players;
+    private long version = 0;
+    private ChangeListener listener;
+
+    // While a batch is open, changes are merged into one range that is passed to
+    // the listener when the batch ends
+    private int batches;
+    private int batchFrom = Integer.MAX_VALUE;
+    private int batchTo = -1;
+
+    /**
+     * @param listener the listener told about changes, or null for none
+     */
+    public synchronized void setListener(ChangeListener listener) {
+	this.listener = listener;
+    }
+
+    /**
+     * Sets a player's bounty on the leaderboard. Players with a bounty of 0 are
+     * removed from it.
+     *
+     * @param uuid   the player's UUID
+     * @param bounty the player's new bounty
+     */
+    public synchronized void update(UUID uuid, int bounty) {
+	Node old = find(players, uuid);
+	int oldRank = -1;
+	if (old != null) {
+	    if (old.bounty == bounty) {
+		return;
+	    }
+	    if (listener != null) {
+		oldRank = rank(old);
+	    }
+	    root = delete(root, old, BY_RANK);
+	    // A player who stays on the leaderboard keeps their place by UUID
+	    players = bounty > 0 ? withBounty(players, uuid, bounty) : delete(players, old, BY_UUID);
+	}
+	int newRank = -1;
+	if (bounty > 0) {
+	    Node node = new Node(uuid, bounty, random.nextInt());
+	    root = insert(root, node, BY_RANK);
+	    if (old == null) {
+		players = insert(players, new Node(uuid, bounty, random.nextInt()), BY_UUID);
+	    }
+	    if (listener != null) {
+		newRank = rank(node);
+	    }
+	}
+	version++;
+	if (listener == null) {
+	    return;
+	}
+	// A move only shifts the ranks in between, but an insert or removal shifts
+	// every rank after it
+	if (oldRank >= 0 && newRank >= 0) {
+	    changed(Math.min(oldRank, newRank), Math.max(oldRank, newRank) + 1);
+	} else if (old != null || newRank >= 0) {
+	    changed(Math.max(oldRank, newRank), Integer.MAX_VALUE);
+	}
+    }
+
+    private void changed(int from, int to) {
+	if (batches == 0) {
+	    listener.changed(from, to, version);
+	    return;
+	}
+	batchFrom = Math.min(batchFrom, from);
+	batchTo = Math.max(batchTo, to);
+    }
+
+    /**
+     * Starts a batch of changes. Until {@link #endBatch} is called, the listener
+     * is told about every change at once instead of one at a time. Batches may
+     * be nested.
+     */
+    public synchronized void beginBatch() {
+	batches++;
+    }
+
+    /**
+     * Ends a batch started by {@link #beginBatch}, telling the listener about
+     * every change made during it if this was the outermost batch.
+     */
+    public synchronized void endBatch() {
+	if (--batches > 0 || batchTo < 0) {
+	    return;
+	}
+	if (listener != null) {
+	    listener.changed(batchFrom, batchTo, version);
+	}
+	batchFrom = Integer.MAX_VALUE;
+	batchTo = -1;
+    }
+
+    /**
+     * Removes a player from the leaderboard.
+     *
+     * @param uuid the player's UUID
+     */
+    public void remove(UUID uuid) {
+	update(uuid, 0);
+    }
+
+    /**
+     * Replaces the whole leaderboard with the given bounties.
+     *
+     * @param bounties the bounties to rank
+     */
+    public synchronized void rebuild(UuidIntMap bounties) {
+	List<Node> sorted = new ArrayList<Node>();
+	List<Node> byUuid = new ArrayList<Node>();
+	bounties.forEach((mostSigBits, leastSigBits, bounty) -> {
+	    if (bounty > 0) {
+		UUID uuid = new UUID(mostSigBits, leastSigBits);
+		sorted.add(new Node(uuid, bounty, random.nextInt()));
+		byUuid.add(new Node(uuid, bounty, random.nextInt()));
+	    }
+	});
+	sorted.sort(BY_RANK);
+	byUuid.sort(BY_UUID);
+	root = build(sorted);
+	players = build(byUuid);
+	version++;
+	if (listener != null) {
+	    listener.changed(0, Integer.MAX_VALUE, version);
+	}
+    }
+
+    /**
+     * Links new nodes that are already in order into a treap in place. In order,
+     * each node goes on the right spine below the first node of higher priority.
+     *
+     * @return the root
+     */
+    private static Node build(List<Node> sorted) {
+	Deque<Node> spine = new ArrayDeque<Node>();
+	for (Node node : sorted) {
+	    Node below = null;
+	    while (!spine.isEmpty() && spine.peek().priority < node.priority) {
+		below = spine.pop();
+	    }
+	    node.left = below;
+	    if (!spine.isEmpty()) {
+		spine.peek().right = node;
+	    }
+	    spine.push(node);
+	}
+	Node root = spine.peekLast();
+	countSizes(root);
+	return root;
+    }
+
+    /**
+     * @return the number of players on the leaderboard
+     */
+    public synchronized int size() {
+	return size(root);
+    }
+
+    /**
+     * Gets a player's bounty according to the leaderboard.
+     *
+     * @param uuid the player's UUID
+     * @return the player's bounty, or 0 if they are not on the leaderboard
+     */
+    public synchronized int getBounty(UUID uuid) {
+	Node node = find(players, uuid);
+	return node == null ? 0 : node.bounty;
+    }
+
+    /**
+     * Gets a player's position on the leaderboard.
+     *
+     * @param uuid the player's UUID
+     * @return the zero based rank of the player, or -1 if they are not on the
+     *         leaderboard
+     */
+    public synchronized int rank(UUID uuid) {
+	Node target = find(players, uuid);
+	return target == null ? -1 : rank(target);
+    }
+
+    /**
+     * @return the node of the player in a tree ordered by UUID, or null
+     */
+    private static Node find(Node root, UUID uuid) {
+	Node node = root;
+	while (node != null) {
+	    int cmp = uuid.compareTo(node.uuid);
+	    if (cmp == 0) {
+		return node;
+	    }
+	    node = cmp < 0 ? node.left : node.right;
+	}
+	return null;
+    }
+
+    private int rank(Node target) {
+	return countBefore(root, target);
+    }
+
+    /**
+     * @return the number of nodes of the subtree ordered before the key
+     */
+    private static int countBefore(Node root, Node key) {
+	int rank = 0;
+	Node node = root;
+	while (node != null) {
+	    int cmp = compare(key, node);
+	    if (cmp < 0) {
+		node = node.left;
+	    } else {
+		rank += size(node.left);
+		if (cmp == 0) {
+		    return rank;
+		}
+		rank += 1;
+		node = node.right;
+	    }
+	}
+	return rank;
+    }
+
+    /**
+     * Gets a slice of the leaderboard.
+     *
+     * @param start the first rank to include, starting at 0
+     * @param end   the rank to stop before
+     * @return the players and bounties from start to end, highest first
+     */
+    public synchronized List<Entry<UUID, Integer>> page(int start, int end) {
+	return page(root, start, end);
+    }
+
+    /**
+     * @return a copy of the leaderboard as it is now, which is never changed
+     */
+    public synchronized Snapshot snapshot() {
+	return new Snapshot(root, players, version);
+    }
+
+    private static List<Entry<UUID, Integer>> page(Node root, int start, int end) {
+	List<Entry<UUID, Integer>> page = new ArrayList<Entry<UUID, Integer>>();
+	if (start < 0 || start >= end || start >= size(root)) {
+	    return page;
+	}
+	// Walk down to the node at start, keeping the ancestors that come after it
+	Deque<Node> stack = new ArrayDeque<Node>();
+	Node node = root;
+	int index = start;
+	while (node != null) {
+	    int leftSize = size(node.left);
+	    if (index < leftSize) {
+		stack.push(node);
+		node = node.left;
+	    } else if (index == leftSize) {
+		stack.push(node);
+		break;
+	    } else {
+		index -= leftSize + 1;
+		node = node.right;
+	    }
+	}
+	// Then continue in order from there
+	while (!stack.isEmpty() && page.size() < end - start) {
+	    node = stack.pop();
+	    page.add(new AbstractMap.SimpleImmutableEntry<UUID, Integer>(node.uuid, node.bounty));
+	    for (Node child = node.right; child != null; child = child.left) {
+		stack.push(child);
+	    }
+	}
+	return page;
+    }
+
+    private static int compare(Node a, Node b) {
+	if (a.bounty != b.bounty) {
+	    return a.bounty > b.bounty ? -1 : 1;
+	}
+	return a.uuid.compareTo(b.uuid);
+    }
+
+    private static int size(Node node) {
+	return node == null ? 0 : node.size;
+    }
+
+    private static int countSizes(Node node) {
+	if (node == null) {
+	    return 0;
+	}
+	node.size = 1 + countSizes(node.left) + countSizes(node.right);
+	return node.size;
+    }
+
+    /**
+     * Copies the path to a player in a tree ordered by UUID, changing their
+     * bounty. The player must be in the tree.
+     */
+    private static Node withBounty(Node node, UUID uuid, int bounty) {
+	int cmp = uuid.compareTo(node.uuid);
+	if (cmp == 0) {
+	    return new Node(node, bounty);
+	}
+	if (cmp < 0) {
+	    return new Node(node, withBounty(node.left, uuid, bounty), node.right);
+	}
+	return new Node(node, node.left, withBounty(node.right, uuid, bounty));
+    }
+
+    /**
+     * Adds a new node to a subtree.
+     */
+    private static Node insert(Node node, Node key, Comparator<Node> order) {
+	Node[] split = split(node, key, order);
+	return merge(merge(split[0], key), split[1]);
+    }
+
+    /**
+     * Splits a subtree into the nodes ordered before key and the rest.
+     */
+    private static Node[] split(Node node, Node key, Comparator<Node> order) {
+	if (node == null) {
+	    return new Node[] { null, null };
+	}
+	if (order.compare(node, key) < 0) {
+	    Node[] split = split(node.right, key, order);
+	    return new Node[] { new Node(node, node.left, split[0]), split[1] };
+	}
+	Node[] split = split(node.left, key, order);
+	return new Node[] { split[0], new Node(node, split[1], node.right) };
+    }
+
+    /**
+     * Merges two subtrees where every node of left is ordered before right.
+     */
+    private static Node merge(Node left, Node right) {
+	if (left == null) {
+	    return right;
+	}
+	if (right == null) {
+	    return left;
+	}
+	if (left.priority > right.priority) {
+	    return new Node(left, left.left, merge(left.right, right));
+	}
+	return new Node(right, merge(left, right.left), right.right);
+    }
+
+    private static Node delete(Node node, Node target, Comparator<Node> order) {
+	if (node == null) {
+	    return null;
+	}
+	int cmp = order.compare(target, node);
+	if (cmp == 0) {
+	    return merge(node.left, node.right);
+	}
+	if (cmp < 0) {
+	    return new Node(node, delete(node.left, target, order), node.right);
+	}
+	return new Node(node, node.left, delete(node.right, target, order));
+    }
+}
\ No newline at end of file
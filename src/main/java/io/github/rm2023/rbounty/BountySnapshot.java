@@ -0,0 +1,157 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A compact binary copy of the bounty cache, used to rebuild the cache on boot
+ * without loading every user from playerdata.
+ *
+ * The file is a 32 byte header (magic, version, flags, entry count, write time
+ * and a CRC32 of the entries) followed by 20 byte entries of the two UUID longs
+ * and the bounty.
+ */
+public class BountySnapshot {
+    private static final int MAGIC = 0x52424E54; // "RBNT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 20;
+    private static final int FLAGS_OFFSET = 8;
+    private static final int FLAG_CLEAN = 1;
+
+    private final Path file;
+
+    public BountySnapshot(Path file) {
+	this.file = file;
+    }
+
+    public Path getFile() {
+	return file;
+    }
+
+    /**
+     * Writes the given bounties to the snapshot file. The file is written to a
+     * temporary file first and moved into place, so a crash mid-write leaves the
+     * previous snapshot intact.
+     *
+     * @param bounties the bounties to write, which must not change while writing
+     * @param clean    whether this snapshot is taken on a clean shutdown, meaning
+     *                 no bounty can change after it is written
+     * @return the number of entries written
+     * @throws IOException if the file could not be written
+     */
+    public synchronized int write(UuidIntMap bounties, boolean clean) throws IOException {
+	int count = bounties.size();
+	ByteBuffer body = ByteBuffer.allocate(count * ENTRY_SIZE).order(ByteOrder.BIG_ENDIAN);
+	bounties.forEach((mostSigBits, leastSigBits, bounty) -> {
+	    body.putLong(mostSigBits);
+	    body.putLong(leastSigBits);
+	    body.putInt(bounty);
+	});
+	body.flip();
+	CRC32 crc = new CRC32();
+	crc.update(body.duplicate());
+
+	ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+	header.putInt(MAGIC).putInt(VERSION).putInt(clean ? FLAG_CLEAN : 0).putInt(count)
+		.putLong(System.currentTimeMillis()).putLong(crc.getValue());
+	header.flip();
+
+	Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+	try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+		StandardOpenOption.TRUNCATE_EXISTING)) {
+	    while (header.hasRemaining()) {
+		channel.write(header);
+	    }
+	    while (body.hasRemaining()) {
+		channel.write(body);
+	    }
+	    channel.force(true);
+	}
+	Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	return count;
+    }
+
+    /**
+     * Memory maps the snapshot file and reads every entry into the given map.
+     *
+     * @param into the map to read the bounties into
+     * @return whether the snapshot was written on a clean shutdown
+     * @throws IOException if the file is missing, from another version or corrupt
+     */
+    public synchronized boolean read(UuidIntMap into) throws IOException {
+	try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+	    long size = channel.size();
+	    if (size < HEADER_SIZE) {
+		throw new IOException("Snapshot is too small to hold a header.");
+	    }
+	    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+	    buffer.order(ByteOrder.BIG_ENDIAN);
+	    if (buffer.getInt() != MAGIC) {
+		throw new IOException("Snapshot is not a bounty snapshot.");
+	    }
+	    int version = buffer.getInt();
+	    if (version != VERSION) {
+		throw new IOException("Snapshot version " + version + " is not supported.");
+	    }
+	    int flags = buffer.getInt();
+	    int count = buffer.getInt();
+	    buffer.getLong();
+	    long checksum = buffer.getLong();
+	    if (count < 0 || size != HEADER_SIZE + (long) count * ENTRY_SIZE) {
+		throw new IOException("Snapshot size does not match its entry count.");
+	    }
+
+	    ByteBuffer body = buffer.slice();
+	    CRC32 crc = new CRC32();
+	    crc.update(body.duplicate());
+	    if (crc.getValue() != checksum) {
+		throw new IOException("Snapshot checksum does not match.");
+	    }
+	    for (int i = 0; i < count; i++) {
+		into.put(body.getLong(), body.getLong(), body.getInt());
+	    }
+	    return (flags & FLAG_CLEAN) != 0;
+	}
+    }
+
+    /**
+     * Clears the clean flag of the snapshot file, so the snapshot is not trusted
+     * again if the server stops without writing a new one.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public synchronized void markUnclean() throws IOException {
+	try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+	    ByteBuffer flags = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN).putInt(0);
+	    flags.flip();
+	    channel.write(flags, FLAGS_OFFSET);
+	    channel.force(true);
+	}
+    }
+}
\ No newline at end of file
@@ -0,0 +1,84 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+/**
+ * Both leaderboards and every non-zero bounty as they were at one moment, so
+ * commands that only read bounties can run off the main thread without taking
+ * any lock. Published by {@link RBountyData} after every change.
+ */
+public final class BountyView {
+    private final BountyLeaderboard.Snapshot all;
+    private final BountyLeaderboard.Snapshot online;
+
+    BountyView(BountyLeaderboard.Snapshot all, BountyLeaderboard.Snapshot online) {
+	this.all = all;
+	this.online = online;
+    }
+
+    /**
+     * @param uuid the player's UUID
+     * @return the player's bounty
+     */
+    public int getBounty(UUID uuid) {
+	return all.getBounty(uuid);
+    }
+
+    /**
+     * Gets a player's place on the full leaderboard.
+     *
+     * @param uuid the player's UUID
+     * @return the zero based rank, or -1 if the player has no bounty
+     */
+    public int rank(UUID uuid) {
+	return all.rank(uuid);
+    }
+
+    /**
+     * @param online whether to use the online leaderboard
+     * @return the version of the leaderboard this view holds, for
+     *         {@link LeaderboardPageCache}
+     */
+    public long getVersion(boolean online) {
+	return (online ? this.online : all).getVersion();
+    }
+
+    /**
+     * @param online whether to count only online players
+     * @return the number of players on the leaderboard
+     */
+    public int size(boolean online) {
+	return (online ? this.online : all).size();
+    }
+
+    /**
+     * Gets a slice of a leaderboard.
+     *
+     * @param start  the first rank to include, starting at 0
+     * @param end    the rank to stop before
+     * @param online whether to use the online leaderboard
+     * @return the players and bounties from start to end, highest first
+     */
+    public List<Entry<UUID, Integer>> page(int start, int end, boolean online) {
+	return (online ? this.online : all).page(start, end);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,360 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flags bounty claims that look farmed: a claimer who added to the bounty they
+ * claim, a victim who added to their killer's bounty, or two players claiming
+ * each other's bounties over and over.
+ *
+ * Every player seen in a recent claim or contribution keeps two rings of fixed
+ * size: the last players whose bounty they claimed and the last players who
+ * added to their bounty, stored as the UUID longs and a time in parallel
+ * primitive arrays. Checking a claim scans at most four rings, so it takes the
+ * same time however many claims have been made, and each tracked player costs
+ * the same memory however often they claim. Players with nothing left in the
+ * window are dropped by {@link #evictIdle}.
+ *
+ * Claims held for review are kept here too until they are paid out or put
+ * back.
+ */
+public class ClaimGuard {
+    /**
+     * What is done with a claim that looks farmed.
+     */
+    public enum Action {
+	/** Claims are not checked. */
+	OFF,
+	/** The claim is paid and logged. */
+	LOG,
+	/** The bounty is taken but the payout is held for a while. */
+	HOLD,
+	/** The claim is refused and the bounty stays. */
+	BLOCK
+    }
+
+    /**
+     * Why a claim looks farmed.
+     */
+    public enum Reason {
+	/** The claimer added to the bounty they claimed. */
+	CLAIMER_CONTRIBUTED,
+	/** The victim added to the claimer's bounty. */
+	VICTIM_CONTRIBUTED,
+	/** The two players keep claiming each other's bounties. */
+	PAIR_CLAIMS
+    }
+
+    /**
+     * A claim whose payout is held.
+     */
+    public static final class Held {
+	private final UUID claimer;
+	private final UUID victim;
+	private final int amount;
+	private final long releaseAt;
+
+	public Held(UUID claimer, UUID victim, int amount, long releaseAt) {
+	    this.claimer = claimer;
+	    this.victim = victim;
+	    this.amount = amount;
+	    this.releaseAt = releaseAt;
+	}
+
+	public UUID getClaimer() {
+	    return claimer;
+	}
+
+	public UUID getVictim() {
+	    return victim;
+	}
+
+	public int getAmount() {
+	    return amount;
+	}
+
+	/**
+	 * @return when the payout is made if nobody decides sooner, in epoch millis
+	 */
+	public long getReleaseAt() {
+	    return releaseAt;
+	}
+    }
+
+    /**
+     * The last players seen alongside a player, oldest overwritten first.
+     */
+    private static final class Ring {
+	final long[] mostSigBits;
+	final long[] leastSigBits;
+	final long[] times;
+	int next;
+
+	Ring(int slots) {
+	    mostSigBits = new long[slots];
+	    leastSigBits = new long[slots];
+	    times = new long[slots];
+	}
+
+	void add(UUID uuid, long now) {
+	    mostSigBits[next] = uuid.getMostSignificantBits();
+	    leastSigBits[next] = uuid.getLeastSignificantBits();
+	    times[next] = now;
+	    next = (next + 1) % times.length;
+	}
+
+	/**
+	 * @return how many times the player was seen at or after since
+	 */
+	int count(UUID uuid, long since) {
+	    long msb = uuid.getMostSignificantBits();
+	    long lsb = uuid.getLeastSignificantBits();
+	    int count = 0;
+	    for (int i = 0; i < times.length; i++) {
+		// Empty slots have a time of 0, which is never in the window
+		if (times[i] >= since && times[i] != 0 && mostSigBits[i] == msb && leastSigBits[i] == lsb) {
+		    count++;
+		}
+	    }
+	    return count;
+	}
+
+	long newest() {
+	    return times[(next + times.length - 1) % times.length];
+	}
+    }
+
+    private static final class Recent {
+	final Ring claims;
+	final Ring contributors;
+
+	Recent(int slots) {
+	    claims = new Ring(slots);
+	    contributors = new Ring(slots);
+	}
+    }
+
+    private final Map<UUID, Recent> players = new HashMap<UUID, Recent>();
+    private final List<Held> held = new ArrayList<Held>();
+
+    private Action action = Action.LOG;
+    private int slots = 16;
+    private long windowMillis = TimeUnit.MINUTES.toMillis(60);
+    private int maxPairClaims = 3;
+
+    private long flagged = 0;
+    private long blocked = 0;
+    private long heldTotal = 0;
+
+    /**
+     * Sets what is done with farmed claims and how they are found. Changing the
+     * number of slots forgets every player's recent claims.
+     *
+     * @param action        what to do with a claim that looks farmed
+     * @param slots         how many claims and contributors are kept per player
+     * @param windowMinutes how many minutes a claim or contribution counts for
+     * @param maxPairClaims how many claims between the same two players within
+     *                      the window look farmed, or 0 to not count them
+     */
+    public synchronized void configure(Action action, int slots, int windowMinutes, int maxPairClaims) {
+	this.action = action;
+	if (slots != this.slots) {
+	    players.clear();
+	}
+	this.slots = slots;
+	this.windowMillis = TimeUnit.MINUTES.toMillis(windowMinutes);
+	this.maxPairClaims = maxPairClaims;
+    }
+
+    public synchronized Action getAction() {
+	return action;
+    }
+
+    /**
+     * Records a contribution to a player's bounty.
+     *
+     * @param target      the player whose bounty was added to
+     * @param contributor the player who paid
+     * @param now         the current time in epoch millis
+     */
+    public synchronized void contributed(UUID target, UUID contributor, long now) {
+	if (action != Action.OFF && !target.equals(contributor)) {
+	    recent(target).contributors.add(contributor, now);
+	}
+    }
+
+    /**
+     * Records a claim and checks whether it looks farmed. The claim is recorded
+     * even if it is then refused, so a pair that keeps trying stays flagged.
+     *
+     * @param claimer the player claiming the bounty
+     * @param victim  the player whose bounty is claimed
+     * @param now     the current time in epoch millis
+     * @return why the claim looks farmed, or null if it does not or claims are
+     *         not checked
+     */
+    public synchronized Reason check(UUID claimer, UUID victim, long now) {
+	if (action == Action.OFF) {
+	    return null;
+	}
+	long since = now - windowMillis;
+	Recent claimerRecent = recent(claimer);
+	Recent victimRecent = players.get(victim);
+	Reason reason = null;
+	if (victimRecent != null && victimRecent.contributors.count(claimer, since) > 0) {
+	    reason = Reason.CLAIMER_CONTRIBUTED;
+	} else if (claimerRecent.contributors.count(victim, since) > 0) {
+	    reason = Reason.VICTIM_CONTRIBUTED;
+	} else if (maxPairClaims > 0) {
+	    // Counting this claim, in either direction
+	    int claims = 1 + claimerRecent.claims.count(victim, since)
+		    + (victimRecent == null ? 0 : victimRecent.claims.count(claimer, since));
+	    if (claims >= maxPairClaims) {
+		reason = Reason.PAIR_CLAIMS;
+	    }
+	}
+	claimerRecent.claims.add(victim, now);
+	if (reason != null) {
+	    flagged++;
+	    if (action == Action.BLOCK) {
+		blocked++;
+	    }
+	}
+	return reason;
+    }
+
+    private Recent recent(UUID player) {
+	Recent recent = players.get(player);
+	if (recent == null) {
+	    recent = new Recent(slots);
+	    players.put(player, recent);
+	}
+	return recent;
+    }
+
+    /**
+     * Holds a claim's payout.
+     *
+     * @param claim the claim to hold
+     */
+    public synchronized void hold(Held claim) {
+	held.add(claim);
+	heldTotal++;
+    }
+
+    /**
+     * Removes the held claims that are due to be paid out.
+     *
+     * @param now the current time in epoch millis
+     * @return the claims to pay out
+     */
+    public synchronized List<Held> takeDue(long now) {
+	List<Held> due = new ArrayList<Held>();
+	Iterator<Held> iterator = held.iterator();
+	while (iterator.hasNext()) {
+	    Held claim = iterator.next();
+	    if (claim.getReleaseAt() <= now) {
+		due.add(claim);
+		iterator.remove();
+	    }
+	}
+	return due;
+    }
+
+    /**
+     * Removes a player's held claims.
+     *
+     * @param claimer the player the claims would pay, or null for every player
+     * @return the claims removed
+     */
+    public synchronized List<Held> take(UUID claimer) {
+	List<Held> taken = new ArrayList<Held>();
+	Iterator<Held> iterator = held.iterator();
+	while (iterator.hasNext()) {
+	    Held claim = iterator.next();
+	    if (claimer == null || claim.getClaimer().equals(claimer)) {
+		taken.add(claim);
+		iterator.remove();
+	    }
+	}
+	return taken;
+    }
+
+    /**
+     * @return a copy of the held claims, oldest first
+     */
+    public synchronized List<Held> getHeld() {
+	return new ArrayList<Held>(held);
+    }
+
+    /**
+     * Forgets the players with no claim or contribution left in the window.
+     *
+     * @param now the current time in epoch millis
+     * @return the number of players forgotten
+     */
+    public synchronized int evictIdle(long now) {
+	long since = now - windowMillis;
+	int evicted = 0;
+	Iterator<Recent> iterator = players.values().iterator();
+	while (iterator.hasNext()) {
+	    Recent recent = iterator.next();
+	    if (recent.claims.newest() < since && recent.contributors.newest() < since) {
+		iterator.remove();
+		evicted++;
+	    }
+	}
+	return evicted;
+    }
+
+    /**
+     * @return the number of players whose recent claims are kept
+     */
+    public synchronized int getTracked() {
+	return players.size();
+    }
+
+    /**
+     * @return the number of claims that looked farmed
+     */
+    public synchronized long getFlagged() {
+	return flagged;
+    }
+
+    /**
+     * @return the number of claims refused
+     */
+    public synchronized long getBlocked() {
+	return blocked;
+    }
+
+    /**
+     * @return the number of claims whose payout was held
+     */
+    public synchronized long getHeldTotal() {
+	return heldTotal;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,134 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A token bucket per player and command, checked in constant time without
+ * locks.
+ *
+ * Each bucket is a single long holding the time it will be full again (the
+ * generic cell rate algorithm), so taking a token is one compare-and-set. A
+ * bucket that is full again holds no information, so buckets that have all
+ * filled up are evicted by {@link #evictIdle}.
+ */
+public class CommandRateLimiter {
+    public enum Command {
+	ADD, TOP, TOP_ONLINE, VIEW
+    }
+
+    private static final int COMMANDS = Command.values().length;
+
+    // Nanoseconds per token and the bucket size in nanoseconds, per command. An
+    // interval of 0 means the command is not limited. Replaced whole on changes.
+    private volatile long[] intervals = new long[COMMANDS];
+    private volatile long[] capacities = new long[COMMANDS];
+
+    // Times are measured from here, so an empty bucket (0) is always full
+    private final long origin = System.nanoTime();
+
+    private final Map<UUID, AtomicLongArray> buckets = new ConcurrentHashMap<UUID, AtomicLongArray>();
+
+    /**
+     * Sets the limit of a command. Takes effect for new tokens right away.
+     *
+     * @param command   the command to limit
+     * @param perMinute how many times per minute the command may be used, or 0
+     *                  for no limit
+     * @param burst     how many times the command may be used at once
+     */
+    public synchronized void setLimit(Command command, int perMinute, int burst) {
+	long interval = perMinute <= 0 ? 0 : TimeUnit.MINUTES.toNanos(1) / perMinute;
+	long[] newIntervals = intervals.clone();
+	long[] newCapacities = capacities.clone();
+	newIntervals[command.ordinal()] = interval;
+	newCapacities[command.ordinal()] = interval * Math.max(1, burst);
+	capacities = newCapacities;
+	intervals = newIntervals;
+    }
+
+    /**
+     * Takes a token from a player's bucket for a command.
+     *
+     * @param player  the player using the command
+     * @param command the command
+     * @return 0 if the command may be used, or otherwise how many milliseconds
+     *         until it may
+     */
+    public long tryAcquire(UUID player, Command command) {
+	int index = command.ordinal();
+	long interval = intervals[index];
+	if (interval == 0) {
+	    return 0;
+	}
+	long capacity = capacities[index];
+	AtomicLongArray bucket = buckets.get(player);
+	if (bucket == null) {
+	    bucket = buckets.computeIfAbsent(player, uuid -> new AtomicLongArray(COMMANDS));
+	}
+	while (true) {
+	    long now = System.nanoTime() - origin;
+	    long full = bucket.get(index);
+	    // Time the bucket is full again once this token is taken
+	    long next = Math.max(full, now) + interval;
+	    if (next - now > capacity) {
+		return TimeUnit.NANOSECONDS.toMillis(next - now - capacity) + 1;
+	    }
+	    if (bucket.compareAndSet(index, full, next)) {
+		return 0;
+	    }
+	}
+    }
+
+    /**
+     * Removes the buckets of players whose every bucket is full again. A player
+     * using a command while their buckets are evicted may get one extra burst.
+     *
+     * @return the number of players removed
+     */
+    public int evictIdle() {
+	long now = System.nanoTime() - origin;
+	int evicted = 0;
+	Iterator<AtomicLongArray> iterator = buckets.values().iterator();
+	while (iterator.hasNext()) {
+	    AtomicLongArray bucket = iterator.next();
+	    boolean idle = true;
+	    for (int i = 0; i < COMMANDS && idle; i++) {
+		idle = bucket.get(i) <= now;
+	    }
+	    if (idle) {
+		iterator.remove();
+		evicted++;
+	    }
+	}
+	return evicted;
+    }
+
+    /**
+     * @return the number of players with a bucket
+     */
+    public int size() {
+	return buckets.size();
+    }
+}
\ No newline at end of file
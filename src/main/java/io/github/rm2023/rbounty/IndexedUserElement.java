@@ -0,0 +1,85 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.ArgumentParseException;
+import org.spongepowered.api.command.args.CommandArgs;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.args.CommandElement;
+import org.spongepowered.api.entity.living.player.User;
+import org.spongepowered.api.service.user.UserStorageService;
+import org.spongepowered.api.text.Text;
+
+/**
+ * A command argument for a player by name, like GenericArguments.user but
+ * resolved and tab completed through a {@link PlayerNameIndex} instead of
+ * searching every stored profile. Names the index doesn't know yet are still
+ * looked up in the user storage.
+ */
+public class IndexedUserElement extends CommandElement {
+    private static final int SUGGESTIONS = 20;
+
+    private final Supplier<PlayerNameIndex> index;
+    private final Supplier<UserStorageService> userStorage;
+
+    /**
+     * @param key         the key the user is stored under
+     * @param index       gets the name index, or null until it exists
+     * @param userStorage gets the user storage, or null until it exists
+     */
+    public IndexedUserElement(Text key, Supplier<PlayerNameIndex> index, Supplier<UserStorageService> userStorage) {
+	super(key);
+	this.index = index;
+	this.userStorage = userStorage;
+    }
+
+    @Override
+    protected Object parseValue(CommandSource source, CommandArgs args) throws ArgumentParseException {
+	String name = args.next();
+	UserStorageService users = userStorage.get();
+	if (users == null) {
+	    throw args.createError(Text.of("Players can't be looked up until the server has started."));
+	}
+	PlayerNameIndex names = index.get();
+	UUID uuid = names == null ? null : names.get(name);
+	Optional<User> user = uuid == null ? Optional.empty() : users.get(uuid);
+	if (!user.isPresent()) {
+	    user = users.get(name);
+	}
+	if (!user.isPresent()) {
+	    throw args.createError(Text.of("Could not find a player named " + name + "."));
+	}
+	return user.get();
+    }
+
+    @Override
+    public List<String> complete(CommandSource src, CommandArgs args, CommandContext context) {
+	PlayerNameIndex names = index.get();
+	if (names == null) {
+	    return new ArrayList<String>();
+	}
+	return names.complete(args.nextIfPresent().orElse(""), SUGGESTIONS);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,130 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how long an operation takes. Every sample is counted in a power of two
+ * bucket of microseconds, so percentiles can be estimated without keeping the
+ * samples. Safe to use from any thread.
+ */
+public class LatencyRecorder {
+    private static final int BUCKETS = 40;
+
+    private final String name;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    public LatencyRecorder(String name) {
+	this.name = name;
+    }
+
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Records a sample.
+     *
+     * @param nanos how long the operation took in nanoseconds
+     */
+    public void record(long nanos) {
+	count.incrementAndGet();
+	totalNanos.addAndGet(nanos);
+	long max;
+	while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+	}
+	long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+	int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	buckets.incrementAndGet(bucket);
+    }
+
+    /**
+     * Records the time since a start time taken from {@link System#nanoTime}.
+     *
+     * @param startNanos when the operation started
+     * @return how long the operation took in nanoseconds
+     */
+    public long recordSince(long startNanos) {
+	long nanos = System.nanoTime() - startNanos;
+	record(nanos);
+	return nanos;
+    }
+
+    public long getCount() {
+	return count.get();
+    }
+
+    public double getAverageMillis() {
+	long samples = count.get();
+	return samples == 0 ? 0 : totalNanos.get() / (double) samples / 1_000_000;
+    }
+
+    public double getMaxMillis() {
+	return maxNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Estimates a percentile from the buckets. The result is the upper bound of
+     * the bucket the percentile falls in, so it is at most twice the real value,
+     * and never more than the maximum.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the estimated latency in milliseconds
+     */
+    public double getPercentileMillis(double percentile) {
+	long samples = 0;
+	long[] counts = new long[BUCKETS];
+	for (int i = 0; i < BUCKETS; i++) {
+	    counts[i] = buckets.get(i);
+	    samples += counts[i];
+	}
+	if (samples == 0) {
+	    return 0;
+	}
+	long target = (long) Math.ceil(samples * percentile / 100);
+	long seen = 0;
+	for (int i = 0; i < BUCKETS; i++) {
+	    seen += counts[i];
+	    if (seen >= target) {
+		return Math.min((1L << i) / 1000.0, getMaxMillis());
+	    }
+	}
+	return getMaxMillis();
+    }
+
+    public void reset() {
+	count.set(0);
+	totalNanos.set(0);
+	maxNanos.set(0);
+	for (int i = 0; i < BUCKETS; i++) {
+	    buckets.set(i, 0);
+	}
+    }
+
+    @Override
+    public String toString() {
+	return String.format("%s: %d calls, avg %.2fms, p99 %.2fms, max %.2fms", name, getCount(), getAverageMillis(),
+		getPercentileMillis(99), getMaxMillis());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,137 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rendered pages of a {@link BountyLeaderboard}, kept until a change touches
+ * the ranks they show.
+ *
+ * Every page remembers the version of the leaderboard it was rendered from. A
+ * page rendered from a version older than the last change is not stored, since
+ * it may show ranks that change moved, and a page is not handed to a reader of
+ * an older {@link BountyView} than the one it was rendered from.
+ *
+ * @param <T> the rendered page type
+ */
+public class LeaderboardPageCache<T> implements BountyLeaderboard.ChangeListener {
+    private static final int MAX_PAGES = 64;
+
+    private static final class Page<T> {
+	final T page;
+	final long version;
+
+	Page(T page, long version) {
+	    this.page = page;
+	    this.version = version;
+	}
+    }
+
+    private final Map<Long, Page<T>> pages = new HashMap<Long, Page<T>>();
+    // The version of the leaderboard after the last change this was told about
+    private long version = 0;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static long key(int start, int end) {
+	return ((long) start << 32) | (end & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return the rendered page from start to end, or null if it isn't cached
+     */
+    public T get(int start, int end) {
+	return get(start, end, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param version the version of the leaderboard the page is wanted from
+     * @return the rendered page from start to end, or null if it isn't cached or
+     *         was rendered from a later version
+     */
+    public synchronized T get(int start, int end, long version) {
+	Page<T> page = pages.get(key(start, end));
+	if (page == null || page.version > version) {
+	    misses.incrementAndGet();
+	    return null;
+	}
+	hits.incrementAndGet();
+	return page.page;
+    }
+
+    /**
+     * @return the version of the last change, to be passed to {@link #put} once
+     *         a page has been rendered from the leaderboard
+     */
+    public synchronized long getVersion() {
+	return version;
+    }
+
+    /**
+     * Stores a rendered page, unless the leaderboard changed since the version
+     * it was rendered from.
+     *
+     * @param start   the first rank on the page
+     * @param end     the rank after the last one on the page
+     * @param page    the rendered page
+     * @param version the version read before the page was rendered, or the
+     *                version of the view it was rendered from
+     */
+    public synchronized void put(int start, int end, T page, long version) {
+	if (version < this.version) {
+	    return;
+	}
+	if (pages.size() >= MAX_PAGES) {
+	    pages.clear();
+	}
+	pages.put(key(start, end), new Page<T>(page, version));
+    }
+
+    @Override
+    public synchronized void changed(int from, int to, long version) {
+	this.version = Math.max(this.version, version);
+	Iterator<Long> keys = pages.keySet().iterator();
+	while (keys.hasNext()) {
+	    long key = keys.next();
+	    int start = (int) (key >> 32);
+	    int end = (int) key;
+	    if (start < to && from < end) {
+		keys.remove();
+	    }
+	}
+    }
+
+    /**
+     * Drops every cached page.
+     */
+    public synchronized void clear() {
+	pages.clear();
+    }
+
+    public long getHits() {
+	return hits.get();
+    }
+
+    public long getMisses() {
+	return misses.get();
+    }
+}
\ No newline at end of file
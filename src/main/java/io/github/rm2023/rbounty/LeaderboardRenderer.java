@@ -0,0 +1,138 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.function.IntFunction;
+
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.format.TextColors;
+
+/**
+ * Renders pages of the bounty leaderboards for chat, keeping rendered pages
+ * until a bounty change moves the ranks they show.
+ */
+public class LeaderboardRenderer {
+    private final RBountyData data;
+    private final ProfileNameCache names;
+    private final IntFunction<String> format;
+    private final LeaderboardPageCache<Text> topCache = new LeaderboardPageCache<Text>();
+    private final LeaderboardPageCache<Text> topOnlineCache = new LeaderboardPageCache<Text>();
+
+    /**
+     * Creates a renderer and registers its caches as the leaderboard listeners of
+     * the data layer.
+     *
+     * @param data   the bounty data
+     * @param names  the cache to look up names in
+     * @param format formats a bounty
+     */
+    public LeaderboardRenderer(RBountyData data, ProfileNameCache names, IntFunction<String> format) {
+	this.data = data;
+	this.names = names;
+	this.format = format;
+	data.setLeaderboardListeners(topCache, topOnlineCache);
+    }
+
+    /**
+     * Gets a page of a leaderboard, from the cache if it hasn't changed since it
+     * was last rendered.
+     *
+     * @param start  the first position to show on the leaderboard
+     * @param end    the position to stop before
+     * @param online whether to only show online players
+     * @return a textual representation of the leaderboard
+     */
+    public Text render(int start, int end, boolean online) {
+	// Pages rendered while loading carry a progress note, so they aren't kept
+	if (data.isLoading()) {
+	    return renderUncached(start, end, online);
+	}
+	LeaderboardPageCache<Text> cache = online ? topOnlineCache : topCache;
+	Text page = cache.get(start, end);
+	if (page == null) {
+	    long version = cache.getVersion();
+	    page = renderUncached(start, end, online);
+	    cache.put(start, end, page, version);
+	}
+	return page;
+    }
+
+    /**
+     * Renders a page of a leaderboard without using the cache.
+     */
+    public Text renderUncached(int start, int end, boolean online) {
+	if (start < 0 || start >= end) {
+	    return renderPage(start, null);
+	}
+	// Both leaderboards only hold non-zero bounties, and slices stop at their end
+	return renderPage(start, online ? data.getOnlineLeaderboard(start, end) : data.getLeaderboard(start, end));
+    }
+
+    /**
+     * Gets a page of a leaderboard as it is in a view, which is safe off the main
+     * thread. Shares the cache with {@link #render(int, int, boolean)}, keyed by
+     * the version of the view.
+     */
+    public Text render(BountyView view, int start, int end, boolean online) {
+	if (start < 0 || start >= end) {
+	    return renderPage(start, null);
+	}
+	if (data.isLoading()) {
+	    return renderPage(start, view.page(start, end, online));
+	}
+	LeaderboardPageCache<Text> cache = online ? topOnlineCache : topCache;
+	long version = view.getVersion(online);
+	Text page = cache.get(start, end, version);
+	if (page == null) {
+	    page = renderPage(start, view.page(start, end, online));
+	    cache.put(start, end, page, version);
+	}
+	return page;
+    }
+
+    private Text renderPage(int start, List<Entry<UUID, Integer>> page) {
+	if (page == null || page.isEmpty()) {
+	    return Text.builder("No bounties were found in that range!").color(TextColors.BLUE).build();
+	}
+	Text.Builder builder = Text.builder();
+
+	builder.append(Text.of("\n---------------------LEADERBOARD---------------------\n"));
+	for (int i = 0; i < page.size(); i++) {
+	    builder.append(Text.of((start + i + 1) + ". " + names.getName(page.get(i).getKey()) + ", "
+		    + format.apply(page.get(i).getValue()) + "\n"));
+	}
+	builder.append(Text.of("-----------------------------------------------------"));
+	if (data.isLoading()) {
+	    builder.append(Text.of("\nBounties are still loading (" + data.getHydrated() + "/"
+		    + data.getHydrationTotal() + "), so this leaderboard may be incomplete."));
+	}
+	builder.color(TextColors.BLUE);
+	return builder.build();
+    }
+
+    public LeaderboardPageCache<Text> getTopCache() {
+	return topCache;
+    }
+
+    public LeaderboardPageCache<Text> getTopOnlineCache() {
+	return topOnlineCache;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,293 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.spongepowered.api.profile.GameProfile;
+
+/**
+ * An in-memory prefix index of player names, for resolving and tab completing
+ * names without going through the user storage.
+ *
+ * Every name known at startup is kept in one array sorted case insensitively,
+ * with the UUIDs in parallel arrays, so the whole index costs little more than
+ * the names themselves and a prefix is found by binary search. Players seen
+ * since startup are kept in a small skip list instead. A player who changed
+ * their name is only found under their new one.
+ */
+public class PlayerNameIndex {
+    private static final int SCAN_LIMIT = 500;
+    private static final int TOP_BOUNTIES = 100;
+
+    private static class Names {
+	final String[] names;
+	final long[] mostSigBits;
+	final long[] leastSigBits;
+	// Positions of the names in UUID order, to find a player's name
+	final int[] byUuid;
+
+	Names(String[] names, long[] mostSigBits, long[] leastSigBits) {
+	    this.names = names;
+	    this.mostSigBits = mostSigBits;
+	    this.leastSigBits = leastSigBits;
+	    Integer[] positions = new Integer[names.length];
+	    for (int i = 0; i < positions.length; i++) {
+		positions[i] = i;
+	    }
+	    Arrays.sort(positions, (a, b) -> compare(a, b));
+	    byUuid = new int[positions.length];
+	    for (int i = 0; i < positions.length; i++) {
+		byUuid[i] = positions[i];
+	    }
+	}
+
+	private int compare(int a, int b) {
+	    int compare = Long.compare(mostSigBits[a], mostSigBits[b]);
+	    return compare != 0 ? compare : Long.compare(leastSigBits[a], leastSigBits[b]);
+	}
+
+	/**
+	 * @return the name of the player, or null if they aren't in the array
+	 */
+	String nameOf(UUID uuid) {
+	    int low = 0;
+	    int high = byUuid.length - 1;
+	    while (low <= high) {
+		int middle = (low + high) >>> 1;
+		int position = byUuid[middle];
+		int compare = Long.compare(mostSigBits[position], uuid.getMostSignificantBits());
+		if (compare == 0) {
+		    compare = Long.compare(leastSigBits[position], uuid.getLeastSignificantBits());
+		}
+		if (compare == 0) {
+		    return names[position];
+		} else if (compare < 0) {
+		    low = middle + 1;
+		} else {
+		    high = middle - 1;
+		}
+	    }
+	    return null;
+	}
+    }
+
+    private static class Match {
+	final String name;
+	final int bounty;
+
+	Match(String name, int bounty) {
+	    this.name = name;
+	    this.bounty = bounty;
+	}
+    }
+
+    private final RBountyData data;
+    private volatile Names names = new Names(new String[0], new long[0], new long[0]);
+    // Lower case name to player, for players seen since the index was built
+    private final ConcurrentSkipListMap<String, Entry<UUID, String>> recent = new ConcurrentSkipListMap<String, Entry<UUID, String>>();
+    // The current lower case name of every player seen since the index was built
+    private final ConcurrentHashMap<UUID, String> current = new ConcurrentHashMap<UUID, String>();
+
+    /**
+     * @param data the bounty data, used to rank suggestions
+     */
+    public PlayerNameIndex(RBountyData data) {
+	this.data = data;
+    }
+
+    /**
+     * Replaces the sorted names with the names of the given profiles. Players seen
+     * since are kept.
+     *
+     * @param profiles every stored profile
+     */
+    public void build(Collection<GameProfile> profiles) {
+	List<GameProfile> named = new ArrayList<GameProfile>(profiles.size());
+	for (GameProfile profile : profiles) {
+	    if (profile.getName().isPresent()) {
+		named.add(profile);
+	    }
+	}
+	named.sort(Comparator.comparing(profile -> profile.getName().get(), String.CASE_INSENSITIVE_ORDER));
+	String[] sorted = new String[named.size()];
+	long[] mostSigBits = new long[named.size()];
+	long[] leastSigBits = new long[named.size()];
+	for (int i = 0; i < sorted.length; i++) {
+	    GameProfile profile = named.get(i);
+	    sorted[i] = profile.getName().get();
+	    mostSigBits[i] = profile.getUniqueId().getMostSignificantBits();
+	    leastSigBits[i] = profile.getUniqueId().getLeastSignificantBits();
+	}
+	names = new Names(sorted, mostSigBits, leastSigBits);
+    }
+
+    /**
+     * Records a player's current name, such as when they join.
+     *
+     * @param uuid the player's UUID
+     * @param name the player's name
+     */
+    public void put(UUID uuid, String name) {
+	String lower = name.toLowerCase(Locale.ROOT);
+	String old = current.put(uuid, lower);
+	if (old != null && !old.equals(lower)) {
+	    Entry<UUID, String> previous = recent.get(old);
+	    if (previous != null && previous.getKey().equals(uuid)) {
+		recent.remove(old, previous);
+	    }
+	}
+	recent.put(lower, new SimpleImmutableEntry<UUID, String>(uuid, name));
+    }
+
+    /**
+     * @return whether the player is still known by this name
+     */
+    private boolean isCurrent(UUID uuid, String name) {
+	String lower = current.get(uuid);
+	return lower == null || lower.equals(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Finds a player by their exact name, ignoring case.
+     *
+     * @param name the name
+     * @return the player's UUID, or null if no known player has that name
+     */
+    public UUID get(String name) {
+	Entry<UUID, String> seen = recent.get(name.toLowerCase(Locale.ROOT));
+	if (seen != null) {
+	    return seen.getKey();
+	}
+	Names snapshot = names;
+	int index = Arrays.binarySearch(snapshot.names, name, String.CASE_INSENSITIVE_ORDER);
+	if (index < 0) {
+	    return null;
+	}
+	UUID uuid = new UUID(snapshot.mostSigBits[index], snapshot.leastSigBits[index]);
+	return isCurrent(uuid, name) ? uuid : null;
+    }
+
+    /**
+     * Suggests names starting with a prefix, players with the highest bounties
+     * first and then alphabetically.
+     *
+     * @param prefix the start of the name, in any case
+     * @param limit  the most names to suggest
+     * @return the suggested names
+     */
+    public List<String> complete(String prefix, int limit) {
+	String lower = prefix.toLowerCase(Locale.ROOT);
+	Set<String> seen = new HashSet<String>();
+	List<Match> matches = new ArrayList<Match>();
+	for (Entry<UUID, String> player : recent.subMap(lower, lower + Character.MAX_VALUE).values()) {
+	    if (seen.add(player.getValue().toLowerCase(Locale.ROOT))) {
+		matches.add(new Match(player.getValue(), data.getCachedBounty(player.getKey())));
+	    }
+	}
+	Names snapshot = names;
+	int start = lowerBound(snapshot.names, lower);
+	int scanned = 0;
+	for (int i = start; i < snapshot.names.length && scanned < SCAN_LIMIT; i++, scanned++) {
+	    String name = snapshot.names[i];
+	    if (!name.regionMatches(true, 0, lower, 0, lower.length())) {
+		break;
+	    }
+	    UUID uuid = new UUID(snapshot.mostSigBits[i], snapshot.leastSigBits[i]);
+	    if (isCurrent(uuid, name) && seen.add(name.toLowerCase(Locale.ROOT))) {
+		matches.add(new Match(name, data.getCachedBounty(uuid)));
+	    }
+	}
+	if (scanned >= SCAN_LIMIT) {
+	    // Too many matches to rank them all, so make sure the biggest bounties are
+	    // still among them
+	    for (Entry<UUID, Integer> bounty : data.getLeaderboard(0, TOP_BOUNTIES)) {
+		String name = nameOf(snapshot, bounty.getKey());
+		if (name != null && name.regionMatches(true, 0, lower, 0, lower.length())
+			&& seen.add(name.toLowerCase(Locale.ROOT))) {
+		    matches.add(new Match(name, bounty.getValue()));
+		}
+	    }
+	}
+	matches.sort((a, b) -> a.bounty != b.bounty ? Integer.compare(b.bounty, a.bounty)
+		: String.CASE_INSENSITIVE_ORDER.compare(a.name, b.name));
+	List<String> suggestions = new ArrayList<String>(Math.min(limit, matches.size()));
+	for (int i = 0; i < matches.size() && i < limit; i++) {
+	    suggestions.add(matches.get(i).name);
+	}
+	return suggestions;
+    }
+
+    /**
+     * Finds a player's current name.
+     *
+     * @param uuid the player's UUID
+     * @return the name, or null if the index doesn't know them
+     */
+    public String getName(UUID uuid) {
+	return nameOf(names, uuid);
+    }
+
+    /**
+     * @return the player's current name, or null if the index doesn't know them
+     */
+    private String nameOf(Names snapshot, UUID uuid) {
+	String lower = current.get(uuid);
+	if (lower == null) {
+	    return snapshot.nameOf(uuid);
+	}
+	Entry<UUID, String> player = recent.get(lower);
+	return player == null ? null : player.getValue();
+    }
+
+    /**
+     * @return the first position whose name is not before the prefix
+     */
+    private static int lowerBound(String[] names, String prefix) {
+	int low = 0;
+	int high = names.length;
+	while (low < high) {
+	    int middle = (low + high) >>> 1;
+	    if (String.CASE_INSENSITIVE_ORDER.compare(names[middle], prefix) < 0) {
+		low = middle + 1;
+	    } else {
+		high = middle;
+	    }
+	}
+	return low;
+    }
+
+    /**
+     * @return the number of names indexed
+     */
+    public int size() {
+	return names.names.length + recent.size();
+    }
+}
\ No newline at end of file
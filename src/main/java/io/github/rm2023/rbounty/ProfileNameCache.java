@@ -0,0 +1,142 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import org.spongepowered.api.profile.GameProfile;
+import org.spongepowered.api.profile.GameProfileCache;
+
+/**
+ * A bounded cache of player names by UUID, so bounty output can name players
+ * without loading their offline {@link org.spongepowered.api.entity.living.player.User},
+ * which reads their whole playerdata file.
+ *
+ * Names missing from the cache are looked up in the {@link PlayerNameIndex} and
+ * then in Sponge's profile cache, neither of which touch playerdata. When the
+ * cache is full the least recently used name is dropped.
+ */
+public class ProfileNameCache {
+    private final Map<UUID, String> names;
+    private final PlayerNameIndex index;
+    private final GameProfileCache profiles;
+    private final int capacity;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * @param capacity the most names to keep
+     * @param index    the name index to look up missing names in, or null
+     * @param profiles Sponge's profile cache to look up missing names in, or null
+     */
+    public ProfileNameCache(int capacity, PlayerNameIndex index, GameProfileCache profiles) {
+	this.capacity = Math.max(1, capacity);
+	this.index = index;
+	this.profiles = profiles;
+	names = new LinkedHashMap<UUID, String>(16, 0.75f, true) {
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    protected boolean removeEldestEntry(Entry<UUID, String> eldest) {
+		return size() > ProfileNameCache.this.capacity;
+	    }
+	};
+    }
+
+    /**
+     * Records a player's current name, such as when they join.
+     *
+     * @param uuid the player's UUID
+     * @param name the player's name
+     */
+    public synchronized void put(UUID uuid, String name) {
+	names.put(uuid, name);
+    }
+
+    /**
+     * Caches the names of the players on a leaderboard page, so the first
+     * render of the leaderboard doesn't have to look them up. The first entries
+     * are cached last, so they are the last to be dropped.
+     *
+     * @param page the leaderboard entries
+     */
+    public void preload(List<Entry<UUID, Integer>> page) {
+	for (int i = page.size() - 1; i >= 0; i--) {
+	    UUID uuid = page.get(i).getKey();
+	    String name = lookup(uuid);
+	    if (name != null) {
+		put(uuid, name);
+	    }
+	}
+    }
+
+    /**
+     * Gets a player's name.
+     *
+     * @param uuid the player's UUID
+     * @return the name, or the UUID if no name is known
+     */
+    public String getName(UUID uuid) {
+	synchronized (this) {
+	    String name = names.get(uuid);
+	    if (name != null) {
+		hits++;
+		return name;
+	    }
+	    misses++;
+	}
+	String name = lookup(uuid);
+	if (name == null) {
+	    return uuid.toString();
+	}
+	put(uuid, name);
+	return name;
+    }
+
+    private String lookup(UUID uuid) {
+	String name = index == null ? null : index.getName(uuid);
+	if (name == null && profiles != null) {
+	    name = profiles.getById(uuid).flatMap(GameProfile::getName).orElse(null);
+	}
+	return name;
+    }
+
+    /**
+     * @return the number of names cached
+     */
+    public synchronized int size() {
+	return names.size();
+    }
+
+    public int getCapacity() {
+	return capacity;
+    }
+
+    public synchronized long getHits() {
+	return hits;
+    }
+
+    public synchronized long getMisses() {
+	return misses;
+    }
+}
\ No newline at end of file
@@ -17,43 +17,290 @@
 
 package io.github.rm2023.rbounty;
 
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Map.Entry;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
 
 import org.spongepowered.api.Sponge;
-import org.spongepowered.api.data.DataTransactionResult;
 import org.spongepowered.api.entity.living.player.User;
 import org.spongepowered.api.profile.GameProfile;
 import org.spongepowered.api.service.user.UserStorageService;
 
-import io.github.rm2023.rbounty.data.BountyData;
+import io.github.rm2023.rbounty.storage.BountyStorage;
+import io.github.rm2023.rbounty.storage.DatabaseBountyStorage;
+import io.github.rm2023.rbounty.storage.PlayerDataBountyStorage;
+import io.github.rm2023.rbounty.storage.SharedBountyStorage;
 
 import org.slf4j.Logger;
 
 public class RBountyData {
     // Cache for RBountyData. All bounty gets use cache
-    // All bounty sets write both to cache and playerdata
-    // Cache is constructed from playerdata on initialization
-    protected HashMap<UUID, Integer> cache;
+    // All bounty sets write both to cache and storage
+    // Cache is constructed from storage on initialization
+    // Every access to a player's bounty must hold the lock of their stripe, and
+    // every bounty change, read and direct storage write happens under that lock
+    protected final StripedUuidIntMap cache = new StripedUuidIntMap(64);
 
     protected UserStorageService userStorage;
 
+    private final BountyStorage storage;
+
+    // Set when other servers share the storage. Bounty changes that depend on
+    // the current bounty are then made by the storage, and changes made by other
+    // servers are applied to the cache by pollChanges.
+    private final SharedBountyStorage shared;
+    private volatile long sequence = 0;
+    private final AtomicLong polledChanges = new AtomicLong();
+
     private Logger logger;
 
-    public ArrayList<Map.Entry<UUID, Integer>> leaderboard;
+    // Kept in step with the cache, so it never needs a full rebuild
+    private final BountyLeaderboard leaderboard = new BountyLeaderboard();
+
+    // The same leaderboard, but only for players who are online
+    private final BountyLeaderboard onlineLeaderboard = new BountyLeaderboard();
+    private final Set<UUID> online = ConcurrentHashMap.newKeySet();
+
+    // Both leaderboards as of the last change, for reading without a lock.
+    // Writers change the leaderboards and publish the view under viewLock, which
+    // is only taken inside a stripe lock, so every view holds whole changes.
+    private final Object viewLock = new Object();
+    private volatile BountyView view = new BountyView(leaderboard.snapshot(), onlineLeaderboard.snapshot());
+
+    // Set while a bulk operation runs. Changes then skip the leaderboards, which
+    // are rebuilt once when it ends.
+    private volatile boolean bulk = false;
+
+    // Set while the cache is being hydrated in the background. Until it is cleared
+    // the cache only holds the users loaded so far.
+    private volatile boolean loading = false;
+    // Run once the cache is done loading. Guards clearing loading.
+    private final List<Runnable> loadedListeners = new ArrayList<Runnable>();
+    private final AtomicInteger hydrated = new AtomicInteger();
+    private volatile int hydrationTotal = 0;
+
+    // Users whose bounty was set since the data layer was created. Hydration
+    // never overwrites these, since playerdata read before the set is stale.
+    private final Set<UUID> written = ConcurrentHashMap.newKeySet();
+
+    private final BountySnapshot snapshot;
 
-    private boolean validLeaderboard = false;
+    // In sparse mode a user without bounty data has a bounty of 0, so only
+    // non-zero bounties are kept in the cache or written to playerdata
+    private final boolean sparse;
+
+    // With write-behind, bounty changes only go to the cache right away and are
+    // written to playerdata later by flushWrites. Holds the newest unwritten
+    // bounty of each user, so repeated changes are written once. Hydration also
+    // queues the 0 of users without bounty data here, since it runs off the main
+    // thread.
+    private final boolean writeBehind;
+    private final ConcurrentHashMap<UUID, Integer> pendingWrites = new ConcurrentHashMap<UUID, Integer>();
+    private final LatencyRecorder flushLatency = new LatencyRecorder("flush");
+
+    private final LatencyRecorder loadLatency = new LatencyRecorder("cache load");
+    private final LatencyRecorder rebuildLatency = new LatencyRecorder("leaderboard rebuild");
+    private final AtomicLong persistFailures = new AtomicLong();
+
+    /**
+     * Creates the data layer. Nothing is loaded until {@link #load} is called.
+     * 
+     * @param logger      the plugin logger
+     * @param snapshot    the snapshot file to load from and save to, or null to
+     *                    always load from playerdata
+     * @param sparse      whether only non-zero bounties are stored
+     * @param writeBehind whether bounty changes are queued and written to
+     *                    playerdata by {@link #flushWrites} instead of right away
+     */
+    public RBountyData(Logger logger, BountySnapshot snapshot, boolean sparse, boolean writeBehind) {
+	this(logger, Sponge.getServiceManager().provide(UserStorageService.class).get(), snapshot, sparse,
+		writeBehind);
+    }
+
+    /**
+     * Creates the data layer on top of the given user storage, so it can be used
+     * without a running server. Bounties are stored in playerdata.
+     */
+    public RBountyData(Logger logger, UserStorageService userStorage, BountySnapshot snapshot, boolean sparse,
+	    boolean writeBehind) {
+	this(logger, userStorage, new PlayerDataBountyStorage(userStorage, logger, sparse), snapshot, sparse,
+		writeBehind);
+    }
 
-    public RBountyData(Logger logger) {
-	userStorage = Sponge.getServiceManager().provide(UserStorageService.class).get();
+    /**
+     * Creates the data layer on top of the given user storage, storing bounties
+     * in the given bounty storage.
+     */
+    public RBountyData(Logger logger, UserStorageService userStorage, BountyStorage storage,
+	    BountySnapshot snapshot, boolean sparse, boolean writeBehind) {
+	this.userStorage = userStorage;
+	this.storage = storage;
+	this.shared = storage instanceof SharedBountyStorage && ((SharedBountyStorage) storage).isShared()
+		? (SharedBountyStorage) storage
+		: null;
 	this.logger = logger;
-	resetCache();
-	resetLeaderboard();
+	this.snapshot = snapshot;
+	this.sparse = sparse;
+	// Other servers only see a change once it is written
+	this.writeBehind = writeBehind && shared == null;
+    }
+
+    /**
+     * Fills the cache. If the storage can read every bounty at once, the cache
+     * is filled from it directly and the snapshot is not used.
+     * Otherwise, if a snapshot from a clean shutdown exists, the cache is
+     * rebuilt from it and only users missing from it are read from playerdata,
+     * unless storage is sparse and missing users have no bounty anyway.
+     * If the snapshot was not taken on a clean shutdown it is served right away
+     * while every user is reconciled against playerdata. Otherwise, every user is
+     * read from playerdata.
+     * 
+     * @param executor  the executor to hydrate on in parallel batches, or null to
+     *                  hydrate on the calling thread
+     * @param threads   how many batches may be loaded at once
+     * @param batchSize how many profiles are loaded per batch
+     */
+    public void load(Executor executor, int threads, int batchSize) {
+	if (storage instanceof DatabaseBountyStorage) {
+	    if (!loadAll()) {
+		hydrate(executor, threads, batchSize, userStorage.getAll(), false);
+	    }
+	    return;
+	}
+	Boolean clean = readSnapshot();
+	if (clean == null) {
+	    if (executor == null) {
+		resetCache();
+	    } else {
+		hydrate(executor, threads, batchSize, userStorage.getAll(), false);
+	    }
+	} else if (clean) {
+	    if (sparse) {
+		return;
+	    }
+	    List<GameProfile> missing = new ArrayList<GameProfile>();
+	    for (GameProfile userProfile : userStorage.getAll()) {
+		UuidIntMap stripe = cache.stripe(userProfile.getUniqueId());
+		synchronized (stripe) {
+		    if (!stripe.containsKey(userProfile.getUniqueId())) {
+			missing.add(userProfile);
+		    }
+		}
+	    }
+	    hydrate(executor, threads, batchSize, missing, false);
+	} else {
+	    hydrate(executor, threads, batchSize, userStorage.getAll(), true);
+	}
+    }
+
+    /**
+     * Reads every bounty from storage into the cache.
+     * 
+     * @return whether the bounties could be read
+     */
+    private boolean loadAll() {
+	long startTime = System.nanoTime();
+	UuidIntMap bounties = new UuidIntMap();
+	try {
+	    // Read first, so changes made while loading are polled again
+	    if (shared != null) {
+		sequence = shared.getSequence();
+	    }
+	    ((DatabaseBountyStorage) storage).loadAll(bounties);
+	} catch (IOException e) {
+	    logger.error("Could not read every bounty at once, loading them one user at a time instead.", e);
+	    return false;
+	}
+	if (sparse) {
+	    removeZeros(bounties);
+	}
+	cache.lockAll(() -> {
+	    cache.clear();
+	    bounties.forEach((mostSigBits, leastSigBits, bounty) -> {
+		UUID uuid = new UUID(mostSigBits, leastSigBits);
+		if (!written.contains(uuid)) {
+		    cache.stripe(uuid).put(mostSigBits, leastSigBits, bounty);
+		}
+	    });
+	    rebuildLeaderboards();
+	});
+	long nanos = loadLatency.recordSince(startTime);
+	logger.info("Read " + bounties.size() + " bounties from storage in " + nanos / 1000000 + "ms.");
+	return true;
+    }
+
+    /**
+     * Reads the snapshot file into the cache.
+     * 
+     * @return whether the snapshot was taken on a clean shutdown, or null if there
+     *         is no usable snapshot
+     */
+    private Boolean readSnapshot() {
+	if (snapshot == null || !Files.exists(snapshot.getFile())) {
+	    return null;
+	}
+	long startTime = System.currentTimeMillis();
+	try {
+	    UuidIntMap bounties = new UuidIntMap();
+	    boolean clean = snapshot.read(bounties);
+	    if (sparse) {
+		removeZeros(bounties);
+	    }
+	    int count = bounties.size();
+	    cache.lockAll(() -> {
+		cache.clear();
+		bounties.forEach((mostSigBits, leastSigBits, bounty) -> cache
+			.stripe(new UUID(mostSigBits, leastSigBits)).put(mostSigBits, leastSigBits, bounty));
+		rebuildLeaderboards();
+	    });
+	    // From now on the snapshot is stale until it is written again
+	    snapshot.markUnclean();
+	    logger.info("Read " + count + " bounties from " + (clean ? "clean" : "unclean") + " snapshot in "
+		    + (System.currentTimeMillis() - startTime) + "ms.");
+	    return clean;
+	} catch (IOException e) {
+	    logger.error("Could not read bounty snapshot, loading from playerdata instead.", e);
+	    cache.lockAll(() -> {
+		cache.clear();
+		rebuildLeaderboards();
+	    });
+	    return null;
+	}
+    }
+
+    /**
+     * Writes the cache to the snapshot file. Nothing is written while the cache is
+     * still loading, since the snapshot would be incomplete.
+     * 
+     * @param clean whether the server is shutting down, so no bounty can change
+     *              after this snapshot
+     */
+    public void saveSnapshot(boolean clean) {
+	if (snapshot == null || loading) {
+	    return;
+	}
+	long startTime = System.currentTimeMillis();
+	try {
+	    int count = snapshot.write(cache.copy(), clean);
+	    logger.info("Wrote " + count + " bounties to snapshot in " + (System.currentTimeMillis() - startTime)
+		    + "ms.");
+	} catch (IOException e) {
+	    logger.error("Could not write bounty snapshot.", e);
+	}
     }
 
     /**
@@ -61,31 +308,305 @@ public class RBountyData {
      * userStorage and storing their bounties in the cache.
      */
     protected void resetCache() {
+	long startTime = System.nanoTime();
 	Collection<GameProfile> userProfiles = userStorage.getAll();
 
-	cache = new HashMap<UUID, Integer>();
+	cache.lockAll(() -> cache.clear());
 
 	for (GameProfile userProfile : userProfiles) {
-	    User user = userStorage.get(userProfile).orElse(null);
-	    if (user == null) {
-		continue;
-	    }
-	    Integer playerBounty = user.get(RBountyPlugin.BOUNTY).orElse(null);
-	    if (playerBounty == null) {
-		if (user.offer(new BountyData(0)).isSuccessful()) {
-		    cache.put(user.getUniqueId(), 0);
-		} else {
-		    logger.error("Error while reading bounty for " + user.getName() + ".");
+	    loadProfile(userProfile, false);
+	}
+	cache.lockAll(() -> rebuildLeaderboards());
+	loadLatency.recordSince(startTime);
+    }
+
+    /**
+     * Loads the bounties of the given users into the cache in batches spread over
+     * several workers. Results are published to the cache as each profile is
+     * loaded, so the leaderboard fills up while hydration is running.
+     * 
+     * @param executor     the executor the workers are run on, or null to load on
+     *                     the calling thread
+     * @param threads      the number of workers
+     * @param batchSize    the number of profiles each worker claims at a time
+     * @param profiles     the profiles to load
+     * @param reconcile    whether playerdata should replace bounties already in the
+     *                     cache
+     */
+    protected void hydrate(Executor executor, int threads, int batchSize, Collection<GameProfile> profiles,
+	    boolean reconcile) {
+	hydrate(executor, threads, batchSize, profiles, userProfile -> loadProfile(userProfile, reconcile), null);
+    }
+
+    /**
+     * Runs a loader over the given users in batches spread over several workers,
+     * the way {@link #hydrate(Executor, int, int, Collection, boolean)} loads
+     * them. The cache counts as loading until every batch is done.
+     * 
+     * @param loader   loads a single user
+     * @param finished run once every user is loaded, or null
+     */
+    private void hydrate(Executor executor, int threads, int batchSize, Collection<GameProfile> profiles,
+	    Consumer<GameProfile> loader, Runnable finished) {
+	List<GameProfile> userProfiles = new ArrayList<GameProfile>(profiles);
+	int total = userProfiles.size();
+	int batches = (total + batchSize - 1) / batchSize;
+	int workers = executor == null ? 1 : Math.max(1, Math.min(threads, batches));
+	AtomicInteger nextBatch = new AtomicInteger();
+	AtomicInteger runningWorkers = new AtomicInteger(workers);
+	long startTime = System.currentTimeMillis();
+
+	hydrated.set(0);
+	hydrationTotal = total;
+	if (total == 0) {
+	    if (finished != null) {
+		finished.run();
+	    }
+	    return;
+	}
+	loading = true;
+	logger.info("Loading bounties for " + total + " users in " + batches + " batches on " + workers + " threads.");
+
+	Runnable worker = () -> {
+	    try {
+		int batch;
+		while ((batch = nextBatch.getAndIncrement()) < batches) {
+		    int from = batch * batchSize;
+		    int to = Math.min(total, from + batchSize);
+		    for (GameProfile userProfile : userProfiles.subList(from, to)) {
+			loader.accept(userProfile);
+		    }
+		    int done = hydrated.addAndGet(to - from);
+		    // Log roughly every tenth of the way through
+		    if ((done - (to - from)) * 10 / total != done * 10 / total) {
+			logger.info("Loaded bounties for " + done + "/" + total + " users (" + (done * 100L / total)
+				+ "%).");
+		    }
+		}
+	    } catch (Exception e) {
+		logger.error("Error while loading bounties.", e);
+	    } finally {
+		if (runningWorkers.decrementAndGet() == 0) {
+		    List<Runnable> listeners;
+		    synchronized (loadedListeners) {
+			loading = false;
+			listeners = new ArrayList<Runnable>(loadedListeners);
+			loadedListeners.clear();
+		    }
+		    long millis = System.currentTimeMillis() - startTime;
+		    loadLatency.record(TimeUnit.MILLISECONDS.toNanos(millis));
+		    logger.info("Finished loading bounties for " + hydrated.get() + " users in " + millis + "ms.");
+		    if (finished != null) {
+			finished.run();
+		    }
+		    listeners.forEach(Runnable::run);
 		}
-		continue;
 	    }
-	    cache.put(user.getUniqueId(), playerBounty);
+	};
+	if (executor == null) {
+	    worker.run();
+	    return;
+	}
+	for (int i = 0; i < workers; i++) {
+	    executor.execute(worker);
 	}
     }
 
+    /**
+     * Reads a single user's bounty from storage into the cache. Users whose
+     * bounty was set since startup are skipped, since their stored bounty may
+     * have been read before the set.
+     * 
+     * @param userProfile the profile of the user to load
+     * @param reconcile   whether playerdata should replace a bounty already in the
+     *                    cache
+     */
+    private void loadProfile(GameProfile userProfile, boolean reconcile) {
+	User user = userStorage.get(userProfile).orElse(null);
+	if (user == null) {
+	    return;
+	}
+	int playerBounty = storage.read(user);
+	// Outside sparse storage every user gets bounty data, written by flushWrites
+	boolean missing = playerBounty < 0 && !sparse;
+	playerBounty = Math.max(0, playerBounty);
+	UUID uuid = user.getUniqueId();
+	UuidIntMap stripe = cache.stripe(uuid);
+	synchronized (stripe) {
+	    if (!written.contains(uuid) && (reconcile || !stripe.containsKey(uuid))) {
+		putCache(stripe, uuid, playerBounty);
+		if (missing) {
+		    pendingWrites.putIfAbsent(uuid, 0);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Copies the bounties kept in another storage into the database, through the
+     * same batched loader as hydration, so it runs off the main thread when an
+     * executor is given. Each copied bounty is added to the one in the database
+     * and the cache, and users copied by an earlier start that didn't finish are
+     * skipped. The cache counts as loading until every bounty is copied.
+     * 
+     * @param from      the storage to copy bounties from
+     * @param source    names that storage, so its bounties are only copied once
+     * @param executor  the executor to copy on in parallel batches, or null to copy
+     *                  on the calling thread
+     * @param threads   how many batches may be copied at once
+     * @param batchSize how many profiles are copied per batch
+     */
+    public void migrate(BountyStorage from, String source, Executor executor, int threads, int batchSize) {
+	if (!(storage instanceof DatabaseBountyStorage)) {
+	    throw new IllegalStateException("Bounties can only be copied into a database.");
+	}
+	DatabaseBountyStorage database = (DatabaseBountyStorage) storage;
+	if (loading) {
+	    logger.warn("Bounties are still loading, so they will be copied from " + source + " on the next start.");
+	    return;
+	}
+	Set<UUID> migrated;
+	try {
+	    if (database.isMigrated(source)) {
+		return;
+	    }
+	    migrated = database.getMigrated(source);
+	} catch (IOException e) {
+	    logger.error("Could not read which bounties were copied from " + source
+		    + ", they will be copied on the next start.", e);
+	    return;
+	}
+	List<GameProfile> profiles = new ArrayList<GameProfile>();
+	for (GameProfile userProfile : userStorage.getAll()) {
+	    if (!migrated.contains(userProfile.getUniqueId())) {
+		profiles.add(userProfile);
+	    }
+	}
+	logger.info("Copying bounties from " + source + " into the database.");
+	AtomicInteger copied = new AtomicInteger();
+	AtomicInteger failed = new AtomicInteger();
+	hydrate(executor, threads, batchSize, profiles,
+		userProfile -> migrateProfile(userProfile, from, database, source, copied, failed), () -> {
+		    if (failed.get() > 0) {
+			logger.error(failed.get() + " bounties could not be copied from " + source
+				+ ", they will be copied on the next start.");
+			return;
+		    }
+		    try {
+			database.finishMigration(source);
+			logger.info("Copied " + copied.get() + " bounties from " + source + " into the database.");
+		    } catch (IOException e) {
+			logger.error("Could not mark the bounties copied from " + source + ".", e);
+		    }
+		});
+    }
+
+    /**
+     * Copies a single user's bounty from another storage into the database and
+     * the cache.
+     */
+    private void migrateProfile(GameProfile userProfile, BountyStorage from, DatabaseBountyStorage database,
+	    String source, AtomicInteger copied, AtomicInteger failed) {
+	User user = userStorage.get(userProfile).orElse(null);
+	if (user == null) {
+	    return;
+	}
+	int bounty = from.read(user);
+	if (bounty <= 0) {
+	    return;
+	}
+	UUID uuid = user.getUniqueId();
+	UuidIntMap stripe = cache.stripe(uuid);
+	synchronized (stripe) {
+	    int stored = database.migrate(source, uuid, bounty);
+	    if (stored < 0) {
+		failed.incrementAndGet();
+		return;
+	    }
+	    copied.incrementAndGet();
+	    if (shared != null) {
+		// Includes the changes other servers made
+		written.add(uuid);
+		putCache(stripe, uuid, stored);
+	    } else {
+		// The cache may hold changes that aren't written yet, so it is added to.
+		// If this write fails, the database still holds the copied bounty.
+		int current = Math.max(0, stripe.get(uuid, 0));
+		writeBounty(stripe, user, (int) Math.min(Integer.MAX_VALUE, (long) current + bounty));
+	    }
+	}
+    }
+
+    /**
+     * Runs a listener once the cache is done loading, right away if it already
+     * is. Otherwise it runs on the thread that loaded the last user.
+     * 
+     * @param listener the listener to run
+     */
+    public void whenLoaded(Runnable listener) {
+	synchronized (loadedListeners) {
+	    if (loading) {
+		loadedListeners.add(listener);
+		return;
+	    }
+	}
+	listener.run();
+    }
+
+    /**
+     * @return whether the cache is still being hydrated in the background
+     */
+    public boolean isLoading() {
+	return loading;
+    }
+
+    /**
+     * @return how many users have been loaded into the cache so far
+     */
+    public int getHydrated() {
+	return hydrated.get();
+    }
+
+    /**
+     * @return how many users are being loaded into the cache in total
+     */
+    public int getHydrationTotal() {
+	return hydrationTotal;
+    }
+
     public int getBounty(User user) {
-	if (cache.containsKey(user.getUniqueId())) {
-	    return cache.get(user.getUniqueId());
+	UuidIntMap stripe = cache.stripe(user.getUniqueId());
+	synchronized (stripe) {
+	    return currentBounty(stripe, user);
+	}
+    }
+
+    /**
+     * Gets a user's bounty from the cache alone, without reading storage for
+     * users that aren't loaded yet.
+     * 
+     * @param uuid the user's UUID
+     * @return the user's cached bounty, or 0 if none is cached
+     */
+    public int getCachedBounty(UUID uuid) {
+	UuidIntMap stripe = cache.stripe(uuid);
+	synchronized (stripe) {
+	    return stripe.get(uuid, 0);
+	}
+    }
+
+    /**
+     * Gets a user's bounty. Must be called while holding the lock of their
+     * stripe.
+     */
+    private int currentBounty(UuidIntMap stripe, User user) {
+	int bounty = stripe.get(user.getUniqueId(), -1);
+	if (bounty >= 0) {
+	    return bounty;
+	}
+	if (loading && !written.contains(user.getUniqueId())) {
+	    // Not hydrated yet, so read it straight from storage
+	    return Math.max(0, storage.read(user));
 	}
 	return 0;
     }
@@ -94,45 +615,518 @@ public class RBountyData {
 	if (user == null) {
 	    return false;
 	}
-	DataTransactionResult result;
-	if (user.get(RBountyPlugin.BOUNTY).isPresent()) {
-	    result = user.offer(RBountyPlugin.BOUNTY, bounty);
+	UuidIntMap stripe = cache.stripe(user.getUniqueId());
+	synchronized (stripe) {
+	    return writeBounty(stripe, user, bounty);
+	}
+    }
+
+    public boolean setBounty(UUID uuid, int bounty) {
+	return setBounty(userStorage.get(uuid).orElseGet(null), bounty);
+    }
+
+    /**
+     * Atomically adds to a user's bounty, so concurrent contributions are never
+     * lost.
+     * 
+     * @param user   the user whose bounty is increased
+     * @param amount the amount to add
+     * @return the user's new bounty, or -1 if it could not be saved or would
+     *         overflow
+     */
+    public int addBounty(User user, int amount) {
+	if (user == null) {
+	    return -1;
+	}
+	UuidIntMap stripe = cache.stripe(user.getUniqueId());
+	synchronized (stripe) {
+	    if (shared != null) {
+		int bounty = shared.add(user.getUniqueId(), amount);
+		if (bounty >= 0) {
+		    written.add(user.getUniqueId());
+		    putCache(stripe, user.getUniqueId(), bounty);
+		}
+		return bounty;
+	    }
+	    int current = currentBounty(stripe, user);
+	    if (amount > Integer.MAX_VALUE - current) {
+		return -1;
+	    }
+	    int bounty = current + amount;
+	    return writeBounty(stripe, user, bounty) ? bounty : -1;
+	}
+    }
+
+    /**
+     * Atomically resets a user's bounty to 0 and returns what it was, so a bounty
+     * can only ever be claimed once.
+     * 
+     * @param user the user whose bounty is claimed
+     * @return the claimed bounty, or 0 if there was none or it could not be reset
+     */
+    public int claimBounty(User user) {
+	if (user == null) {
+	    return 0;
+	}
+	UuidIntMap stripe = cache.stripe(user.getUniqueId());
+	synchronized (stripe) {
+	    if (shared != null) {
+		// The storage decides, so two servers never pay out the same bounty
+		int claimed = shared.claim(user.getUniqueId());
+		if (claimed < 0) {
+		    return 0;
+		}
+		written.add(user.getUniqueId());
+		putCache(stripe, user.getUniqueId(), 0);
+		return claimed;
+	    }
+	    int current = currentBounty(stripe, user);
+	    if (current <= 0 || !writeBounty(stripe, user, 0)) {
+		return 0;
+	    }
+	    return current;
+	}
+    }
+
+    /**
+     * Changes many bounties at once. The leaderboards tell their listeners about
+     * every change together, and the new bounties are written to storage in one
+     * batch, or left queued with write-behind. Must be called on the main thread
+     * if bounties are stored in playerdata and write-behind is off.
+     * 
+     * @param uuids  the users whose bounty to change
+     * @param change computes each user's new bounty from their current one
+     * @return the previous bounties of the users whose bounty changed
+     */
+    public UuidIntMap changeBounties(Collection<UUID> uuids, IntUnaryOperator change) {
+	return changeBounties(uuids, (uuid, current) -> change.applyAsInt(current));
+    }
+
+    /**
+     * Sets many bounties at once, like {@link #changeBounties}.
+     * 
+     * @param bounties the new bounty of each user
+     * @return the previous bounties of the users whose bounty changed
+     */
+    public UuidIntMap setBounties(UuidIntMap bounties) {
+	List<UUID> uuids = new ArrayList<UUID>(bounties.size());
+	bounties.forEach((mostSigBits, leastSigBits, bounty) -> uuids.add(new UUID(mostSigBits, leastSigBits)));
+	return changeBounties(uuids, (uuid, current) -> bounties.get(uuid, current));
+    }
+
+    private interface BountyChange {
+	int apply(UUID uuid, int current);
+    }
+
+    private UuidIntMap changeBounties(Collection<UUID> uuids, BountyChange change) {
+	UuidIntMap changed = new UuidIntMap(uuids.size());
+	leaderboard.beginBatch();
+	onlineLeaderboard.beginBatch();
+	try {
+	    for (UUID uuid : uuids) {
+		UuidIntMap stripe = cache.stripe(uuid);
+		synchronized (stripe) {
+		    int current = stripe.get(uuid, 0);
+		    int bounty = change.apply(uuid, current);
+		    if (bounty == current || bounty < 0) {
+			continue;
+		    }
+		    if (shared != null) {
+			// Made by the storage, so another server's change isn't lost
+			int stored = bounty == 0 ? shared.claim(uuid) : shared.add(uuid, bounty - current);
+			if (stored < 0) {
+			    continue;
+			}
+			current = bounty == 0 ? stored : stored - (bounty - current);
+			bounty = bounty == 0 ? 0 : stored;
+		    } else {
+			pendingWrites.put(uuid, bounty);
+		    }
+		    written.add(uuid);
+		    putCache(stripe, uuid, bounty);
+		    changed.put(uuid, current);
+		}
+	    }
+	} finally {
+	    leaderboard.endBatch();
+	    onlineLeaderboard.endBatch();
+	}
+	if (!writeBehind) {
+	    flushWrites(0);
+	}
+	return changed;
+    }
+
+    /**
+     * Writes a user's bounty to storage, or queues it with write-behind, and to
+     * the cache if that succeeds. Must be called while holding the lock of their
+     * stripe.
+     */
+    private boolean writeBounty(UuidIntMap stripe, User user, int bounty) {
+	if (writeBehind) {
+	    pendingWrites.put(user.getUniqueId(), bounty);
+	} else if (persistBounty(user, bounty)) {
+	    // So a 0 queued by hydration can't overwrite it
+	    pendingWrites.remove(user.getUniqueId());
 	} else {
-	    result = user.offer(new BountyData(bounty));
+	    return false;
 	}
-	if (result.isSuccessful()) {
-	    cache.put(user.getUniqueId(), bounty);
-	    validLeaderboard = false;
+	written.add(user.getUniqueId());
+	putCache(stripe, user.getUniqueId(), bounty);
+	return true;
+    }
+
+    /**
+     * Writes a user's bounty to storage. Must be called while holding the lock of
+     * their stripe.
+     */
+    private boolean persistBounty(User user, int bounty) {
+	if (storage.write(user, bounty)) {
 	    return true;
 	}
-	logger.error(result.toString());
+	persistFailures.incrementAndGet();
 	return false;
     }
 
-    public boolean setBounty(UUID uuid, int bounty) {
-	return setBounty(userStorage.get(uuid).orElseGet(null), bounty);
+    /**
+     * Writes queued bounty changes to storage in one batch. Changes that fail are
+     * queued again for the next flush, unless a newer change was queued since.
+     * Must be called on the main thread if bounties are stored in playerdata.
+     * 
+     * @param max the most changes to write, or 0 to write all of them
+     * @return the number of changes written
+     */
+    public synchronized int flushWrites(int max) {
+	if (pendingWrites.isEmpty()) {
+	    return 0;
+	}
+	long startTime = System.nanoTime();
+	List<UUID> batch = new ArrayList<UUID>();
+	for (UUID uuid : pendingWrites.keySet()) {
+	    if (max > 0 && batch.size() >= max) {
+		break;
+	    }
+	    batch.add(uuid);
+	}
+	Map<UUID, Integer> bounties = new HashMap<UUID, Integer>();
+	for (UUID uuid : batch) {
+	    Integer bounty = pendingWrites.remove(uuid);
+	    if (bounty != null) {
+		bounties.put(uuid, bounty);
+	    }
+	}
+	// Written outside the stripe locks, since a newer change for the same user
+	// is only written by a later flush, which can't start until this one ends
+	Collection<UUID> failures = storage.writeAll(bounties);
+	for (UUID uuid : failures) {
+	    pendingWrites.putIfAbsent(uuid, bounties.get(uuid));
+	}
+	int failed = failures.size();
+	int flushed = bounties.size() - failed;
+	persistFailures.addAndGet(failed);
+	long nanos = flushLatency.recordSince(startTime);
+	if (logger.isDebugEnabled() || failed > 0) {
+	    logger.info("Wrote " + flushed + " queued bounties in " + nanos / 1000000 + "ms, " + failed
+		    + " failed and " + pendingWrites.size() + " are still queued.");
+	}
+	return flushed;
+    }
+
+    /**
+     * Applies the bounty changes made since the last poll to the cache and
+     * leaderboards, including those made by other servers. Does nothing unless
+     * the storage is shared.
+     * 
+     * A change made here between reading and applying a poll is briefly replaced
+     * by the older polled bounty, and put back by the next poll.
+     * 
+     * @return the number of changed bounties applied
+     */
+    public synchronized int pollChanges() {
+	if (shared == null) {
+	    return 0;
+	}
+	UuidIntMap changes = new UuidIntMap();
+	long newest;
+	try {
+	    newest = shared.poll(sequence, changes);
+	} catch (IOException e) {
+	    logger.error("Could not read bounty changes from other servers.", e);
+	    return 0;
+	}
+	changes.forEach((mostSigBits, leastSigBits, bounty) -> {
+	    UUID uuid = new UUID(mostSigBits, leastSigBits);
+	    UuidIntMap stripe = cache.stripe(uuid);
+	    synchronized (stripe) {
+		putCache(stripe, uuid, bounty);
+	    }
+	});
+	sequence = newest;
+	polledChanges.addAndGet(changes.size());
+	return changes.size();
+    }
+
+    /**
+     * Starts a bulk operation. Until {@link #endBulk} is called, bounty changes
+     * don't update the leaderboards, so a change to every bounty doesn't move
+     * every player on them one at a time.
+     */
+    public void beginBulk() {
+	bulk = true;
+    }
+
+    /**
+     * Ends a bulk operation, rebuilding the leaderboards once from the cache.
+     */
+    public void endBulk() {
+	cache.lockAll(() -> {
+	    bulk = false;
+	    rebuildLeaderboards();
+	});
+    }
+
+    /**
+     * @return whether a bulk operation is running, so the leaderboards may be out
+     *         of date
+     */
+    public boolean isBulk() {
+	return bulk;
+    }
+
+    /**
+     * Gets both leaderboards and every bounty on them as of the last change, for
+     * reading off the main thread. Takes no lock.
+     * 
+     * @return the view
+     */
+    public BountyView getView() {
+	return view;
+    }
+
+    /**
+     * Publishes the leaderboards as they are now. Must be called while holding
+     * viewLock.
+     */
+    private void publishView() {
+	view = new BountyView(leaderboard.snapshot(), onlineLeaderboard.snapshot());
+    }
+
+    /**
+     * @return a consistent copy of every cached bounty
+     */
+    public UuidIntMap copyBounties() {
+	return cache.copy();
+    }
+
+    /**
+     * @return whether other servers share the storage
+     */
+    public boolean isShared() {
+	return shared != null;
+    }
+
+    /**
+     * @return how many changed bounties {@link #pollChanges} has applied
+     */
+    public long getPolledChanges() {
+	return polledChanges.get();
+    }
+
+    /**
+     * @return the number of users with a bounty change waiting to be written
+     */
+    public int getPendingWrites() {
+	return pendingWrites.size();
+    }
+
+    /**
+     * @return the time taken by each full load of the cache from playerdata
+     */
+    public LatencyRecorder getLoadLatency() {
+	return loadLatency;
+    }
+
+    /**
+     * @return the time taken by each full rebuild of the leaderboards
+     */
+    public LatencyRecorder getRebuildLatency() {
+	return rebuildLatency;
+    }
+
+    /**
+     * @return how many bounty writes to storage have failed
+     */
+    public long getPersistFailures() {
+	return persistFailures.get();
     }
 
     /**
-     * Converts the cache into a list and sorts it in descending order and sets
-     * leaderboard to that.
+     * @return the time taken by each {@link #flushWrites}
      */
-    private void resetLeaderboard() {
-	leaderboard = new ArrayList<Map.Entry<UUID, Integer>>();
-	leaderboard.addAll(cache.entrySet());
-	leaderboard.sort(new Comparator<Map.Entry<UUID, Integer>>() {
-	    public int compare(Map.Entry<UUID, Integer> o1, Map.Entry<UUID, Integer> o2) {
-		return (o2.getValue()).compareTo(o1.getValue());
+    public LatencyRecorder getFlushLatency() {
+	return flushLatency;
+    }
+
+    /**
+     * Gets a slice of the leaderboard of non-zero bounties.
+     * 
+     * @param start the first position to include, starting at 0
+     * @param end   the position to stop before
+     * @return the players and bounties in that range, highest first
+     */
+    public List<Entry<UUID, Integer>> getLeaderboard(int start, int end) {
+	return leaderboard.page(start, end);
+    }
+
+    /**
+     * @return the number of players with a non-zero bounty
+     */
+    public int getLeaderboardSize() {
+	return leaderboard.size();
+    }
+
+    /**
+     * Gets a player's position on the leaderboard.
+     * 
+     * @param uuid the player's UUID
+     * @return the zero based rank of the player, or -1 if they don't have a bounty
+     */
+    public int getRank(UUID uuid) {
+	return leaderboard.rank(uuid);
+    }
+
+    /**
+     * Gets a slice of the leaderboard of non-zero bounties of online players.
+     * 
+     * @param start the first position to include, starting at 0
+     * @param end   the position to stop before
+     * @return the players and bounties in that range, highest first
+     */
+    public List<Entry<UUID, Integer>> getOnlineLeaderboard(int start, int end) {
+	return onlineLeaderboard.page(start, end);
+    }
+
+    /**
+     * @return the number of online players with a non-zero bounty
+     */
+    public int getOnlineLeaderboardSize() {
+	return onlineLeaderboard.size();
+    }
+
+    /**
+     * Sets the listeners told which ranks change on each leaderboard.
+     * 
+     * @param listener       the listener for the leaderboard of every player
+     * @param onlineListener the listener for the leaderboard of online players
+     */
+    public void setLeaderboardListeners(BountyLeaderboard.ChangeListener listener,
+	    BountyLeaderboard.ChangeListener onlineListener) {
+	leaderboard.setListener(listener);
+	onlineLeaderboard.setListener(onlineListener);
+    }
+
+    /**
+     * Marks a player as online or offline, adding them to or removing them from
+     * the online leaderboard.
+     * 
+     * @param user     the player
+     * @param isOnline whether the player is now online
+     */
+    public void setOnline(User user, boolean isOnline) {
+	UUID uuid = user.getUniqueId();
+	UuidIntMap stripe = cache.stripe(uuid);
+	// Done under the stripe lock so it can't race a bounty change for the player
+	synchronized (stripe) {
+	    int bounty = isOnline ? currentBounty(stripe, user) : 0;
+	    synchronized (viewLock) {
+		if (isOnline) {
+		    online.add(uuid);
+		    onlineLeaderboard.update(uuid, bounty);
+		} else {
+		    online.remove(uuid);
+		    onlineLeaderboard.remove(uuid);
+		}
+		publishView();
+	    }
+	}
+    }
+
+    /**
+     * @return where bounties are stored
+     */
+    public BountyStorage getStorage() {
+	return storage;
+    }
+
+    /**
+     * @return whether only non-zero bounties are stored
+     */
+    public boolean isSparse() {
+	return sparse;
+    }
+
+    /**
+     * Sets a player's bounty in the cache and on the leaderboards. Must be called
+     * while holding the lock of their stripe.
+     */
+    private void putCache(UuidIntMap stripe, UUID uuid, int bounty) {
+	if (sparse && bounty == 0) {
+	    stripe.remove(uuid);
+	} else {
+	    stripe.put(uuid, bounty);
+	}
+	updateLeaderboards(uuid, bounty);
+    }
+
+    /**
+     * Removes every bounty of 0 from the given map.
+     */
+    private static void removeZeros(UuidIntMap bounties) {
+	List<UUID> zeros = new ArrayList<UUID>();
+	bounties.forEach((mostSigBits, leastSigBits, bounty) -> {
+	    if (bounty == 0) {
+		zeros.add(new UUID(mostSigBits, leastSigBits));
 	    }
 	});
+	for (UUID uuid : zeros) {
+	    bounties.remove(uuid);
+	}
+    }
 
-	validLeaderboard = true;
+    /**
+     * Updates a player's bounty on the leaderboards. Must be called while holding
+     * the lock of their stripe.
+     */
+    private void updateLeaderboards(UUID uuid, int bounty) {
+	if (bulk) {
+	    return;
+	}
+	synchronized (viewLock) {
+	    leaderboard.update(uuid, bounty);
+	    if (online.contains(uuid)) {
+		onlineLeaderboard.update(uuid, bounty);
+	    }
+	    publishView();
+	}
     }
 
-    public ArrayList<Entry<UUID, Integer>> getLeaderboard() {
-	if (!validLeaderboard) {
-	    resetLeaderboard();
+    /**
+     * Rebuilds both leaderboards from the cache. Must be called from inside
+     * {@link StripedUuidIntMap#lockAll}.
+     */
+    private void rebuildLeaderboards() {
+	long startTime = System.nanoTime();
+	UuidIntMap bounties = new UuidIntMap();
+	cache.forEach(bounties::put);
+	UuidIntMap onlineBounties = new UuidIntMap(online.size());
+	for (UUID uuid : online) {
+	    onlineBounties.put(uuid, bounties.get(uuid, 0));
+	}
+	synchronized (viewLock) {
+	    leaderboard.rebuild(bounties);
+	    onlineLeaderboard.rebuild(onlineBounties);
+	    publishView();
 	}
-	return leaderboard;
+	rebuildLatency.recordSince(startTime);
     }
 }
\ No newline at end of file
@@ -0,0 +1,287 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import io.github.rm2023.rbounty.economy.EconomyPipeline;
+
+/**
+ * Collects RBounty's runtime metrics from the data layer, economy pipeline,
+ * leaderboard renderer and broadcaster, along with the death events and claims
+ * counted by the plugin. Published over JMX and shown by /bounty stats.
+ */
+public class RBountyMetrics implements RBountyMetricsMBean {
+    public static final String OBJECT_NAME = "io.github.rm2023.rbounty:type=Metrics";
+
+    private final RBountyData data;
+    private final EconomyPipeline pipeline;
+    private final LeaderboardRenderer renderer;
+    private final BountyBroadcaster broadcaster;
+
+    private final LatencyRecorder deathEvents = new LatencyRecorder("death event");
+    private final AtomicLong claims = new AtomicLong();
+    private final AtomicLong failedClaims = new AtomicLong();
+
+    private ObjectName registeredName;
+
+    public RBountyMetrics(RBountyData data, EconomyPipeline pipeline, LeaderboardRenderer renderer,
+	    BountyBroadcaster broadcaster) {
+	this.data = data;
+	this.pipeline = pipeline;
+	this.renderer = renderer;
+	this.broadcaster = broadcaster;
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, replacing any left
+     * over from a previous start.
+     *
+     * @throws JMException if they could not be registered
+     */
+    public void register() throws JMException {
+	MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	ObjectName name = new ObjectName(OBJECT_NAME);
+	if (server.isRegistered(name)) {
+	    server.unregisterMBean(name);
+	}
+	server.registerMBean(this, name);
+	registeredName = name;
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server if they were
+     * registered.
+     */
+    public void unregister() {
+	if (registeredName == null) {
+	    return;
+	}
+	try {
+	    ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+	} catch (JMException e) {
+	    // Already gone
+	}
+	registeredName = null;
+    }
+
+    /**
+     * @return the recorder for the time each death event takes on the server
+     *         thread
+     */
+    public LatencyRecorder getDeathEventLatency() {
+	return deathEvents;
+    }
+
+    /**
+     * Counts a claimed bounty.
+     *
+     * @param paid whether the claimer was paid, or the payment failed and the
+     *             bounty was put back
+     */
+    public void recordClaim(boolean paid) {
+	(paid ? claims : failedClaims).incrementAndGet();
+    }
+
+    /**
+     * @return a human readable summary, one line per metric
+     */
+    public List<String> describe() {
+	List<String> lines = new ArrayList<String>();
+	lines.add("Cache loads: " + getCacheLoads() + ", longest took " + format(getCacheLoadMaxMillis()) + "ms");
+	lines.add(describe(data.getRebuildLatency()));
+	lines.add("Leaderboard: " + getLeaderboardSize() + " bounties, " + getLeaderboardPageHits() + " cached page views, "
+		+ getLeaderboardPageMisses() + " rendered");
+	lines.add("Storage: " + getPendingWrites() + " queued writes, " + getPersistenceFailures() + " failed writes"
+		+ (data.isShared() ? ", " + getPolledChanges() + " changes polled" : ""));
+	lines.add(describe(data.getFlushLatency()));
+	lines.add(describe(pipeline.getWithdrawLatency()));
+	lines.add(describe(pipeline.getDepositLatency()));
+	lines.add(describe(deathEvents));
+	lines.add("Claims: " + getClaims() + " paid, " + getFailedClaims() + " failed");
+	lines.add("Broadcasts: " + getBroadcasts() + " sent, " + getSuppressedBroadcasts() + " hidden, "
+		+ broadcaster.getPending() + " waiting");
+	return lines;
+    }
+
+    private static String describe(LatencyRecorder latency) {
+	return latency.getName() + ": " + latency.getCount() + " calls, avg " + format(latency.getAverageMillis())
+		+ "ms, p99 " + format(latency.getPercentileMillis(99)) + "ms, max " + format(latency.getMaxMillis())
+		+ "ms";
+    }
+
+    private static String format(double millis) {
+	return String.format("%.2f", millis);
+    }
+
+    @Override
+    public long getCacheLoads() {
+	return data.getLoadLatency().getCount();
+    }
+
+    @Override
+    public double getCacheLoadMaxMillis() {
+	return data.getLoadLatency().getMaxMillis();
+    }
+
+    @Override
+    public long getLeaderboardRebuilds() {
+	return data.getRebuildLatency().getCount();
+    }
+
+    @Override
+    public double getLeaderboardRebuildAverageMillis() {
+	return data.getRebuildLatency().getAverageMillis();
+    }
+
+    @Override
+    public double getLeaderboardRebuildMaxMillis() {
+	return data.getRebuildLatency().getMaxMillis();
+    }
+
+    @Override
+    public int getLeaderboardSize() {
+	return data.getLeaderboardSize();
+    }
+
+    @Override
+    public long getPersistenceFailures() {
+	return data.getPersistFailures();
+    }
+
+    @Override
+    public int getPendingWrites() {
+	return data.getPendingWrites();
+    }
+
+    @Override
+    public long getPolledChanges() {
+	return data.getPolledChanges();
+    }
+
+    @Override
+    public double getFlushAverageMillis() {
+	return data.getFlushLatency().getAverageMillis();
+    }
+
+    @Override
+    public double getFlushMaxMillis() {
+	return data.getFlushLatency().getMaxMillis();
+    }
+
+    @Override
+    public long getWithdrawals() {
+	return pipeline.getWithdrawLatency().getCount();
+    }
+
+    @Override
+    public double getWithdrawAverageMillis() {
+	return pipeline.getWithdrawLatency().getAverageMillis();
+    }
+
+    @Override
+    public double getWithdrawP99Millis() {
+	return pipeline.getWithdrawLatency().getPercentileMillis(99);
+    }
+
+    @Override
+    public double getWithdrawMaxMillis() {
+	return pipeline.getWithdrawLatency().getMaxMillis();
+    }
+
+    @Override
+    public long getDeposits() {
+	return pipeline.getDepositLatency().getCount();
+    }
+
+    @Override
+    public double getDepositAverageMillis() {
+	return pipeline.getDepositLatency().getAverageMillis();
+    }
+
+    @Override
+    public double getDepositP99Millis() {
+	return pipeline.getDepositLatency().getPercentileMillis(99);
+    }
+
+    @Override
+    public double getDepositMaxMillis() {
+	return pipeline.getDepositLatency().getMaxMillis();
+    }
+
+    @Override
+    public long getDeathEvents() {
+	return deathEvents.getCount();
+    }
+
+    @Override
+    public double getDeathEventAverageMillis() {
+	return deathEvents.getAverageMillis();
+    }
+
+    @Override
+    public double getDeathEventMaxMillis() {
+	return deathEvents.getMaxMillis();
+    }
+
+    @Override
+    public long getClaims() {
+	return claims.get();
+    }
+
+    @Override
+    public long getFailedClaims() {
+	return failedClaims.get();
+    }
+
+    @Override
+    public long getLeaderboardPageHits() {
+	return renderer.getTopCache().getHits() + renderer.getTopOnlineCache().getHits();
+    }
+
+    @Override
+    public long getLeaderboardPageMisses() {
+	return renderer.getTopCache().getMisses() + renderer.getTopOnlineCache().getMisses();
+    }
+
+    @Override
+    public long getBroadcasts() {
+	return broadcaster.getSent();
+    }
+
+    @Override
+    public long getSuppressedBroadcasts() {
+	return broadcaster.getSuppressed();
+    }
+
+    @Override
+    public void resetLatencies() {
+	data.getRebuildLatency().reset();
+	data.getFlushLatency().reset();
+	pipeline.getWithdrawLatency().reset();
+	pipeline.getDepositLatency().reset();
+	deathEvents.reset();
+    }
+}
\ No newline at end of file
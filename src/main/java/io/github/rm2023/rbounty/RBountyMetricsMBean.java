@@ -0,0 +1,84 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+/**
+ * The JMX view of {@link RBountyMetrics}. Times are in milliseconds.
+ */
+public interface RBountyMetricsMBean {
+    long getCacheLoads();
+
+    double getCacheLoadMaxMillis();
+
+    long getLeaderboardRebuilds();
+
+    double getLeaderboardRebuildAverageMillis();
+
+    double getLeaderboardRebuildMaxMillis();
+
+    int getLeaderboardSize();
+
+    long getPersistenceFailures();
+
+    int getPendingWrites();
+
+    long getPolledChanges();
+
+    double getFlushAverageMillis();
+
+    double getFlushMaxMillis();
+
+    long getWithdrawals();
+
+    double getWithdrawAverageMillis();
+
+    double getWithdrawP99Millis();
+
+    double getWithdrawMaxMillis();
+
+    long getDeposits();
+
+    double getDepositAverageMillis();
+
+    double getDepositP99Millis();
+
+    double getDepositMaxMillis();
+
+    long getDeathEvents();
+
+    double getDeathEventAverageMillis();
+
+    double getDeathEventMaxMillis();
+
+    long getClaims();
+
+    long getFailedClaims();
+
+    long getLeaderboardPageHits();
+
+    long getLeaderboardPageMisses();
+
+    long getBroadcasts();
+
+    long getSuppressedBroadcasts();
+
+    /**
+     * Clears every latency recorded so far.
+     */
+    void resetLatencies();
+}
\ No newline at end of file
@@ -21,10 +21,22 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Map.Entry;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.management.JMException;
+import javax.sql.DataSource;
 
 import org.slf4j.Logger;
 import org.spongepowered.api.Game;
@@ -33,6 +45,7 @@ import org.spongepowered.api.command.CommandException;
 import org.spongepowered.api.command.CommandResult;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.args.CommandElement;
 import org.spongepowered.api.command.args.GenericArguments;
 import org.spongepowered.api.command.spec.CommandExecutor;
 import org.spongepowered.api.command.spec.CommandSpec;
@@ -44,8 +57,6 @@ import org.spongepowered.api.data.value.mutable.Value;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.entity.living.player.User;
 import org.spongepowered.api.event.Listener;
-import org.spongepowered.api.event.cause.Cause;
-import org.spongepowered.api.event.cause.EventContext;
 import org.spongepowered.api.event.cause.EventContextKeys;
 import org.spongepowered.api.event.entity.DestructEntityEvent;
 import org.spongepowered.api.event.entity.living.humanoid.player.RespawnPlayerEvent;
@@ -53,13 +64,18 @@ import org.spongepowered.api.event.game.GameRegistryEvent;
 import org.spongepowered.api.event.game.GameReloadEvent;
 import org.spongepowered.api.event.game.state.GameInitializationEvent;
 import org.spongepowered.api.event.game.state.GameStartedServerEvent;
+import org.spongepowered.api.event.game.state.GameStoppingServerEvent;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
 import org.spongepowered.api.plugin.Plugin;
 import org.spongepowered.api.plugin.PluginContainer;
+import org.spongepowered.api.profile.GameProfile;
+import org.spongepowered.api.scheduler.SpongeExecutorService;
+import org.spongepowered.api.scheduler.Task;
 import org.spongepowered.api.service.economy.EconomyService;
-import org.spongepowered.api.service.economy.account.UniqueAccount;
 import org.spongepowered.api.service.permission.PermissionDescription;
 import org.spongepowered.api.service.permission.PermissionDescription.Builder;
 import org.spongepowered.api.service.permission.PermissionService;
+import org.spongepowered.api.service.sql.SqlService;
 import org.spongepowered.api.service.user.UserStorageService;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.text.format.TextColors;
@@ -69,9 +85,29 @@ import org.spongepowered.api.util.generator.dummy.DummyObjectProvider;
 
 import com.google.inject.Inject;
 
+import io.github.rm2023.rbounty.ClaimGuard.Held;
+import io.github.rm2023.rbounty.ClaimGuard.Reason;
+import io.github.rm2023.rbounty.CommandRateLimiter.Command;
+import io.github.rm2023.rbounty.bulk.AdjustAllJob;
+import io.github.rm2023.rbounty.bulk.BountyFormat;
+import io.github.rm2023.rbounty.bulk.BulkJob;
+import io.github.rm2023.rbounty.bulk.ExportJob;
+import io.github.rm2023.rbounty.bulk.ImportJob;
 import io.github.rm2023.rbounty.data.BountyData;
 import io.github.rm2023.rbounty.data.BountyDataBuilder;
 import io.github.rm2023.rbounty.data.ImmBountyData;
+import io.github.rm2023.rbounty.economy.EconomyBackend;
+import io.github.rm2023.rbounty.economy.EconomyPipeline;
+import io.github.rm2023.rbounty.economy.EconomyPipeline.Result;
+import io.github.rm2023.rbounty.economy.EconomyPipeline.Status;
+import io.github.rm2023.rbounty.economy.SpongeEconomyBackend;
+import io.github.rm2023.rbounty.ledger.BountyLedger;
+import io.github.rm2023.rbounty.ledger.BountyLedger.History;
+import io.github.rm2023.rbounty.ledger.LedgerRecord;
+import io.github.rm2023.rbounty.ledger.LedgerRecord.Type;
+import io.github.rm2023.rbounty.storage.BountyStorage;
+import io.github.rm2023.rbounty.storage.PlayerDataBountyStorage;
+import io.github.rm2023.rbounty.storage.SqlBountyStorage;
 import ninja.leaping.configurate.commented.CommentedConfigurationNode;
 import ninja.leaping.configurate.hocon.HoconConfigurationLoader;
 import ninja.leaping.configurate.loader.ConfigurationLoader;
@@ -91,8 +127,13 @@ public class RBountyPlugin {
     private Logger logger;
 
     private PermissionService permissionService;
-    private EconomyService economyService;
+    private EconomyBackend economy;
+    private EconomyPipeline pipeline;
     private UserStorageService userStorageService;
+    private SpongeExecutorService syncExecutor;
+    private SpongeExecutorService asyncExecutor;
+    private LeaderboardRenderer leaderboardRenderer;
+    private RBountyMetrics metrics;
 
     @Inject
     @ConfigDir(sharedRoot = false)
@@ -103,35 +144,184 @@ public class RBountyPlugin {
     private ConfigurationLoader<CommentedConfigurationNode> configLoader;
     private CommentedConfigurationNode configNode;
     public boolean broadcasts = true;
+    public int broadcastWindow = 3;
+    public int broadcastsPerSecond = 4;
+    private BountyBroadcaster broadcaster;
+    public boolean asyncHydration = true;
+    public int hydrationThreads = 4;
+    public int hydrationBatchSize = 500;
+    public boolean snapshots = true;
+    public int snapshotInterval = 5;
+    public boolean sparseStorage = true;
+    public int compactionBatchSize = 100;
+    public boolean writeBehind = true;
+    public int writeBehindInterval = 5;
+    public int writeBehindBatchSize = 200;
+    public String storage = "playerdata";
+    public String databaseUrl = "";
+    public boolean sharedState = false;
+    public int sharedPollInterval = 1000;
+    public int bountyExpiry = 0;
+    public int bountyDecayPercent = 0;
+    public int bountyDecayInterval = 60;
+    private BountyExpiry expiry;
+    public boolean ledgerEnabled = true;
+    public int ledgerSegmentSize = 100000;
+    public int ledgerRetention = 0;
+    private BountyLedger ledger;
+    private Task ledgerCompaction;
+    private PlayerNameIndex nameIndex;
+    public int nameCacheSize = 10000;
+    private ProfileNameCache nameCache;
+    public int bulkChunkSize = 1000;
+    public boolean asyncCommands = true;
+    public ClaimGuard.Action claimAbuseAction = ClaimGuard.Action.LOG;
+    public int claimAbuseWindow = 60;
+    public int claimAbuseHistory = 16;
+    public int claimAbusePairClaims = 3;
+    public int claimAbuseHoldTime = 60;
+    private final ClaimGuard claimGuard = new ClaimGuard();
+    private BulkJob bulkJob;
+    private static final DateTimeFormatter LEDGER_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+	    .withZone(ZoneId.systemDefault());
+    private final CommandRateLimiter rateLimiter = new CommandRateLimiter();
+    private boolean compacting = false;
 
     // Creates config file
     public void setup() {
 	if (!Files.exists(configFile)) {
 	    try {
 		Files.createFile(configFile);
-		configNode = configLoader.load();
-		CommentedConfigurationNode broadcastNode = configNode.getNode("allowBroadcasts");
-		broadcastNode.setComment("Should the server broadcast bounty changes/claims?");
-		broadcastNode.setValue(true);
-		configLoader.save(configNode);
 	    } catch (Exception e) {
 		e.printStackTrace();
 	    }
-	} else {
-	    load();
 	}
+	load();
     }
 
-    // Loads config file if it already exists
+    // Loads config file, adding any settings missing from it
     public void load() {
 	try {
 	    configNode = configLoader.load();
-	    broadcasts = configNode.getNode("allowBroadcasts").getBoolean();
+	    broadcasts = setDefault("allowBroadcasts", true, "Should the server broadcast bounty changes/claims?")
+		    .getBoolean();
+	    broadcastWindow = Math.max(0, setDefault("broadcastWindow", 3,
+		    "How many seconds changes to the same player's bounty are merged into one broadcast. 0 broadcasts every change.")
+			    .getInt());
+	    broadcastsPerSecond = Math.max(0, setDefault("broadcastsPerSecond", 4,
+		    "The most bounty broadcasts sent per second, extra ones are hidden. 0 means no limit.").getInt());
+	    if (broadcaster != null) {
+		broadcaster.configure(broadcastWindow * 1000L, broadcastsPerSecond);
+	    }
+	    asyncHydration = setDefault("asyncHydration", true,
+		    "Should bounties be loaded in the background on startup instead of blocking the server?")
+			    .getBoolean();
+	    hydrationThreads = Math.max(1, setDefault("hydrationThreads", 4,
+		    "How many threads load bounties at once when asyncHydration is enabled.").getInt());
+	    hydrationBatchSize = Math.max(1, setDefault("hydrationBatchSize", 500,
+		    "How many users each thread loads at a time when asyncHydration is enabled.").getInt());
+	    snapshots = setDefault("snapshots", true,
+		    "Should bounties be saved to a snapshot file so the server can start without reading every player's data?")
+			    .getBoolean();
+	    snapshotInterval = setDefault("snapshotInterval", 5,
+		    "How many minutes between periodic snapshots. 0 only saves a snapshot on shutdown.").getInt();
+	    sparseStorage = setDefault("sparseStorage", true,
+		    "Should players without a bounty be left without bounty data instead of storing a bounty of 0?")
+			    .getBoolean();
+	    compactionBatchSize = Math.max(1, setDefault("compactionBatchSize", 100,
+		    "How many players /bounty compact checks per tick.").getInt());
+	    bulkChunkSize = Math.max(1, setDefault("bulkChunkSize", 1000,
+		    "How many bounties /bounty bulk imports, exports, resets or scales per tick.").getInt());
+	    writeBehind = setDefault("writeBehind", true,
+		    "Should bounty changes be queued and saved to playerdata in batches instead of on every change?")
+			    .getBoolean();
+	    writeBehindInterval = Math.max(1, setDefault("writeBehindInterval", 5,
+		    "How many seconds between saving queued bounty changes when writeBehind is enabled.").getInt());
+	    writeBehindBatchSize = Math.max(1, setDefault("writeBehindBatchSize", 200,
+		    "The most queued bounty changes saved at once when writeBehind is enabled.").getInt());
+	    storage = setDefault("storage", "playerdata",
+		    "Where bounties are stored: playerdata, or sql for an embedded database. Switching to sql copies existing bounties over once.")
+			    .getString();
+	    databaseUrl = setDefault("databaseUrl", "",
+		    "The JDBC URL of the database used when storage is sql, such as jdbc:sqlite:bounties.db. Empty uses an H2 database in the config folder.")
+			    .getString();
+	    sharedState = setDefault("sharedState", false,
+		    "Do several servers share the database set by databaseUrl? Bounties set on one are then picked up by the others. Needs storage = sql.")
+			    .getBoolean();
+	    sharedPollInterval = Math.max(50, setDefault("sharedPollInterval", 1000,
+		    "How many milliseconds between checks for bounty changes made by other servers when sharedState is enabled.")
+			    .getInt());
+	    bountyExpiry = Math.max(0, setDefault("bountyExpiry", 0,
+		    "How many minutes a bounty lasts after it was last added to before it expires and its contributors are refunded. 0 means bounties never expire.")
+			    .getInt());
+	    bountyDecayPercent = Math.max(0, Math.min(100, setDefault("bountyDecayPercent", 0,
+		    "The percentage taken off every bounty each bountyDecayInterval. 0 means bounties never decay.")
+			    .getInt()));
+	    bountyDecayInterval = Math.max(1, setDefault("bountyDecayInterval", 60,
+		    "How many minutes between bounty decays when bountyDecayPercent is set.").getInt());
+	    if (expiry != null) {
+		expiry.configure(bountyExpiry, bountyDecayPercent, bountyDecayInterval);
+	    }
+	    ledgerEnabled = setDefault("ledger", true,
+		    "Should every bounty change be recorded in /config/rbounty/ledger, for /bounty history?")
+			    .getBoolean();
+	    ledgerSegmentSize = Math.max(1000, setDefault("ledgerSegmentSize", 100000,
+		    "How many records each ledger file holds before a new one is started.").getInt());
+	    ledgerRetention = Math.max(0, setDefault("ledgerRetention", 0,
+		    "How many days ledger records are kept for. 0 keeps them forever.").getInt());
+	    nameCacheSize = Math.max(100, setDefault("nameCacheSize", 10000,
+		    "How many player names are kept in memory for leaderboards and /bounty history.")
+			    .getInt());
+	    asyncCommands = setDefault("asyncCommands", true,
+		    "Should /bounty view, rank, top, topOnline and history be answered off the main thread?").getBoolean();
+	    String action = setDefault("claimAbuseAction", "log",
+		    "What to do with a bounty claim that looks farmed: off, log, hold to pay it out after claimAbuseHoldTime, or block to refuse it.")
+			    .getString();
+	    try {
+		claimAbuseAction = ClaimGuard.Action.valueOf(action.toUpperCase(Locale.ROOT));
+	    } catch (IllegalArgumentException e) {
+		logger.warn("Unknown claimAbuseAction " + action + ", farmed claims will only be logged.");
+		claimAbuseAction = ClaimGuard.Action.LOG;
+	    }
+	    claimAbuseWindow = Math.max(1, setDefault("claimAbuseWindow", 60,
+		    "How many minutes claims and bounty contributions count towards a claim looking farmed.").getInt());
+	    claimAbuseHistory = Math.max(1, setDefault("claimAbuseHistory", 16,
+		    "How many recent claims and contributors are remembered per player.").getInt());
+	    claimAbusePairClaims = Math.max(0, setDefault("claimAbusePairClaims", 3,
+		    "How many claims between the same two players within claimAbuseWindow look farmed. 0 only checks contributions.")
+			    .getInt());
+	    claimAbuseHoldTime = Math.max(1, setDefault("claimAbuseHoldTime", 60,
+		    "How many minutes a held claim waits before it is paid out, unless an admin releases or denies it first.")
+			    .getInt());
+	    claimGuard.configure(claimAbuseAction, claimAbuseHistory, claimAbuseWindow, claimAbusePairClaims);
+	    loadRateLimit(Command.ADD, "add", 6, 2);
+	    loadRateLimit(Command.TOP, "top", 30, 5);
+	    loadRateLimit(Command.TOP_ONLINE, "topOnline", 30, 5);
+	    loadRateLimit(Command.VIEW, "view", 60, 10);
+	    configLoader.save(configNode);
 	} catch (IOException e) {
 	    e.printStackTrace();
 	}
     }
 
+    private void loadRateLimit(Command command, String name, int perMinute, int burst) {
+	rateLimiter.setLimit(command,
+		setDefault(name + "PerMinute", perMinute,
+			"How many times per minute a player may use /bounty " + name + ". 0 means no limit.").getInt(),
+		setDefault(name + "Burst", burst,
+			"How many times in a row a player may use /bounty " + name + " before being limited.")
+				.getInt());
+    }
+
+    private CommentedConfigurationNode setDefault(String path, Object value, String comment) {
+	CommentedConfigurationNode node = configNode.getNode(path);
+	if (node.isVirtual()) {
+	    node.setComment(comment);
+	    node.setValue(value);
+	}
+	return node;
+    }
+
     @Listener
     public void onInit(GameInitializationEvent event) {
 	DataRegistration.builder().dataClass(BountyData.class).immutableClass(ImmBountyData.class)
@@ -152,7 +342,7 @@ public class RBountyPlugin {
 
 	Sponge.getCommandManager().register(container, bountyMain, "bounty");
     }
-    
+
     @Listener
     public void onReload(GameReloadEvent event) {
 	configFile = configDir.resolve("rbounty.conf");
@@ -178,7 +368,9 @@ public class RBountyPlugin {
 	    logger.info("RBounty is now disabled.");
 	    return;
 	}
-	economyService = economyOpt.get();
+	economy = new SpongeEconomyBackend(economyOpt.get(), container);
+	syncExecutor = Sponge.getScheduler().createSyncExecutor(this);
+	asyncExecutor = Sponge.getScheduler().createAsyncExecutor(this);
 	permissionService = Sponge.getServiceManager().provide(PermissionService.class).orElse(null);
 	if (permissionService != null) {
 	    Builder adminBuilder = permissionService.newDescriptionBuilder(container);
@@ -190,24 +382,256 @@ public class RBountyPlugin {
 		    .description(Text.of("Allows the user to view, add to, and claim bounties."))
 		    .assign(PermissionDescription.ROLE_USER, true).register();
 	}
-	data = new RBountyData(logger);
+	BountyStorage bountyStorage = createStorage();
+	boolean sql = bountyStorage instanceof SqlBountyStorage;
+	// The database is read in one query, so a snapshot would only go stale
+	data = new RBountyData(logger, userStorageService, bountyStorage,
+		snapshots && !sql ? new BountySnapshot(configDir.resolve("bounties.snapshot")) : null, sparseStorage,
+		writeBehind);
+	data.load(asyncHydration ? asyncExecutor : null, hydrationThreads, hydrationBatchSize);
+	if (sql) {
+	    // Playerdata is read off the main thread, the same way it is hydrated. Every
+	    // server sharing the database has its own playerdata, so each one copies its
+	    // own, told apart by its default world.
+	    String source = Sponge.getServer().getDefaultWorld().map(world -> "playerdata:" + world.getUniqueId())
+		    .orElse("playerdata");
+	    data.migrate(new PlayerDataBountyStorage(userStorageService, logger, sparseStorage), source,
+		    asyncHydration ? asyncExecutor : null, hydrationThreads, hydrationBatchSize);
+	}
+	nameIndex = new PlayerNameIndex(data);
+	Collection<GameProfile> profiles = userStorageService.getAll();
+	nameCache = new ProfileNameCache(nameCacheSize, nameIndex,
+		Sponge.getServer().getGameProfileManager().getCache());
+	asyncExecutor.execute(() -> {
+	    nameIndex.build(profiles);
+	    // The leaderboard is only complete once every bounty is loaded
+	    data.whenLoaded(() -> nameCache.preload(data.getLeaderboard(0, nameCacheSize)));
+	});
+	pipeline = new EconomyPipeline(data, economy, asyncExecutor, syncExecutor, logger);
+	if (ledgerEnabled) {
+	    ledger = new BountyLedger(configDir.resolve("ledger"), ledgerSegmentSize, logger);
+	    try {
+		ledger.open();
+	    } catch (IOException e) {
+		logger.error("Could not open the bounty ledger, bounty changes will not be recorded.", e);
+		ledger = null;
+	    }
+	}
+	if (ledger != null && ledgerRetention > 0) {
+	    // Rewrites whole segments, so it is kept off the main thread
+	    ledgerCompaction = Sponge.getScheduler().createTaskBuilder().async().name("RBounty ledger compaction")
+		    .interval(1, TimeUnit.DAYS).execute(() -> {
+			try {
+			    ledger.compact(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(ledgerRetention));
+			} catch (IOException e) {
+			    logger.error("Could not compact the bounty ledger.", e);
+			}
+		    }).submit(this);
+	}
+	expiry = new BountyExpiry(data, pipeline, ledger, logger);
+	expiry.configure(bountyExpiry, bountyDecayPercent, bountyDecayInterval);
+	Path expiryFile = configDir.resolve("bounties.expiry");
+	if (Files.exists(expiryFile)) {
+	    try {
+		expiry.load(expiryFile);
+	    } catch (IOException e) {
+		logger.error("Could not read bounty expiry times, tracked bounties will not expire.", e);
+	    }
+	}
+	// Bounty changes are made on the main thread, unless they are database
+	// transactions shared with other servers
+	Task.Builder expiryTask = Sponge.getScheduler().createTaskBuilder().name("RBounty expiry")
+		.interval(1, TimeUnit.SECONDS).execute(() -> expiry.tick());
+	if (data.isShared()) {
+	    expiryTask.async();
+	}
+	expiryTask.submit(this);
+	leaderboardRenderer = new LeaderboardRenderer(data, nameCache, this::format);
+	broadcaster = new BountyBroadcaster(msg -> Sponge.getServer().getBroadcastChannel()
+		.send(Text.builder(msg).color(TextColors.BLUE).style(TextStyles.BOLD).build()), this::format);
+	broadcaster.configure(broadcastWindow * 1000L, broadcastsPerSecond);
+	Sponge.getScheduler().createTaskBuilder().name("RBounty broadcasts").intervalTicks(5)
+		.execute(() -> broadcaster.tick()).submit(this);
+	metrics = new RBountyMetrics(data, pipeline, leaderboardRenderer, broadcaster);
+	try {
+	    metrics.register();
+	} catch (JMException e) {
+	    logger.warn("Could not publish RBounty metrics over JMX.", e);
+	}
+	for (Player player : Sponge.getServer().getOnlinePlayers()) {
+	    data.setOnline(player, true);
+	    nameIndex.put(player.getUniqueId(), player.getName());
+	    nameCache.put(player.getUniqueId(), player.getName());
+	}
+	if (snapshots && !sql && snapshotInterval > 0) {
+	    Sponge.getScheduler().createTaskBuilder().async().name("RBounty snapshot")
+		    .interval(snapshotInterval, TimeUnit.MINUTES).delay(snapshotInterval, TimeUnit.MINUTES)
+		    .execute(() -> data.saveSnapshot(false)).submit(this);
+	}
+	// Without sparse storage, hydration also queues the bounty data of players who
+	// have none for this task
+	if (writeBehind || !sparseStorage) {
+	    // Playerdata is only written on the main thread, the database from anywhere
+	    Task.Builder flushTask = Sponge.getScheduler().createTaskBuilder().name("RBounty write-behind")
+		    .interval(writeBehindInterval, TimeUnit.SECONDS).delay(writeBehindInterval, TimeUnit.SECONDS)
+		    .execute(() -> data.flushWrites(writeBehindBatchSize));
+	    if (sql) {
+		flushTask.async();
+	    }
+	    flushTask.submit(this);
+	}
+	if (data.isShared()) {
+	    Sponge.getScheduler().createTaskBuilder().async().name("RBounty shared state")
+		    .interval(sharedPollInterval, TimeUnit.MILLISECONDS).execute(() -> data.pollChanges())
+		    .submit(this);
+	}
+	Sponge.getScheduler().createTaskBuilder().async().name("RBounty rate limit eviction")
+		.interval(1, TimeUnit.MINUTES).execute(() -> rateLimiter.evictIdle()).submit(this);
+	Sponge.getScheduler().createTaskBuilder().async().name("RBounty claim guard eviction")
+		.interval(1, TimeUnit.MINUTES).execute(() -> claimGuard.evictIdle(System.currentTimeMillis()))
+		.submit(this);
+	// Held payouts are made and put back on the main thread
+	Sponge.getScheduler().createTaskBuilder().name("RBounty held claims").interval(1, TimeUnit.SECONDS)
+		.execute(() -> claimGuard.takeDue(System.currentTimeMillis()).forEach(this::payHeld)).submit(this);
 	logger.info("RBounty loaded");
     }
 
-    private void broadcast(String msg, CommandSource src) {
+    /**
+     * Sets up the configured bounty storage. If the database can't be opened,
+     * bounties are stored in playerdata instead.
+     */
+    private BountyStorage createStorage() {
+	if (!storage.equalsIgnoreCase("sql")) {
+	    if (!storage.equalsIgnoreCase("playerdata")) {
+		logger.warn("Unknown storage " + storage + ", storing bounties in playerdata.");
+	    }
+	    if (sharedState) {
+		logger.warn("sharedState needs storage = sql, so bounties are not shared with other servers.");
+	    }
+	    return new PlayerDataBountyStorage(userStorageService, logger, sparseStorage);
+	}
+	String url = databaseUrl.isEmpty() ? "jdbc:h2:" + configDir.resolve("bounties").toAbsolutePath()
+		: databaseUrl;
+	try {
+	    DataSource dataSource = Sponge.getServiceManager().provideUnchecked(SqlService.class)
+		    .getDataSource(this, url);
+	    SqlBountyStorage sqlStorage = new SqlBountyStorage(dataSource, logger, sparseStorage, sharedState);
+	    sqlStorage.createSchema();
+	    return sqlStorage;
+	} catch (Exception e) {
+	    logger.error("Could not open the bounty database, storing bounties in playerdata instead.", e);
+	    return new PlayerDataBountyStorage(userStorageService, logger, sparseStorage);
+	}
+    }
+
+    @Listener
+    public void onJoin(ClientConnectionEvent.Join event) {
+	if (data != null) {
+	    data.setOnline(event.getTargetEntity(), true);
+	    // Also picks up name changes, which are only seen when a player joins
+	    nameIndex.put(event.getTargetEntity().getUniqueId(), event.getTargetEntity().getName());
+	    nameCache.put(event.getTargetEntity().getUniqueId(), event.getTargetEntity().getName());
+	}
+    }
+
+    @Listener
+    public void onDisconnect(ClientConnectionEvent.Disconnect event) {
+	if (data != null) {
+	    data.setOnline(event.getTargetEntity(), false);
+	}
+    }
+
+    @Listener
+    public void onServerStopping(GameStoppingServerEvent event) {
+	if (bulkJob != null) {
+	    logger.warn("Stopped before it finished. " + bulkJob.describe());
+	    finishBulk(bulkJob);
+	}
+	if (data != null) {
+	    // Nobody reviewed these claims, so the bounties go back rather than be paid
+	    for (Held claim : claimGuard.take(null)) {
+		restoreHeld(claim);
+	    }
+	    if (data.getPendingWrites() > 0) {
+		logger.info("Saving " + data.getPendingWrites() + " queued bounty changes.");
+		data.flushWrites(0);
+	    }
+	    data.saveSnapshot(true);
+	}
+	if (expiry != null) {
+	    try {
+		expiry.save(configDir.resolve("bounties.expiry"));
+	    } catch (IOException e) {
+		logger.error("Could not save bounty expiry times.", e);
+	    }
+	}
+	if (metrics != null) {
+	    metrics.unregister();
+	}
+	if (ledgerCompaction != null) {
+	    ledgerCompaction.cancel();
+	}
+	if (ledger != null) {
+	    try {
+		ledger.close();
+	    } catch (IOException e) {
+		logger.error("Could not close the bounty ledger.", e);
+	    }
+	}
+    }
+
+    /**
+     * @return a command argument for a player, resolved through the name index
+     */
+    private CommandElement userArgument() {
+	return new IndexedUserElement(Text.of("user"), () -> nameIndex, () -> userStorageService);
+    }
+
+    private void recordLedger(Type type, UUID target, UUID actor, int amount, int bounty) {
+	if (ledger != null) {
+	    ledger.record(type, target, actor, amount, bounty);
+	}
+    }
+
+    /**
+     * Takes a token for a command from the player's rate limit, telling them if
+     * there is none left. Admins and the console are never limited.
+     * 
+     * @return whether the command should be refused
+     */
+    private boolean rateLimited(CommandSource src, Command command) {
+	if (!(src instanceof Player)) {
+	    return false;
+	}
+	long wait = rateLimiter.tryAcquire(((Player) src).getUniqueId(), command);
+	if (wait == 0 || src.hasPermission("rbounty.command.admin")) {
+	    return false;
+	}
+	src.sendMessage(Text.builder("You're doing that too often. Try again in " + ((wait + 999) / 1000) + "s.")
+		.color(TextColors.BLUE).build());
+	return true;
+    }
+
+    // Broadcasts go through the broadcaster, which merges and limits them. Without
+    // broadcasts only the player who made the change is told, right away.
+    private void broadcast(String msg, CommandSource src, Consumer<BountyBroadcaster> announcement) {
 	if (broadcasts) {
-	    Sponge.getServer().getBroadcastChannel().send(Text.builder(msg).color(TextColors.BLUE).style(TextStyles.BOLD).build());
+	    announcement.accept(broadcaster);
 	} else if (src != null) {
 	    src.sendMessage(Text.builder(msg).color(TextColors.BLUE).build());
 	}
     }
 
+    private String format(int amount) {
+	return economy.format(BigDecimal.valueOf(amount));
+    }
+
     @Listener
     public void onEntityDeath(DestructEntityEvent.Death event) {
 	// If an entity is killed, that entity happens to be a player w/ a bounty, and
-	// the entitydeath cause has another player in it with a valid currency account,
-	// award the killer the bounty.
+	// the entitydeath cause has another player in it, award the killer the bounty.
 	if (!event.isCancelled() && event.getTargetEntity() instanceof User) {
+	    long startTime = System.nanoTime();
 	    User killed = (User) event.getTargetEntity();
 	    User killer = null;
 	    for (Object object : event.getCause().all()) {
@@ -217,23 +641,116 @@ public class RBountyPlugin {
 		}
 	    }
 	    if (killer != null && !event.getContext().containsKey(EventContextKeys.FAKE_PLAYER)
-		    && data.getBounty(killed) > 0) {
-		UniqueAccount killerAccount = economyService.getOrCreateAccount(killer.getUniqueId()).orElse(null);
-		if (killerAccount != null) {
-		    killerAccount.deposit(economyService.getDefaultCurrency(),
-			    BigDecimal.valueOf(data.getBounty(killed)),
-			    Cause.builder().append(killed).append(killer).append(container)
-				    .build(EventContext.builder().add(EventContextKeys.PLUGIN, container).build()));
-		    data.setBounty(killed.getUniqueId(), 0);
-		    broadcast(killer.getName() + " has claimed " + killed.getName() + "'s bounty!", null);
-		}
+		    && data.getBounty(killed) > 0 && allowClaim(killed, killer)) {
+		// Claimed before paying out, so the same bounty can never be paid twice
+		User claimer = killer;
+		pipeline.claim(killed, killer.getUniqueId(), killed, killer).thenAccept(result -> {
+		    if (result.getStatus() == Status.SUCCESS) {
+			metrics.recordClaim(true);
+			expiry.claimed(killed.getUniqueId());
+			recordLedger(Type.CLAIM, killed.getUniqueId(), claimer.getUniqueId(), result.getAmount(), 0);
+			broadcast(claimer.getName() + " has claimed " + killed.getName() + "'s bounty!", null,
+				b -> b.claim(killed.getUniqueId(), killed.getName(), claimer.getName()));
+		    } else if (result.getStatus() == Status.FAILED) {
+			metrics.recordClaim(false);
+			logger.error("Could not pay " + claimer.getName() + " the bounty on " + killed.getName()
+				+ ". The bounty has been put back.");
+		    }
+		});
+	    }
+	    metrics.getDeathEventLatency().recordSince(startTime);
+	}
+    }
+
+    /**
+     * Checks a claim with the claim guard, logging it if it looks farmed. Held
+     * claims take the bounty here and are paid out later by
+     * {@link #payHeld}.
+     *
+     * @return whether the bounty should be paid out now
+     */
+    private boolean allowClaim(User killed, User killer) {
+	long now = System.currentTimeMillis();
+	Reason reason = claimGuard.check(killer.getUniqueId(), killed.getUniqueId(), now);
+	if (reason == null) {
+	    return true;
+	}
+	String claim = killer.getName() + "'s claim on " + killed.getName() + "'s bounty";
+	switch (claimGuard.getAction()) {
+	case BLOCK:
+	    logger.warn(claim + " was blocked, " + describe(reason) + ".");
+	    tell(killer, "Your claim on " + killed.getName() + "'s bounty was blocked.");
+	    return false;
+	case HOLD:
+	    int amount = data.claimBounty(killed);
+	    if (amount > 0) {
+		expiry.claimed(killed.getUniqueId());
+		claimGuard.hold(new Held(killer.getUniqueId(), killed.getUniqueId(), amount,
+			now + TimeUnit.MINUTES.toMillis(claimAbuseHoldTime)));
+		logger.warn(claim + " of " + format(amount) + " is held for " + claimAbuseHoldTime + " minutes, "
+			+ describe(reason) + ". See /bounty held.");
+		tell(killer, "Your claim on " + killed.getName() + "'s bounty is held for review.");
 	    }
+	    return false;
+	default:
+	    logger.warn(claim + " looks farmed, " + describe(reason) + ".");
+	    return true;
+	}
+    }
+
+    private String describe(Reason reason) {
+	switch (reason) {
+	case CLAIMER_CONTRIBUTED:
+	    return "the claimer added to that bounty in the last " + claimAbuseWindow + " minutes";
+	case VICTIM_CONTRIBUTED:
+	    return "the victim added to the claimer's bounty in the last " + claimAbuseWindow + " minutes";
+	default:
+	    return "the two have claimed each other's bounties " + claimAbusePairClaims + " or more times in the last "
+		    + claimAbuseWindow + " minutes";
 	}
     }
 
+    private void tell(User user, String msg) {
+	if (user instanceof Player) {
+	    ((Player) user).sendMessage(Text.builder(msg).color(TextColors.BLUE).build());
+	}
+    }
+
+    /**
+     * Pays out a held claim, putting the bounty back if the payment fails.
+     */
+    private void payHeld(Held claim) {
+	String claimer = nameCache.getName(claim.getClaimer());
+	String victim = nameCache.getName(claim.getVictim());
+	pipeline.pay(claim.getClaimer(), claim.getAmount(), claim.getVictim()).thenAccept(paid -> {
+	    if (paid) {
+		metrics.recordClaim(true);
+		recordLedger(Type.CLAIM, claim.getVictim(), claim.getClaimer(), claim.getAmount(), 0);
+		broadcast(claimer + " has claimed " + victim + "'s bounty!", null,
+			b -> b.claim(claim.getVictim(), victim, claimer));
+	    } else {
+		metrics.recordClaim(false);
+		logger.error("Could not pay " + claimer + " the held bounty on " + victim
+			+ ". The bounty has been put back.");
+		restoreHeld(claim);
+	    }
+	});
+    }
+
+    /**
+     * Puts a held claim back on the victim's bounty.
+     */
+    private void restoreHeld(Held claim) {
+	UUID victim = claim.getVictim();
+	data.changeBounties(Collections.singleton(victim), bounty -> bounty + claim.getAmount());
+	int bounty = data.getCachedBounty(victim);
+	expiry.set(victim, bounty);
+	recordLedger(Type.ADD, victim, null, claim.getAmount(), bounty);
+    }
+
     CommandSpec bountySet = CommandSpec.builder().description(Text.of("Sets a player's bounty"))
 	    .permission("rbounty.command.admin")
-	    .arguments(GenericArguments.onlyOne(GenericArguments.user(Text.of("user"))),
+	    .arguments(GenericArguments.onlyOne(userArgument()),
 		    GenericArguments.onlyOne(GenericArguments.integer(Text.of("bounty"))))
 	    .executor(new SetBounty()).build();
 
@@ -248,9 +765,12 @@ public class RBountyPlugin {
 	    }
 
 	    if (data.setBounty(user, bounty)) {
-		broadcast(user.getName() + "'s bounty has been set to "
-			+ economyService.getDefaultCurrency().format(BigDecimal.valueOf(data.getBounty(user))).toPlain()
-			+ "!", src);
+		int newBounty = data.getBounty(user);
+		expiry.set(user.getUniqueId(), newBounty);
+		recordLedger(Type.SET, user.getUniqueId(), src instanceof Player ? ((Player) src).getUniqueId() : null,
+			bounty, newBounty);
+		broadcast(user.getName() + "'s bounty has been set to " + format(newBounty) + "!", src,
+			b -> b.set(user.getUniqueId(), user.getName(), newBounty));
 		return CommandResult.success();
 	    }
 	    src.sendMessage(Text.builder("An error occured. Check console log for more information")
@@ -261,12 +781,15 @@ public class RBountyPlugin {
 
     CommandSpec bountyView = CommandSpec.builder().description(Text.of("Get a player's current bounty"))
 	    .permission("rbounty.command.user")
-	    .arguments(GenericArguments.optional(GenericArguments.onlyOne(GenericArguments.user(Text.of("user")))))
+	    .arguments(GenericArguments.optional(GenericArguments.onlyOne(userArgument())))
 	    .executor(new ViewBounty()).build();
 
     public class ViewBounty implements CommandExecutor {
 	@Override
 	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    if (rateLimited(src, Command.VIEW)) {
+		return CommandResult.empty();
+	    }
 	    User user = args.<User>getOne("user").orElse(null);
 	    if (user == null) {
 		if (src instanceof Player) {
@@ -276,25 +799,34 @@ public class RBountyPlugin {
 		    return CommandResult.empty();
 		}
 	    }
-	    int bounty = data.getBounty(user);
-	    if (bounty > 0) {
-		src.sendMessage(Text.builder(user.getName() + "'s bounty is " + bounty).color(TextColors.BLUE).build());
+	    User target = user;
+	    if (replyAsync(src, view -> describeBounty(target, view.getBounty(target.getUniqueId())))) {
 		return CommandResult.success();
 	    }
-	    src.sendMessage(Text.builder(user.getName() + " doesn't have a bounty").color(TextColors.BLUE).build());
+	    src.sendMessage(describeBounty(user, data.getBounty(user)));
 	    return CommandResult.success();
 	}
+
+	private Text describeBounty(User user, int bounty) {
+	    if (bounty > 0) {
+		return Text.builder(user.getName() + "'s bounty is " + bounty).color(TextColors.BLUE).build();
+	    }
+	    return Text.builder(user.getName() + " doesn't have a bounty").color(TextColors.BLUE).build();
+	}
     }
 
     CommandSpec bountyAdd = CommandSpec.builder().description(Text.of("Add to a player's bounty"))
 	    .permission("rbounty.command.user")
-	    .arguments(GenericArguments.onlyOne(GenericArguments.user(Text.of("user"))),
+	    .arguments(GenericArguments.onlyOne(userArgument()),
 		    GenericArguments.onlyOne(GenericArguments.integer(Text.of("bounty"))))
 	    .executor(new AddBounty()).build();
 
     public class AddBounty implements CommandExecutor {
 	@Override
 	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    if (rateLimited(src, Command.ADD)) {
+		return CommandResult.empty();
+	    }
 	    User user = args.<User>getOne("user").get();
 	    int bounty = args.<Integer>getOne("bounty").get();
 	    if (!(src instanceof Player)) {
@@ -305,40 +837,36 @@ public class RBountyPlugin {
 		src.sendMessage(Text.builder("Bounty must be a positive integer.").color(TextColors.BLUE).build());
 		return CommandResult.empty();
 	    }
-	    UniqueAccount account = economyService.getOrCreateAccount(((Player) src).getUniqueId()).orElse(null);
-	    if (account == null) {
-		src.sendMessage(Text.builder("An error occured. Check economy plugin for more information.")
-			.color(TextColors.BLUE).build());
-		return CommandResult.empty();
-	    }
-	    if (account.hasBalance(economyService.getDefaultCurrency()) && account
-		    .getBalance(economyService.getDefaultCurrency()).compareTo(BigDecimal.valueOf(bounty)) < 0) {
-		src.sendMessage(Text.builder("You don't have enough money to bounty " + user.getName() + " for "
-			+ economyService.getDefaultCurrency().format(BigDecimal.valueOf(bounty)).toPlain() + ".")
-			.color(TextColors.BLUE).build());
-		return CommandResult.empty();
-	    }
+	    // The payment runs off the main thread, and the result is reported back on it
+	    pipeline.contribute(user, ((Player) src).getUniqueId(), bounty, src).thenAccept(reportAdd(src, user));
+	    return CommandResult.success();
+	}
 
-	    if (data.setBounty(user, bounty + data.getBounty(user))) {
-		account.withdraw(economyService.getDefaultCurrency(), BigDecimal.valueOf(bounty),
-			Cause.builder().append(src).append(container)
-				.build(EventContext.builder().add(EventContextKeys.PLUGIN, container).build()));
-		if (data.getBounty(user) == bounty) {
-		    broadcast("A bounty of "
-			    + economyService.getDefaultCurrency().format(BigDecimal.valueOf(bounty)).toPlain()
-			    + " has been set on " + user.getName() + "!", src);
+	private Consumer<Result> reportAdd(CommandSource src, User user) {
+	    return result -> {
+		if (result.getStatus() == Status.NOT_ENOUGH_MONEY) {
+		    src.sendMessage(Text.builder("You don't have enough money to bounty " + user.getName() + " for "
+			    + format(result.getAmount()) + ".").color(TextColors.BLUE).build());
+		} else if (result.getStatus() == Status.NO_ACCOUNT) {
+		    src.sendMessage(Text.builder("An error occured. Check economy plugin for more information.")
+			    .color(TextColors.BLUE).build());
+		} else if (result.getStatus() != Status.SUCCESS) {
+		    src.sendMessage(Text.builder("An error occured. Check console log for more information.")
+			    .color(TextColors.BLUE).build());
 		} else {
-		    broadcast(user.getName() + "'s bounty has been increased by "
-			    + economyService.getDefaultCurrency().format(BigDecimal.valueOf(bounty)).toPlain()
-			    + " and is now at " + economyService.getDefaultCurrency()
-				    .format(BigDecimal.valueOf(data.getBounty(user))).toPlain()
-			    + "!", src);
+		    expiry.contributed(user.getUniqueId(), ((Player) src).getUniqueId(), result.getAmount());
+		    claimGuard.contributed(user.getUniqueId(), ((Player) src).getUniqueId(),
+			    System.currentTimeMillis());
+		    recordLedger(Type.ADD, user.getUniqueId(), ((Player) src).getUniqueId(), result.getAmount(),
+			    result.getBounty());
+		    String msg = result.getBounty() == result.getAmount()
+			    ? "A bounty of " + format(result.getAmount()) + " has been set on " + user.getName() + "!"
+			    : user.getName() + "'s bounty has been increased by " + format(result.getAmount())
+				    + " and is now at " + format(result.getBounty()) + "!";
+		    broadcast(msg, src, b -> b.increase(user.getUniqueId(), user.getName(), result.getAmount(),
+			    result.getBounty()));
 		}
-		return CommandResult.success();
-	    }
-	    src.sendMessage(Text.builder("An error occured. Check console log for more information.")
-		    .color(TextColors.BLUE).build());
-	    return CommandResult.empty();
+	    };
 	}
     }
 
@@ -350,7 +878,13 @@ public class RBountyPlugin {
     public class TopBounty implements CommandExecutor {
 	@Override
 	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    if (rateLimited(src, Command.TOP)) {
+		return CommandResult.empty();
+	    }
 	    int page = args.<Integer>getOne("page").orElse(1);
+	    if (replyAsync(src, view -> leaderboardRenderer.render(view, page * 10 - 10, page * 10, false))) {
+		return CommandResult.success();
+	    }
 	    src.sendMessage(parseLeaderboard(page * 10 - 10, page * 10, false));
 	    return CommandResult.success();
 	}
@@ -365,20 +899,473 @@ public class RBountyPlugin {
     public class TopOnlineBounty implements CommandExecutor {
 	@Override
 	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    if (rateLimited(src, Command.TOP_ONLINE)) {
+		return CommandResult.empty();
+	    }
 	    int page = args.<Integer>getOne("page").orElse(1);
+	    if (replyAsync(src, view -> leaderboardRenderer.render(view, page * 10 - 10, page * 10, true))) {
+		return CommandResult.success();
+	    }
 	    src.sendMessage(parseLeaderboard(page * 10 - 10, page * 10, true));
 	    return CommandResult.success();
 	}
     }
 
+    CommandSpec bountyRank = CommandSpec.builder().description(Text.of("Get a player's place on the bounty leaderboard"))
+	    .permission("rbounty.command.user")
+	    .arguments(GenericArguments.optional(GenericArguments.onlyOne(userArgument())))
+	    .executor(new RankBounty()).build();
+
+    public class RankBounty implements CommandExecutor {
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    User user = args.<User>getOne("user").orElse(null);
+	    if (user == null) {
+		if (src instanceof Player) {
+		    user = (User) src;
+		} else {
+		    src.sendMessage(Text.builder("This command must target a player").color(TextColors.BLUE).build());
+		    return CommandResult.empty();
+		}
+	    }
+	    User target = user;
+	    if (replyAsync(src, view -> describeRank(target, view.rank(target.getUniqueId()), view.size(false),
+		    view.getBounty(target.getUniqueId())))) {
+		return CommandResult.success();
+	    }
+	    src.sendMessage(describeRank(user, data.getRank(user.getUniqueId()), data.getLeaderboardSize(),
+		    data.getBounty(user)));
+	    return CommandResult.success();
+	}
+
+	private Text describeRank(User user, int rank, int size, int bounty) {
+	    if (rank < 0) {
+		return Text.builder(user.getName() + " doesn't have a bounty").color(TextColors.BLUE).build();
+	    }
+	    return Text.builder(user.getName() + " is #" + (rank + 1) + " of " + size
+		    + " on the bounty leaderboard with " + format(bounty) + ".").color(TextColors.BLUE).build();
+	}
+    }
+
+    /**
+     * Answers a command that only reads bounties from a {@link BountyView}, or the
+     * ledger, on an async thread, then sends the reply on the main thread, so the command adds
+     * no tick time. Not used while bounties are loading or a bulk operation runs,
+     * since the leaderboards are incomplete then.
+     * 
+     * @param src   the source to reply to
+     * @param reply builds the reply from the view
+     * @return whether the command will be answered asynchronously, otherwise the
+     *         caller must answer it
+     */
+    private boolean replyAsync(CommandSource src, Function<BountyView, Text> reply) {
+	if (!asyncCommands || data.isLoading() || data.isBulk()) {
+	    return false;
+	}
+	asyncExecutor.execute(() -> {
+	    Text text = reply.apply(data.getView());
+	    syncExecutor.execute(() -> src.sendMessage(text));
+	});
+	return true;
+    }
+
+    CommandSpec bountyCompact = CommandSpec.builder()
+	    .description(Text.of("Removes stored bounties of 0 from player data in the background"))
+	    .permission("rbounty.command.admin").executor(new CompactBounty()).build();
+
+    public class CompactBounty implements CommandExecutor {
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    if (!data.isSparse()) {
+		src.sendMessage(Text.builder("Bounties of 0 are only removed when sparseStorage is enabled.")
+			.color(TextColors.BLUE).build());
+		return CommandResult.empty();
+	    }
+	    if (!(data.getStorage() instanceof PlayerDataBountyStorage)) {
+		src.sendMessage(Text.builder("Only bounties stored in player data need compacting.")
+			.color(TextColors.BLUE).build());
+		return CommandResult.empty();
+	    }
+	    PlayerDataBountyStorage playerData = (PlayerDataBountyStorage) data.getStorage();
+	    if (compacting) {
+		src.sendMessage(Text.builder("Bounty data is already being compacted.").color(TextColors.BLUE).build());
+		return CommandResult.empty();
+	    }
+	    compacting = true;
+	    List<GameProfile> profiles = new ArrayList<GameProfile>(userStorageService.getAll());
+	    src.sendMessage(Text.builder("Removing bounties of 0 from " + profiles.size() + " players in the background.")
+		    .color(TextColors.BLUE).build());
+	    // A batch per tick on the main thread, since it writes player data
+	    int[] position = { 0, 0 };
+	    Sponge.getScheduler().createTaskBuilder().name("RBounty compaction").intervalTicks(1).execute(task -> {
+		int to = Math.min(profiles.size(), position[0] + compactionBatchSize);
+		for (int i = position[0]; i < to; i++) {
+		    if (playerData.stripZeroBounty(profiles.get(i))) {
+			position[1]++;
+		    }
+		}
+		position[0] = to;
+		if (to >= profiles.size()) {
+		    task.cancel();
+		    compacting = false;
+		    logger.info("Removed bounties of 0 from " + position[1] + " players.");
+		    src.sendMessage(Text.builder("Removed bounties of 0 from " + position[1] + " players.")
+			    .color(TextColors.BLUE).build());
+		}
+	    }).submit(RBountyPlugin.this);
+	    return CommandResult.success();
+	}
+    }
+
+    CommandSpec bountyStats = CommandSpec.builder().description(Text.of("Shows RBounty's performance metrics"))
+	    .permission("rbounty.command.admin").executor(new StatsBounty()).build();
+
+    public class StatsBounty implements CommandExecutor {
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    Text.Builder builder = Text.builder();
+	    builder.append(Text.of("---------------------RBOUNTY STATS---------------------"));
+	    for (String line : metrics.describe()) {
+		builder.append(Text.of("\n" + line));
+	    }
+	    if (expiry.isEnabled()) {
+		builder.append(Text.of("\nExpiry: " + expiry.getTracked() + " bounties tracked, " + expiry.getExpired()
+			+ " expired, " + expiry.getRefunded() + " refunded, " + expiry.getDecayed() + " decays"));
+	    }
+	    builder.append(Text.of("\nNames: " + nameCache.size() + "/" + nameCache.getCapacity() + " cached, "
+		    + nameCache.getHits() + " hits, " + nameCache.getMisses() + " misses"));
+	    if (claimGuard.getAction() != ClaimGuard.Action.OFF) {
+		builder.append(Text.of("\nClaim abuse: " + claimGuard.getFlagged() + " flagged, " + claimGuard.getBlocked()
+			+ " blocked, " + claimGuard.getHeldTotal() + " held (" + claimGuard.getHeld().size()
+			+ " waiting), " + claimGuard.getTracked() + " players tracked"));
+	    }
+	    if (data.isLoading()) {
+		builder.append(Text.of("\nStill loading bounties (" + data.getHydrated() + "/"
+			+ data.getHydrationTotal() + ")"));
+	    }
+	    src.sendMessage(builder.color(TextColors.BLUE).build());
+	    return CommandResult.success();
+	}
+    }
+
+    CommandSpec bountyHistory = CommandSpec.builder().description(Text.of("Shows the history of a player's bounty"))
+	    .permission("rbounty.command.admin")
+	    .arguments(GenericArguments.onlyOne(userArgument()),
+		    GenericArguments.optional(GenericArguments.onlyOne(GenericArguments.integer(Text.of("page")))))
+	    .executor(new HistoryBounty()).build();
+
+    public class HistoryBounty implements CommandExecutor {
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    if (ledger == null) {
+		src.sendMessage(Text.builder("The bounty ledger is disabled.").color(TextColors.BLUE).build());
+		return CommandResult.empty();
+	    }
+	    User user = args.<User>getOne("user").get();
+	    int page = Math.max(1, args.<Integer>getOne("page").orElse(1));
+	    // Reads the ledger from disk, so it is kept off the main thread when it can be
+	    if (replyAsync(src, view -> describeHistory(user, page))) {
+		return CommandResult.success();
+	    }
+	    src.sendMessage(describeHistory(user, page));
+	    return CommandResult.success();
+	}
+
+	private Text describeHistory(User user, int page) {
+	    History history;
+	    try {
+		history = ledger.history(user.getUniqueId(), (page - 1) * 10, page * 10);
+	    } catch (IOException e) {
+		logger.error("Could not read the bounty ledger.", e);
+		return Text.builder("An error occured. Check console log for more information.")
+			.color(TextColors.BLUE).build();
+	    }
+	    if (history.getRecords().isEmpty()) {
+		return Text.builder("No bounty history for " + user.getName() + " on that page.")
+			.color(TextColors.BLUE).build();
+	    }
+	    Text.Builder builder = Text.builder();
+	    builder.append(Text.of("-------------BOUNTY HISTORY: " + user.getName() + " (page " + page + "/"
+		    + ((history.getTotal() + 9) / 10) + ")-------------"));
+	    for (LedgerRecord record : history.getRecords()) {
+		builder.append(Text.of("\n" + LEDGER_TIME.format(Instant.ofEpochMilli(record.getTime()))
+			+ " " + describe(record)));
+	    }
+	    return builder.color(TextColors.BLUE).build();
+	}
+
+	private String describe(LedgerRecord record) {
+	    String target = name(record.getTarget());
+	    String actor = record.getActor() == null ? "the server" : name(record.getActor());
+	    switch (record.getType()) {
+	    case ADD:
+		return actor + " added " + format(record.getAmount()) + " to " + target + "'s bounty, now "
+			+ format(record.getBounty());
+	    case SET:
+		return actor + " set " + target + "'s bounty to " + format(record.getAmount());
+	    case CLAIM:
+		return actor + " claimed " + target + "'s bounty of " + format(record.getAmount());
+	    case EXPIRE:
+		return target + "'s bounty of " + format(record.getAmount()) + " expired";
+	    default:
+		return actor + " was refunded " + format(record.getAmount()) + " from " + target + "'s bounty";
+	    }
+	}
+
+	private String name(UUID uuid) {
+	    return nameCache.getName(uuid);
+	}
+    }
+
+    CommandSpec bountyImport = CommandSpec.builder()
+	    .description(Text.of("Sets the bounties listed in a .csv or .ndjson file in /config/rbounty"))
+	    .permission("rbounty.command.admin")
+	    .arguments(GenericArguments.onlyOne(GenericArguments.string(Text.of("file"))))
+	    .executor(new ImportBounty()).build();
+
+    public class ImportBounty implements CommandExecutor {
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    Path file = bulkFile(src, args.<String>getOne("file").get());
+	    if (file == null) {
+		return CommandResult.empty();
+	    }
+	    if (!Files.isRegularFile(file)) {
+		src.sendMessage(Text.builder(file.getFileName() + " was not found in /config/rbounty.")
+			.color(TextColors.BLUE).build());
+		return CommandResult.empty();
+	    }
+	    // Playerdata can only hold the bounties of players the server knows
+	    boolean playerData = data.getStorage() instanceof PlayerDataBountyStorage;
+	    return startBulk(src, new ImportJob(data, file, BountyFormat.forFile(file), bulkChunkSize,
+		    uuid -> !playerData || nameIndex.getName(uuid) != null, bulkListener(src), logger));
+	}
+    }
+
+    CommandSpec bountyExport = CommandSpec.builder()
+	    .description(Text.of("Writes every bounty to a .csv or .ndjson file in /config/rbounty"))
+	    .permission("rbounty.command.admin")
+	    .arguments(GenericArguments.onlyOne(GenericArguments.string(Text.of("file"))))
+	    .executor(new ExportBounty()).build();
+
+    public class ExportBounty implements CommandExecutor {
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    Path file = bulkFile(src, args.<String>getOne("file").get());
+	    if (file == null) {
+		return CommandResult.empty();
+	    }
+	    return startBulk(src, new ExportJob(data, file, BountyFormat.forFile(file), bulkChunkSize));
+	}
+    }
+
+    CommandSpec bountyReset = CommandSpec.builder().description(Text.of("Sets every bounty to 0"))
+	    .permission("rbounty.command.admin").executor(new ResetBounty()).build();
+
+    public class ResetBounty implements CommandExecutor {
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    return startBulk(src, AdjustAllJob.reset(data, bulkChunkSize, bulkListener(src)));
+	}
+    }
+
+    CommandSpec bountyScale = CommandSpec.builder()
+	    .description(Text.of("Scales every bounty to a percentage of itself, such as 50 to halve them"))
+	    .permission("rbounty.command.admin")
+	    .arguments(GenericArguments.onlyOne(GenericArguments.integer(Text.of("percent"))))
+	    .executor(new ScaleBounty()).build();
+
+    public class ScaleBounty implements CommandExecutor {
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    int percent = args.<Integer>getOne("percent").get();
+	    if (percent < 0) {
+		src.sendMessage(Text.builder("Percent must be a non-negative integer").color(TextColors.BLUE).build());
+		return CommandResult.empty();
+	    }
+	    return startBulk(src, AdjustAllJob.scale(data, percent, bulkChunkSize, bulkListener(src)));
+	}
+    }
+
+    CommandSpec bountyBulkStatus = CommandSpec.builder().description(Text.of("Shows the running bulk operation"))
+	    .permission("rbounty.command.admin").executor(new BulkStatusBounty()).build();
+
+    public class BulkStatusBounty implements CommandExecutor {
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    src.sendMessage(Text.builder(bulkJob == null ? "No bulk operation is running." : bulkJob.describe())
+		    .color(TextColors.BLUE).build());
+	    return CommandResult.success();
+	}
+    }
+
+    CommandSpec bountyBulk = CommandSpec.builder()
+	    .description(Text.of("Imports, exports, resets or scales every bounty in the background"))
+	    .permission("rbounty.command.admin").child(bountyImport, "import").child(bountyExport, "export")
+	    .child(bountyReset, "reset").child(bountyScale, "scale").child(bountyBulkStatus, "status").build();
+
+    /**
+     * Finds a file for /bounty bulk import or export in the config directory.
+     * 
+     * @return the file, or null if the name is not a plain .csv or .ndjson file
+     *         name, which the source is told
+     */
+    private Path bulkFile(CommandSource src, String name) {
+	Path file = configDir.resolve(name).normalize();
+	if (!configDir.normalize().equals(file.getParent()) || BountyFormat.forFile(file) == null) {
+	    src.sendMessage(Text.builder("The file must be a .csv, .ndjson or .jsonl file directly in /config/rbounty.")
+		    .color(TextColors.BLUE).build());
+	    return null;
+	}
+	return file;
+    }
+
+    /**
+     * @return a listener that restarts the expiry of, and records in the ledger,
+     *         every bounty a bulk operation changes
+     */
+    private BulkJob.Listener bulkListener(CommandSource src) {
+	UUID actor = src instanceof Player ? ((Player) src).getUniqueId() : null;
+	return (uuid, previous, bounty) -> {
+	    expiry.set(uuid, bounty);
+	    recordLedger(Type.SET, uuid, actor, bounty, bounty);
+	};
+    }
+
+    /**
+     * Runs a bulk operation a chunk per tick on the main thread, since it may
+     * write player data, telling the source how far along it is every few
+     * seconds. Only one runs at a time, and none until every bounty is loaded,
+     * since players not loaded yet would be skipped.
+     */
+    private CommandResult startBulk(CommandSource src, BulkJob job) {
+	if (data.isLoading()) {
+	    src.sendMessage(Text.builder("Bounties are still loading (" + data.getHydrated() + "/"
+		    + data.getHydrationTotal() + "), try again once they are.").color(TextColors.BLUE).build());
+	    return CommandResult.empty();
+	}
+	if (bulkJob != null) {
+	    src.sendMessage(Text.builder("Another bulk operation is running. " + bulkJob.describe())
+		    .color(TextColors.BLUE).build());
+	    return CommandResult.empty();
+	}
+	try {
+	    job.start();
+	} catch (IOException e) {
+	    logger.error("Could not start " + job.getName() + ".", e);
+	    src.sendMessage(Text.builder("Could not start " + job.getName() + ": " + e.getMessage())
+		    .color(TextColors.BLUE).build());
+	    finishBulk(job);
+	    return CommandResult.empty();
+	}
+	bulkJob = job;
+	src.sendMessage(Text.builder(job.getName() + " started, see /bounty bulk status.").color(TextColors.BLUE)
+		.build());
+	long[] lastReport = { System.currentTimeMillis() };
+	Sponge.getScheduler().createTaskBuilder().name("RBounty bulk operation").intervalTicks(1).execute(task -> {
+	    boolean more;
+	    try {
+		more = job.step();
+	    } catch (IOException e) {
+		logger.error(job.getName() + " failed. " + job.describe(), e);
+		src.sendMessage(Text.builder(job.getName() + " failed: " + e.getMessage()).color(TextColors.BLUE)
+			.build());
+		more = false;
+	    }
+	    if (!more) {
+		task.cancel();
+		finishBulk(job);
+		bulkJob = null;
+		logger.info("Finished. " + job.describe());
+		src.sendMessage(Text.builder("Finished. " + job.describe()).color(TextColors.BLUE).build());
+	    } else if (System.currentTimeMillis() - lastReport[0] >= 5000) {
+		lastReport[0] = System.currentTimeMillis();
+		src.sendMessage(Text.builder(job.describe()).color(TextColors.BLUE).build());
+	    }
+	}).submit(this);
+	return CommandResult.success();
+    }
+
+    private void finishBulk(BulkJob job) {
+	try {
+	    job.finish();
+	} catch (IOException e) {
+	    logger.error("Could not finish " + job.getName() + ".", e);
+	}
+    }
+
+    CommandSpec bountyHeldRelease = CommandSpec.builder().description(Text.of("Pays out a player's held claims now"))
+	    .permission("rbounty.command.admin").arguments(GenericArguments.onlyOne(userArgument()))
+	    .executor(new ReleaseHeldBounty()).build();
+
+    public class ReleaseHeldBounty implements CommandExecutor {
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    User user = args.<User>getOne("user").get();
+	    List<Held> claims = claimGuard.take(user.getUniqueId());
+	    claims.forEach(RBountyPlugin.this::payHeld);
+	    src.sendMessage(Text.builder("Paying out " + claims.size() + " held claims of " + user.getName() + ".")
+		    .color(TextColors.BLUE).build());
+	    return CommandResult.success();
+	}
+    }
+
+    CommandSpec bountyHeldDeny = CommandSpec.builder()
+	    .description(Text.of("Puts a player's held claims back on the bounties they claimed"))
+	    .permission("rbounty.command.admin").arguments(GenericArguments.onlyOne(userArgument()))
+	    .executor(new DenyHeldBounty()).build();
+
+    public class DenyHeldBounty implements CommandExecutor {
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    User user = args.<User>getOne("user").get();
+	    List<Held> claims = claimGuard.take(user.getUniqueId());
+	    for (Held claim : claims) {
+		restoreHeld(claim);
+	    }
+	    src.sendMessage(Text.builder("Put " + claims.size() + " held claims of " + user.getName()
+		    + " back on their bounties.").color(TextColors.BLUE).build());
+	    return CommandResult.success();
+	}
+    }
+
+    CommandSpec bountyHeld = CommandSpec.builder().description(Text.of("Lists claims held as possibly farmed"))
+	    .permission("rbounty.command.admin").child(bountyHeldRelease, "release").child(bountyHeldDeny, "deny")
+	    .executor(new HeldBounty()).build();
+
+    public class HeldBounty implements CommandExecutor {
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext args) throws CommandException {
+	    List<Held> claims = claimGuard.getHeld();
+	    if (claims.isEmpty()) {
+		src.sendMessage(Text.builder("No claims are held.").color(TextColors.BLUE).build());
+		return CommandResult.success();
+	    }
+	    long now = System.currentTimeMillis();
+	    Text.Builder builder = Text.builder();
+	    builder.append(Text.of("---------------------HELD CLAIMS---------------------"));
+	    for (Held claim : claims) {
+		long minutes = Math.max(0, TimeUnit.MILLISECONDS.toMinutes(claim.getReleaseAt() - now));
+		builder.append(Text.of("\n" + nameCache.getName(claim.getClaimer()) + " claimed "
+			+ nameCache.getName(claim.getVictim()) + "'s bounty of " + format(claim.getAmount())
+			+ ", paid out in " + minutes + " minutes"));
+	    }
+	    src.sendMessage(builder.color(TextColors.BLUE).build());
+	    return CommandResult.success();
+	}
+    }
+
     CommandSpec bountyMain = CommandSpec.builder().description(Text.of("Master command for bounty"))
 	    .permission("rbounty.command.user").child(bountySet, "set").child(bountyView, "view")
 	    .child(bountyAdd, "add").child(bountyTop, "top", "leaderboard")
-	    .child(bountyTopOnline, "topOnline", "leaderboardOnline").build();
+	    .child(bountyTopOnline, "topOnline", "leaderboardOnline").child(bountyRank, "rank")
+	    .child(bountyCompact, "compact").child(bountyStats, "stats").child(bountyHistory, "history")
+	    .child(bountyBulk, "bulk").child(bountyHeld, "held").build();
 
     /**
      * Parses the bounty leaderboard and returns a chat friendly representation of
-     * it.
+     * it. Pages are cached until a bounty change moves the ranks they show, see
+     * {@link LeaderboardRenderer}.
      * 
      * @param start  the first position to show on the leaderboard.
      * @param end    the last position to show on the leaderboard
@@ -386,55 +1373,13 @@ public class RBountyPlugin {
      * @return a textual representation of the leaderboard
      */
     public Text parseLeaderboard(int start, int end, boolean online) {
-	Text fail = Text.builder("No bounties were found in that range!").color(TextColors.BLUE).build();
-	ArrayList<Entry<UUID, Integer>> lb = data.getLeaderboard();
-	if (lb.size() <= start || start < 0 || start >= end || lb.get(start).getValue() == 0) {
-	    return fail;
-	}
-	Text.Builder builder = Text.builder();
-	int val;
-	User user;
-	int skip = 0;
-
-	if (online) {
-	    int i = -1;
-	    while (start > -1) {
-		start -= 1;
-		i += 1;
-		user = userStorageService.get(lb.get(i).getKey()).get();
-		val = lb.get(i).getValue();
-		while (!user.isOnline()) {
-		    i += 1;
-		    user = userStorageService.get(lb.get(i).getKey()).get();
-		    val = lb.get(i).getValue();
-		    if (i >= lb.size() || val == 0) {
-			return fail;
-		    }
-		}
-	    }
-	    skip = i;
-	    start = i;
-	}
-
-	builder.append(Text.of("\n---------------------LEADERBOARD---------------------\n"));
-	for (int i = start; i < end && i < lb.size() && lb.get(i).getValue() > 0; i++) {
-	    val = lb.get(i).getValue();
-	    user = userStorageService.get(lb.get(i).getKey()).get();
-	    if (online && !user.isOnline()) {
-		skip += 1;
-		end += 1;
-		continue;
-	    }
-	    builder.append(Text.of((i + 1 - skip) + ". " + user.getName() + ", "
-		    + (economyService.getDefaultCurrency().format(BigDecimal.valueOf(val)).toPlain()) + "\n"));
-	}
-	builder.append(Text.of("-----------------------------------------------------"));
-	builder.color(TextColors.BLUE);
-	return builder.build();
+	return leaderboardRenderer.render(start, end, online);
     }
 
     @Listener
     public void onRespawn(RespawnPlayerEvent event) {
-        event.getTargetEntity().offer(RBountyPlugin.BOUNTY, event.getOriginalPlayer().get(RBountyPlugin.BOUNTY).get());
+	// Players without bounty data have nothing to carry over
+	event.getOriginalPlayer().get(RBountyPlugin.BOUNTY)
+		.ifPresent(bounty -> event.getTargetEntity().offer(RBountyPlugin.BOUNTY, bounty));
     }
 }
\ No newline at end of file
@@ -0,0 +1,118 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.UUID;
+
+/**
+ * A {@link UuidIntMap} split into stripes that are each guarded by their own
+ * monitor, so changes to different players rarely contend.
+ *
+ * Single player operations synchronize on {@link #stripe}. Operations over the
+ * whole map take every stripe lock in order through {@link #lockAll}.
+ */
+public class StripedUuidIntMap {
+    private final UuidIntMap[] stripes;
+    private final int mask;
+
+    /**
+     * @param stripes the number of stripes, rounded up to a power of two
+     */
+    public StripedUuidIntMap(int stripes) {
+	int count = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+	this.stripes = new UuidIntMap[count];
+	for (int i = 0; i < count; i++) {
+	    this.stripes[i] = new UuidIntMap();
+	}
+	mask = count - 1;
+    }
+
+    /**
+     * Gets the stripe holding a player. The caller must synchronize on the
+     * returned stripe while using it.
+     *
+     * @param uuid the player's UUID
+     * @return the stripe the player belongs to
+     */
+    public UuidIntMap stripe(UUID uuid) {
+	long h = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+	h ^= h >>> 32;
+	h ^= h >>> 16;
+	return stripes[(int) h & mask];
+    }
+
+    /**
+     * Runs an action while holding every stripe lock.
+     *
+     * @param action the action to run
+     */
+    public void lockAll(Runnable action) {
+	lockAll(0, action);
+    }
+
+    private void lockAll(int stripe, Runnable action) {
+	if (stripe == stripes.length) {
+	    action.run();
+	    return;
+	}
+	synchronized (stripes[stripe]) {
+	    lockAll(stripe + 1, action);
+	}
+    }
+
+    /**
+     * Passes every entry to the consumer. Must be called from inside
+     * {@link #lockAll}.
+     */
+    public void forEach(UuidIntMap.EntryConsumer consumer) {
+	for (UuidIntMap stripe : stripes) {
+	    stripe.forEach(consumer);
+	}
+    }
+
+    /**
+     * Removes every entry. Must be called from inside {@link #lockAll}.
+     */
+    public void clear() {
+	for (UuidIntMap stripe : stripes) {
+	    stripe.clear();
+	}
+    }
+
+    /**
+     * @return a consistent copy of every stripe merged into one map
+     */
+    public UuidIntMap copy() {
+	UuidIntMap copy = new UuidIntMap(size());
+	lockAll(() -> forEach(copy::put));
+	return copy;
+    }
+
+    /**
+     * @return the number of entries, counted while holding every stripe lock
+     */
+    public int size() {
+	int[] size = { 0 };
+	lockAll(() -> {
+	    for (UuidIntMap stripe : stripes) {
+		size[0] += stripe.size();
+	    }
+	});
+	return size[0];
+    }
+}
\ No newline at end of file
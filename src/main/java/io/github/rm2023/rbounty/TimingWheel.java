@@ -0,0 +1,151 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel. Each level is a ring of 64 slots, the first
+ * holding keys due in the next 64 ticks, the second keys due in the next 64^2
+ * ticks in slots of 64 ticks, and so on. When the first level comes round, the
+ * next slot of the level above is spread over the levels below it. Advancing
+ * the wheel only touches the keys that are due and the slots that cascade,
+ * never every scheduled key.
+ *
+ * Keys can't be cancelled. Callers that reschedule a key should check that the
+ * deadline it fires with is still its current one.
+ *
+ * Not thread safe.
+ *
+ * @param <T> the type of key scheduled
+ */
+public class TimingWheel<T> {
+    /**
+     * Receives the keys that are due, see {@link TimingWheel#advance}.
+     */
+    public interface Expired<T> {
+	void expired(T key, long deadline);
+    }
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private static class Timer<T> {
+	final T key;
+	final long deadline;
+
+	Timer(T key, long deadline) {
+	    this.key = key;
+	    this.deadline = deadline;
+	}
+    }
+
+    private final List<List<Timer<T>>> slots = new ArrayList<List<Timer<T>>>();
+    private long now;
+    private int size;
+
+    /**
+     * @param now the current tick, every key due at or before it is already
+     *            expired
+     */
+    public TimingWheel(long now) {
+	this.now = now;
+	for (int i = 0; i < LEVELS * SLOTS; i++) {
+	    slots.add(new ArrayList<Timer<T>>());
+	}
+    }
+
+    /**
+     * Schedules a key. Keys due at or before the current tick expire on the next
+     * one.
+     *
+     * @param key      the key
+     * @param deadline the tick the key is due at
+     */
+    public void schedule(T key, long deadline) {
+	insert(new Timer<T>(key, Math.max(deadline, now + 1)));
+	size++;
+    }
+
+    /**
+     * Places a timer in the lowest level whose range covers it. Timers past the
+     * range of the top level wait there and are placed again when it comes round.
+     */
+    private void insert(Timer<T> timer) {
+	long delta = timer.deadline - now;
+	int level = 0;
+	while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+	    level++;
+	}
+	int slot = (int) (timer.deadline >>> (BITS * level)) & MASK;
+	slots.get(level * SLOTS + slot).add(timer);
+    }
+
+    /**
+     * Moves the wheel forward, passing every key due by then to the consumer in
+     * order of their ticks.
+     *
+     * @param to      the tick to advance to
+     * @param expired receives each key that is due
+     */
+    public void advance(long to, Expired<T> expired) {
+	while (now < to) {
+	    now++;
+	    // Spread out the higher slots that start now, from the top down
+	    for (int level = LEVELS - 1; level > 0; level--) {
+		if ((now & ((1L << (BITS * level)) - 1)) == 0) {
+		    List<Timer<T>> slot = take(level, (int) (now >>> (BITS * level)) & MASK);
+		    for (Timer<T> timer : slot) {
+			insert(timer);
+		    }
+		}
+	    }
+	    List<Timer<T>> due = take(0, (int) now & MASK);
+	    size -= due.size();
+	    for (Timer<T> timer : due) {
+		expired.expired(timer.key, timer.deadline);
+	    }
+	}
+    }
+
+    private List<Timer<T>> take(int level, int slot) {
+	List<Timer<T>> timers = slots.get(level * SLOTS + slot);
+	if (timers.isEmpty()) {
+	    return timers;
+	}
+	slots.set(level * SLOTS + slot, new ArrayList<Timer<T>>());
+	return timers;
+    }
+
+    /**
+     * @return the current tick
+     */
+    public long getNow() {
+	return now;
+    }
+
+    /**
+     * @return the number of keys scheduled, including ones since rescheduled
+     */
+    public int size() {
+	return size;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,250 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * An open addressing hash map from UUIDs to ints, stored as the two UUID longs
+ * and the value in parallel primitive arrays. Lookups, puts and removals don't
+ * allocate, and every entry costs 20 bytes per slot instead of a map node, a
+ * UUID and a boxed Integer.
+ *
+ * With a load factor of 0.75 that is about 5MB for 100k entries and 40MB for 1M
+ * entries, against roughly 7MB and 70MB for a HashMap of UUID to Integer.
+ *
+ * Not thread safe. The nil UUID (all zero bits) marks empty slots, so it is
+ * stored outside the arrays.
+ */
+public class UuidIntMap {
+    /**
+     * Receives the entries of the map, see {@link UuidIntMap#forEach}.
+     */
+    public interface EntryConsumer {
+	void accept(long mostSigBits, long leastSigBits, int value);
+    }
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private long[] mostSigBits;
+    private long[] leastSigBits;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    private boolean hasNil;
+    private int nilValue;
+
+    public UuidIntMap() {
+	this(16);
+    }
+
+    public UuidIntMap(int expectedSize) {
+	allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+	int capacity = 16;
+	while (capacity * LOAD_FACTOR < expectedSize) {
+	    capacity <<= 1;
+	}
+	return capacity;
+    }
+
+    private void allocate(int capacity) {
+	mostSigBits = new long[capacity];
+	leastSigBits = new long[capacity];
+	values = new int[capacity];
+	mask = capacity - 1;
+	resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(long mostSigBits, long leastSigBits) {
+	long h = mostSigBits * 0x9E3779B97F4A7C15L ^ leastSigBits;
+	h ^= h >>> 33;
+	h *= 0xFF51AFD7ED558CCDL;
+	h ^= h >>> 33;
+	return (int) h;
+    }
+
+    private static boolean isNil(long mostSigBits, long leastSigBits) {
+	return mostSigBits == 0 && leastSigBits == 0;
+    }
+
+    /**
+     * @return the slot holding the key, or the empty slot it would go in
+     */
+    private int slot(long msb, long lsb) {
+	int slot = hash(msb, lsb) & mask;
+	while (!isNil(mostSigBits[slot], leastSigBits[slot])
+		&& (mostSigBits[slot] != msb || leastSigBits[slot] != lsb)) {
+	    slot = (slot + 1) & mask;
+	}
+	return slot;
+    }
+
+    public int size() {
+	return size + (hasNil ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+	return size() == 0;
+    }
+
+    public boolean containsKey(long msb, long lsb) {
+	if (isNil(msb, lsb)) {
+	    return hasNil;
+	}
+	int slot = slot(msb, lsb);
+	return !isNil(mostSigBits[slot], leastSigBits[slot]);
+    }
+
+    public boolean containsKey(UUID uuid) {
+	return containsKey(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    /**
+     * @return the value for the key, or defaultValue if there is none
+     */
+    public int get(long msb, long lsb, int defaultValue) {
+	if (isNil(msb, lsb)) {
+	    return hasNil ? nilValue : defaultValue;
+	}
+	int slot = slot(msb, lsb);
+	return isNil(mostSigBits[slot], leastSigBits[slot]) ? defaultValue : values[slot];
+    }
+
+    public int get(UUID uuid, int defaultValue) {
+	return get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), defaultValue);
+    }
+
+    public void put(long msb, long lsb, int value) {
+	if (isNil(msb, lsb)) {
+	    hasNil = true;
+	    nilValue = value;
+	    return;
+	}
+	int slot = slot(msb, lsb);
+	if (isNil(mostSigBits[slot], leastSigBits[slot])) {
+	    if (size >= resizeAt) {
+		resize(mostSigBits.length << 1);
+		slot = slot(msb, lsb);
+	    }
+	    mostSigBits[slot] = msb;
+	    leastSigBits[slot] = lsb;
+	    size++;
+	}
+	values[slot] = value;
+    }
+
+    public void put(UUID uuid, int value) {
+	put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), value);
+    }
+
+    /**
+     * @return whether the key was in the map
+     */
+    public boolean remove(long msb, long lsb) {
+	if (isNil(msb, lsb)) {
+	    boolean had = hasNil;
+	    hasNil = false;
+	    return had;
+	}
+	int slot = slot(msb, lsb);
+	if (isNil(mostSigBits[slot], leastSigBits[slot])) {
+	    return false;
+	}
+	// Shift later entries of the probe run back so no tombstones are needed
+	int gap = slot;
+	int next = (gap + 1) & mask;
+	while (!isNil(mostSigBits[next], leastSigBits[next])) {
+	    int home = hash(mostSigBits[next], leastSigBits[next]) & mask;
+	    if (((next - home) & mask) >= ((next - gap) & mask)) {
+		mostSigBits[gap] = mostSigBits[next];
+		leastSigBits[gap] = leastSigBits[next];
+		values[gap] = values[next];
+		gap = next;
+	    }
+	    next = (next + 1) & mask;
+	}
+	mostSigBits[gap] = 0;
+	leastSigBits[gap] = 0;
+	values[gap] = 0;
+	size--;
+	return true;
+    }
+
+    public boolean remove(UUID uuid) {
+	return remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public void clear() {
+	Arrays.fill(mostSigBits, 0);
+	Arrays.fill(leastSigBits, 0);
+	Arrays.fill(values, 0);
+	size = 0;
+	hasNil = false;
+    }
+
+    /**
+     * Passes every entry to the consumer without allocating.
+     */
+    public void forEach(EntryConsumer consumer) {
+	if (hasNil) {
+	    consumer.accept(0, 0, nilValue);
+	}
+	for (int slot = 0; slot < values.length; slot++) {
+	    if (!isNil(mostSigBits[slot], leastSigBits[slot])) {
+		consumer.accept(mostSigBits[slot], leastSigBits[slot], values[slot]);
+	    }
+	}
+    }
+
+    /**
+     * @return a copy of this map that can be read while this one changes
+     */
+    public UuidIntMap copy() {
+	UuidIntMap copy = new UuidIntMap();
+	copy.mostSigBits = mostSigBits.clone();
+	copy.leastSigBits = leastSigBits.clone();
+	copy.values = values.clone();
+	copy.mask = mask;
+	copy.size = size;
+	copy.resizeAt = resizeAt;
+	copy.hasNil = hasNil;
+	copy.nilValue = nilValue;
+	return copy;
+    }
+
+    private void resize(int capacity) {
+	long[] oldMostSigBits = mostSigBits;
+	long[] oldLeastSigBits = leastSigBits;
+	int[] oldValues = values;
+	allocate(capacity);
+	for (int slot = 0; slot < oldValues.length; slot++) {
+	    if (!isNil(oldMostSigBits[slot], oldLeastSigBits[slot])) {
+		int newSlot = slot(oldMostSigBits[slot], oldLeastSigBits[slot]);
+		mostSigBits[newSlot] = oldMostSigBits[slot];
+		leastSigBits[newSlot] = oldLeastSigBits[slot];
+		values[newSlot] = oldValues[slot];
+	    }
+	}
+    }
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.bulk;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.IntUnaryOperator;
+
+import io.github.rm2023.rbounty.RBountyData;
+import io.github.rm2023.rbounty.UuidIntMap;
+
+/**
+ * Changes every non-zero bounty with the same function, a chunk of players per
+ * step, such as to reset or scale every bounty. The players are those with a
+ * bounty when the job starts. Each bounty is changed from its value at the time
+ * its chunk runs, so changes made in between are not lost.
+ */
+public class AdjustAllJob extends BulkJob {
+    private final String name;
+    private final IntUnaryOperator change;
+
+    private List<UUID> players;
+    private int position;
+
+    /**
+     * @param data      the bounty data
+     * @param name      what the job does, such as "Reset"
+     * @param change    computes each new bounty from the current one
+     * @param chunkSize the most players changed per step
+     * @param listener  told about every changed bounty
+     */
+    public AdjustAllJob(RBountyData data, String name, IntUnaryOperator change, int chunkSize, Listener listener) {
+	super(data, chunkSize, listener);
+	this.name = name;
+	this.change = change;
+    }
+
+    /**
+     * @return a job setting every bounty to 0
+     */
+    public static AdjustAllJob reset(RBountyData data, int chunkSize, Listener listener) {
+	return new AdjustAllJob(data, "Reset", bounty -> 0, chunkSize, listener);
+    }
+
+    /**
+     * @param percent the percentage of each bounty to keep, such as 50 to halve
+     *                every bounty
+     * @return a job scaling every bounty, rounding down
+     */
+    public static AdjustAllJob scale(RBountyData data, int percent, int chunkSize, Listener listener) {
+	return new AdjustAllJob(data, "Scale to " + percent + "%",
+		bounty -> (int) Math.min(Integer.MAX_VALUE, (long) bounty * percent / 100), chunkSize, listener);
+    }
+
+    @Override
+    public String getName() {
+	return name;
+    }
+
+    @Override
+    public void start() throws IOException {
+	UuidIntMap copy = data.copyBounties();
+	players = new ArrayList<UUID>(copy.size());
+	copy.forEach((mostSigBits, leastSigBits, bounty) -> {
+	    if (bounty != 0) {
+		players.add(new UUID(mostSigBits, leastSigBits));
+	    }
+	});
+	super.start();
+    }
+
+    @Override
+    public boolean step() {
+	int to = Math.min(players.size(), position + chunkSize);
+	notify(data.changeBounties(players.subList(position, to), change));
+	processed += to - position;
+	position = to;
+	return position < players.size();
+    }
+
+    @Override
+    public double getProgress() {
+	return players == null || players.isEmpty() ? 1 : (double) position / players.size();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,140 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.bulk;
+
+import java.nio.file.Path;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The file formats bounties are imported from and exported to, one bounty per
+ * line so files of any size can be streamed.
+ */
+public enum BountyFormat {
+    /**
+     * A header line of {@code uuid,bounty} followed by lines like
+     * {@code 069a79f4-44e9-4726-a5be-fca90e38aaf5,500}. Columns after the
+     * bounty are ignored.
+     */
+    CSV {
+	@Override
+	public String header() {
+	    return "uuid,bounty";
+	}
+
+	@Override
+	public String format(UUID uuid, int bounty) {
+	    return uuid + "," + bounty;
+	}
+
+	@Override
+	public Entry<UUID, Integer> parse(String line) {
+	    String[] columns = line.split(",", 3);
+	    if (columns.length < 2) {
+		throw new IllegalArgumentException("expected a UUID and a bounty");
+	    }
+	    if (columns[0].trim().equalsIgnoreCase("uuid")) {
+		return null;
+	    }
+	    return entry(columns[0], columns[1]);
+	}
+    },
+    /**
+     * One JSON object per line, like
+     * {@code {"uuid":"069a79f4-44e9-4726-a5be-fca90e38aaf5","bounty":500}}.
+     * Other fields are ignored.
+     */
+    NDJSON {
+	private final Pattern uuidField = Pattern.compile("\"uuid\"\\s*:\\s*\"([^\"]*)\"");
+	private final Pattern bountyField = Pattern.compile("\"bounty\"\\s*:\\s*(-?\\d+)");
+
+	@Override
+	public String header() {
+	    return null;
+	}
+
+	@Override
+	public String format(UUID uuid, int bounty) {
+	    return "{\"uuid\":\"" + uuid + "\",\"bounty\":" + bounty + "}";
+	}
+
+	@Override
+	public Entry<UUID, Integer> parse(String line) {
+	    Matcher uuid = uuidField.matcher(line);
+	    Matcher bounty = bountyField.matcher(line);
+	    if (!uuid.find() || !bounty.find()) {
+		throw new IllegalArgumentException("expected \"uuid\" and \"bounty\" fields");
+	    }
+	    return entry(uuid.group(1), bounty.group(1));
+	}
+    };
+
+    /**
+     * @return the line written before the bounties, or null for none
+     */
+    public abstract String header();
+
+    /**
+     * @return a line holding the bounty
+     */
+    public abstract String format(UUID uuid, int bounty);
+
+    /**
+     * Reads the bounty on a line, which is not blank.
+     *
+     * @param line the line
+     * @return the player and their bounty, or null if the line is a header
+     * @throws IllegalArgumentException if the line doesn't hold a valid bounty
+     */
+    public abstract Entry<UUID, Integer> parse(String line);
+
+    private static Entry<UUID, Integer> entry(String uuid, String bounty) {
+	int amount;
+	try {
+	    amount = Integer.parseInt(bounty.trim());
+	} catch (NumberFormatException e) {
+	    throw new IllegalArgumentException("the bounty is not a whole number");
+	}
+	if (amount < 0) {
+	    throw new IllegalArgumentException("the bounty is negative");
+	}
+	// Throws IllegalArgumentException itself
+	return new SimpleImmutableEntry<UUID, Integer>(UUID.fromString(uuid.trim()), amount);
+    }
+
+    /**
+     * Picks the format from a file's extension.
+     *
+     * @param file the file
+     * @return the format, or null if the extension is not .csv, .ndjson or .jsonl
+     */
+    public static BountyFormat forFile(Path file) {
+	String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+	if (name.endsWith(".csv")) {
+	    return CSV;
+	}
+	if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+	    return NDJSON;
+	}
+	return null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,158 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.bulk;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import io.github.rm2023.rbounty.RBountyData;
+import io.github.rm2023.rbounty.UuidIntMap;
+
+/**
+ * An operation on many bounties that is run a chunk at a time, so it can be
+ * spread over ticks. Jobs that change bounties hold the data layer in a bulk
+ * operation from {@link #start} to {@link #finish}, so the leaderboards are
+ * rebuilt once at the end, and each chunk is written to storage in one batch.
+ *
+ * Not thread safe, every call must be made from the same thread.
+ */
+public abstract class BulkJob {
+    /**
+     * Told about every bounty a job changes.
+     */
+    public interface Listener {
+	void changed(UUID uuid, int previous, int bounty);
+    }
+
+    protected final RBountyData data;
+    protected final int chunkSize;
+    private final Listener listener;
+
+    protected long processed;
+    protected long changed;
+    protected long skipped;
+    private boolean running;
+
+    /**
+     * @param data      the bounty data
+     * @param chunkSize the most bounties handled per {@link #step}
+     * @param listener  told about every changed bounty, or null if the job
+     *                  doesn't change bounties
+     */
+    protected BulkJob(RBountyData data, int chunkSize, Listener listener) {
+	this.data = data;
+	this.chunkSize = Math.max(1, chunkSize);
+	this.listener = listener;
+    }
+
+    /**
+     * @return what the job does, such as "Import"
+     */
+    public abstract String getName();
+
+    /**
+     * Prepares the job to run.
+     *
+     * @throws IOException if its file could not be opened
+     */
+    public void start() throws IOException {
+	if (listener != null) {
+	    data.beginBulk();
+	}
+	running = true;
+    }
+
+    /**
+     * Runs the next chunk.
+     *
+     * @return whether there is more to do
+     * @throws IOException if its file could not be read or written
+     */
+    public abstract boolean step() throws IOException;
+
+    /**
+     * Ends the job, whether it ran to the end or failed. The leaderboards are
+     * rebuilt if it changed bounties.
+     *
+     * @throws IOException if its file could not be closed
+     */
+    public void finish() throws IOException {
+	if (!running) {
+	    return;
+	}
+	running = false;
+	if (listener != null) {
+	    data.endBulk();
+	}
+    }
+
+    /**
+     * Sets a chunk of bounties and tells the listener about the ones that
+     * changed.
+     */
+    protected void apply(UuidIntMap bounties) {
+	notify(data.setBounties(bounties));
+    }
+
+    /**
+     * Tells the listener about the bounties changed by a chunk.
+     *
+     * @param previous the previous bounties of the users whose bounty changed
+     */
+    protected void notify(UuidIntMap previous) {
+	changed += previous.size();
+	previous.forEach((mostSigBits, leastSigBits, bounty) -> {
+	    UUID uuid = new UUID(mostSigBits, leastSigBits);
+	    listener.changed(uuid, bounty, data.getCachedBounty(uuid));
+	});
+    }
+
+    /**
+     * @return how far along the job is, from 0 to 1
+     */
+    public abstract double getProgress();
+
+    /**
+     * @return the number of bounties read so far
+     */
+    public long getProcessed() {
+	return processed;
+    }
+
+    /**
+     * @return the number of bounties changed or written so far
+     */
+    public long getChanged() {
+	return changed;
+    }
+
+    /**
+     * @return the number of lines or players skipped so far
+     */
+    public long getSkipped() {
+	return skipped;
+    }
+
+    /**
+     * @return a one line summary of the job so far
+     */
+    public String describe() {
+	return getName() + ": " + processed + " processed, " + changed + " changed, " + skipped + " skipped ("
+		+ (int) (getProgress() * 100) + "%)";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,125 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.bulk;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.UUID;
+
+import io.github.rm2023.rbounty.RBountyData;
+import io.github.rm2023.rbounty.UuidIntMap;
+
+/**
+ * Writes every non-zero bounty to a file, a chunk of lines per step. The
+ * bounties are copied when the job starts, so the file holds them as they were
+ * then. The file is written to a temporary file first and moved into place
+ * once complete, so a failed export never leaves a partial file behind.
+ */
+public class ExportJob extends BulkJob {
+    private final Path file;
+    private final Path temp;
+    private final BountyFormat format;
+
+    private long[] mostSigBits;
+    private long[] leastSigBits;
+    private int[] bounties;
+    private int position;
+    private BufferedWriter writer;
+    private boolean complete;
+
+    /**
+     * @param data      the bounty data
+     * @param file      the file to export to
+     * @param format    the format to write
+     * @param chunkSize the most lines written per step
+     */
+    public ExportJob(RBountyData data, Path file, BountyFormat format, int chunkSize) {
+	super(data, chunkSize, null);
+	this.file = file;
+	this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+	this.format = format;
+    }
+
+    @Override
+    public String getName() {
+	return "Export to " + file.getFileName();
+    }
+
+    @Override
+    public void start() throws IOException {
+	UuidIntMap copy = data.copyBounties();
+	mostSigBits = new long[copy.size()];
+	leastSigBits = new long[copy.size()];
+	bounties = new int[copy.size()];
+	int[] next = { 0 };
+	copy.forEach((msb, lsb, bounty) -> {
+	    if (bounty != 0) {
+		mostSigBits[next[0]] = msb;
+		leastSigBits[next[0]] = lsb;
+		bounties[next[0]++] = bounty;
+	    }
+	});
+	bounties = Arrays.copyOf(bounties, next[0]);
+	writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8);
+	if (format.header() != null) {
+	    writer.write(format.header());
+	    writer.newLine();
+	}
+	super.start();
+    }
+
+    @Override
+    public boolean step() throws IOException {
+	int to = Math.min(bounties.length, position + chunkSize);
+	for (; position < to; position++) {
+	    writer.write(format.format(new UUID(mostSigBits[position], leastSigBits[position]), bounties[position]));
+	    writer.newLine();
+	    processed++;
+	    changed++;
+	}
+	if (position < bounties.length) {
+	    return true;
+	}
+	writer.close();
+	Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	complete = true;
+	return false;
+    }
+
+    @Override
+    public void finish() throws IOException {
+	try {
+	    if (!complete && writer != null) {
+		writer.close();
+		Files.deleteIfExists(temp);
+	    }
+	} finally {
+	    super.finish();
+	}
+    }
+
+    @Override
+    public double getProgress() {
+	return bounties == null || bounties.length == 0 ? 1 : (double) position / bounties.length;
+    }
+}
\ No newline at end of file
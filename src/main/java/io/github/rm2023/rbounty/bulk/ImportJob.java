@@ -0,0 +1,134 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.bulk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+
+import io.github.rm2023.rbounty.RBountyData;
+import io.github.rm2023.rbounty.UuidIntMap;
+
+/**
+ * Sets the bounties listed in a file, reading a chunk of lines per step. Lines
+ * that can't be read and players the server doesn't know are skipped. The file
+ * is only read as far as the current chunk, so it can be of any size.
+ */
+public class ImportJob extends BulkJob {
+    // Only this many bad lines are logged, the rest are only counted
+    private static final int LOGGED_ERRORS = 20;
+
+    private final Path file;
+    private final BountyFormat format;
+    private final Predicate<UUID> known;
+    private final Logger logger;
+
+    private BufferedReader reader;
+    private long size;
+    private long read;
+    private long line;
+
+    /**
+     * @param data      the bounty data
+     * @param file      the file to import
+     * @param format    the format of the file
+     * @param chunkSize the most lines read per step
+     * @param known     whether a player is known to the server
+     * @param listener  told about every changed bounty
+     * @param logger    the plugin logger, told about bad lines
+     */
+    public ImportJob(RBountyData data, Path file, BountyFormat format, int chunkSize, Predicate<UUID> known,
+	    Listener listener, Logger logger) {
+	super(data, chunkSize, listener);
+	this.file = file;
+	this.format = format;
+	this.known = known;
+	this.logger = logger;
+    }
+
+    @Override
+    public String getName() {
+	return "Import of " + file.getFileName();
+    }
+
+    @Override
+    public void start() throws IOException {
+	size = Files.size(file);
+	reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+	super.start();
+    }
+
+    @Override
+    public boolean step() throws IOException {
+	UuidIntMap chunk = new UuidIntMap(chunkSize);
+	String text = null;
+	for (int i = 0; i < chunkSize && (text = reader.readLine()) != null; i++) {
+	    line++;
+	    // Close enough for progress, since the files are almost all ASCII
+	    read += text.length() + 1;
+	    if (text.trim().isEmpty()) {
+		continue;
+	    }
+	    Entry<UUID, Integer> bounty;
+	    try {
+		bounty = format.parse(text);
+	    } catch (IllegalArgumentException e) {
+		if (++skipped <= LOGGED_ERRORS) {
+		    logger.warn("Skipped line " + line + " of " + file.getFileName() + ": " + e.getMessage());
+		}
+		continue;
+	    }
+	    if (bounty == null) {
+		continue;
+	    }
+	    processed++;
+	    if (!known.test(bounty.getKey())) {
+		skipped++;
+		continue;
+	    }
+	    chunk.put(bounty.getKey(), bounty.getValue());
+	}
+	if (!chunk.isEmpty()) {
+	    apply(chunk);
+	}
+	return text != null;
+    }
+
+    @Override
+    public void finish() throws IOException {
+	try {
+	    if (reader != null) {
+		reader.close();
+	    }
+	} finally {
+	    super.finish();
+	}
+    }
+
+    @Override
+    public double getProgress() {
+	return size == 0 ? 1 : Math.min(1, (double) read / size);
+    }
+}
\ No newline at end of file
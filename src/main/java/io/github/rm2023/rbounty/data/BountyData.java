@@ -71,11 +71,12 @@ public class BountyData extends AbstractSingleData<Integer, BountyData, ImmBount
 
     @Override
     protected Value<Integer> getValueGetter() {
+	// A new value every time, since whoever it is handed to may change it
 	return Sponge.getRegistry().getValueFactory().createValue(RBountyPlugin.BOUNTY, getValue());
     }
 
     @Override
     public ImmBountyData asImmutable() {
-	return new ImmBountyData(getValue());
+	return ImmBountyData.of(getValue());
     }
 }
@@ -17,6 +17,8 @@
 
 package io.github.rm2023.rbounty.data;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.data.key.Key;
 import org.spongepowered.api.data.manipulator.immutable.common.AbstractImmutableSingleData;
@@ -26,25 +28,60 @@ import org.spongepowered.api.data.value.immutable.ImmutableValue;
 import io.github.rm2023.rbounty.RBountyPlugin;
 
 public class ImmBountyData extends AbstractImmutableSingleData<Integer, ImmBountyData, BountyData> {
+    // Every amount up to this is pooled, as are round amounts up to ROUND_LIMIT
+    private static final int SMALL_LIMIT = 1024;
+    private static final int ROUND_STEP = 100;
+    private static final int ROUND_LIMIT = 1000000;
+    private static final AtomicReferenceArray<ImmBountyData> SMALL = new AtomicReferenceArray<ImmBountyData>(
+	    SMALL_LIMIT + 1);
+    private static final AtomicReferenceArray<ImmBountyData> ROUND = new AtomicReferenceArray<ImmBountyData>(
+	    ROUND_LIMIT / ROUND_STEP + 1);
 
+    // Created on first use, since most instances are never asked for their value
     private ImmutableValue<Integer> immutableValue;
+    private final boolean valueIsDefault;
 
     public ImmBountyData(Integer value, Key<? extends BaseValue<Integer>> usedKey) {
 	super(value, usedKey);
-	immutableValue = Sponge.getRegistry().getValueFactory().createValue(RBountyPlugin.BOUNTY, getValue())
-		.asImmutable();
+	valueIsDefault = false;
     }
 
     public ImmBountyData(Integer value) {
 	super(value, RBountyPlugin.BOUNTY);
-	immutableValue = Sponge.getRegistry().getValueFactory().createValue(RBountyPlugin.BOUNTY, value, value)
-		.asImmutable();
+	valueIsDefault = true;
     }
 
     public ImmBountyData() {
-	super(0, RBountyPlugin.BOUNTY);
-	immutableValue = Sponge.getRegistry().getValueFactory().createValue(RBountyPlugin.BOUNTY, value, value)
-		.asImmutable();
+	this(0);
+    }
+
+    /**
+     * Gets immutable bounty data for an amount, sharing one instance for every
+     * small or round amount instead of creating a new one each time.
+     *
+     * @param value the bounty
+     * @return the bounty data
+     */
+    public static ImmBountyData of(int value) {
+	AtomicReferenceArray<ImmBountyData> pool;
+	int slot;
+	if (value >= 0 && value <= SMALL_LIMIT) {
+	    pool = SMALL;
+	    slot = value;
+	} else if (value > 0 && value <= ROUND_LIMIT && value % ROUND_STEP == 0) {
+	    pool = ROUND;
+	    slot = value / ROUND_STEP;
+	} else {
+	    return new ImmBountyData(value);
+	}
+	ImmBountyData data = pool.get(slot);
+	// The bounty key is replaced when it is registered, so instances made
+	// with an old key are not handed out again
+	if (data == null || data.usedKey != RBountyPlugin.BOUNTY) {
+	    data = new ImmBountyData(value);
+	    pool.set(slot, data);
+	}
+	return data;
     }
 
     @Override
@@ -54,7 +91,17 @@ public class ImmBountyData extends AbstractImmutableSingleData<Integer, ImmBount
 
     @Override
     public ImmutableValue<Integer> getValueGetter() {
-	return immutableValue;
+	ImmutableValue<Integer> value = immutableValue;
+	if (value == null) {
+	    // Racing threads may each create one, but the values are equal
+	    value = valueIsDefault
+		    ? Sponge.getRegistry().getValueFactory().createValue(RBountyPlugin.BOUNTY, getValue(), getValue())
+			    .asImmutable()
+		    : Sponge.getRegistry().getValueFactory().createValue(RBountyPlugin.BOUNTY, getValue())
+			    .asImmutable();
+	    immutableValue = value;
+	}
+	return value;
     }
 
     @Override
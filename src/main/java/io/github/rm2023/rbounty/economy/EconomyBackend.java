@@ -0,0 +1,60 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.economy;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import io.github.rm2023.rbounty.economy.EconomyPipeline.Status;
+
+/**
+ * The economy calls RBounty makes. Calls may block, so the plugin only makes
+ * them through {@link EconomyPipeline}, off the server thread.
+ */
+public interface EconomyBackend {
+    /**
+     * Takes money out of a player's account.
+     *
+     * @param player the player paying
+     * @param amount the amount to take
+     * @param cause  what the withdrawal is for
+     * @return {@link Status#SUCCESS} if the money was taken,
+     *         {@link Status#NOT_ENOUGH_MONEY} if the player can't pay,
+     *         {@link Status#NO_ACCOUNT} if the player has no account and
+     *         {@link Status#FAILED} if the economy refused for another reason
+     */
+    Status withdraw(UUID player, BigDecimal amount, Object... cause);
+
+    /**
+     * Puts money into a player's account.
+     *
+     * @param player the player being paid
+     * @param amount the amount to pay
+     * @param cause  what the deposit is for
+     * @return whether the money was paid
+     */
+    boolean deposit(UUID player, BigDecimal amount, Object... cause);
+
+    /**
+     * Formats an amount of the default currency for chat.
+     *
+     * @param amount the amount
+     * @return the formatted amount
+     */
+    String format(BigDecimal amount);
+}
\ No newline at end of file
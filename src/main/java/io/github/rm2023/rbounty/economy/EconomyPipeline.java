@@ -0,0 +1,259 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.economy;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.spongepowered.api.entity.living.player.User;
+
+import io.github.rm2023.rbounty.LatencyRecorder;
+import io.github.rm2023.rbounty.RBountyData;
+
+/**
+ * Runs the economy side of adding to and claiming bounties off the server
+ * thread. An addition is paid for on the async executor first and the bounty is
+ * only raised once the money is taken, refunding it if that fails. A claim
+ * resets the bounty first, so it can't be claimed twice, and puts it back if
+ * the payout fails. The returned futures complete on the server thread.
+ *
+ * When the bounty data is shared between servers every bounty change is a
+ * database transaction, so the changes are made on the async executor as well
+ * and only the results are handed back to the server thread.
+ */
+public class EconomyPipeline {
+    public enum Status {
+	SUCCESS, NOT_ENOUGH_MONEY, NO_ACCOUNT, NO_BOUNTY, FAILED
+    }
+
+    public static class Result {
+	private final Status status;
+	private final int amount;
+	private final int bounty;
+
+	public Result(Status status, int amount, int bounty) {
+	    this.status = status;
+	    this.amount = amount;
+	    this.bounty = bounty;
+	}
+
+	public Status getStatus() {
+	    return status;
+	}
+
+	/**
+	 * @return the amount that was added or claimed
+	 */
+	public int getAmount() {
+	    return amount;
+	}
+
+	/**
+	 * @return the target's bounty after the transaction
+	 */
+	public int getBounty() {
+	    return bounty;
+	}
+    }
+
+    private final RBountyData data;
+    private final EconomyBackend backend;
+    private final Executor asyncExecutor;
+    private final Executor syncExecutor;
+    private final Executor dataExecutor;
+    private final Logger logger;
+
+    private final LatencyRecorder withdrawLatency = new LatencyRecorder("withdraw");
+    private final LatencyRecorder depositLatency = new LatencyRecorder("deposit");
+
+    /**
+     * @param data          the bounty data
+     * @param backend       the economy to make calls on
+     * @param asyncExecutor the executor economy calls are made on
+     * @param syncExecutor  the executor for the server thread, where bounty
+     *                      changes are committed and results are reported
+     * @param logger        the plugin logger
+     */
+    public EconomyPipeline(RBountyData data, EconomyBackend backend, Executor asyncExecutor, Executor syncExecutor,
+	    Logger logger) {
+	this.data = data;
+	this.backend = backend;
+	this.asyncExecutor = asyncExecutor;
+	this.syncExecutor = syncExecutor;
+	this.dataExecutor = data.isShared() ? asyncExecutor : syncExecutor;
+	this.logger = logger;
+    }
+
+    /**
+     * Adds to a user's bounty with a contributor's money. The contributor pays
+     * off the server thread first, then the bounty is raised on the server thread,
+     * or off it when the data is shared. If the bounty can't be raised, the
+     * contributor is refunded.
+     *
+     * @param target      the user whose bounty is increased
+     * @param contributor the player paying for it
+     * @param amount      the amount to add
+     * @param cause       what the payment is for
+     * @return a future completed on the server thread with the new bounty
+     */
+    public CompletableFuture<Result> contribute(User target, UUID contributor, int amount, Object... cause) {
+	BigDecimal money = BigDecimal.valueOf(amount);
+	return complete(CompletableFuture.supplyAsync(() -> withdraw(contributor, money, cause), asyncExecutor)
+		.thenApplyAsync(status -> {
+		    if (status != Status.SUCCESS) {
+			return new Result(status, amount, data.getBounty(target));
+		    }
+		    int bounty = data.addBounty(target, amount);
+		    if (bounty < 0) {
+			refund(contributor, money, cause);
+			return new Result(Status.FAILED, amount, data.getBounty(target));
+		    }
+		    return new Result(Status.SUCCESS, amount, bounty);
+		}, dataExecutor));
+    }
+
+    /**
+     * Claims a user's bounty for a claimer. The bounty is reset right away so it
+     * can't be claimed twice, then paid out off the server thread. If the payout
+     * fails the bounty is put back. When the data is shared the bounty is reset
+     * and put back off the server thread too, and the database makes sure only
+     * one server gets it.
+     *
+     * @param target  the user whose bounty is claimed
+     * @param claimer the player being paid
+     * @param cause   what the payment is for
+     * @return a future completed on the server thread with the claimed amount
+     */
+    public CompletableFuture<Result> claim(User target, UUID claimer, Object... cause) {
+	if (!data.isShared()) {
+	    return payOut(target, claimer, data.claimBounty(target), cause);
+	}
+	return complete(CompletableFuture.supplyAsync(() -> data.claimBounty(target), asyncExecutor)
+		.thenCompose(amount -> payOut(target, claimer, amount, cause)));
+    }
+
+    /**
+     * Pays out a bounty that was just claimed, putting it back if that fails.
+     */
+    private CompletableFuture<Result> payOut(User target, UUID claimer, int amount, Object... cause) {
+	if (amount <= 0) {
+	    return CompletableFuture.completedFuture(new Result(Status.NO_BOUNTY, 0, 0));
+	}
+	BigDecimal money = BigDecimal.valueOf(amount);
+	return CompletableFuture.supplyAsync(() -> deposit(claimer, money, cause), asyncExecutor)
+		.thenApplyAsync(paid -> {
+		    if (paid) {
+			return new Result(Status.SUCCESS, amount, 0);
+		    }
+		    int bounty = data.addBounty(target, amount);
+		    if (bounty < 0) {
+			logger.error("Could not pay out or restore a bounty of " + amount + " on " + target.getName()
+				+ ".");
+		    }
+		    return new Result(Status.FAILED, amount, Math.max(0, bounty));
+		}, dataExecutor);
+    }
+
+    /**
+     * Hands a result made off the server thread back to it, so callers can always
+     * report it from there.
+     */
+    private CompletableFuture<Result> complete(CompletableFuture<Result> result) {
+	return dataExecutor == syncExecutor ? result : result.thenApplyAsync(done -> done, syncExecutor);
+    }
+
+    private Status withdraw(UUID player, BigDecimal amount, Object... cause) {
+	long start = System.nanoTime();
+	try {
+	    Status status = backend.withdraw(player, amount, cause);
+	    if (status == Status.FAILED) {
+		logger.error("The economy refused to withdraw " + amount + " from " + player + ".");
+	    }
+	    return status;
+	} catch (Exception e) {
+	    logger.error("Error while withdrawing " + amount + " from " + player + ".", e);
+	    return Status.FAILED;
+	} finally {
+	    long nanos = withdrawLatency.recordSince(start);
+	    if (logger.isDebugEnabled()) {
+		logger.debug("Withdrawing " + amount + " from " + player + " took " + nanos / 1000 + "us.");
+	    }
+	}
+    }
+
+    private boolean deposit(UUID player, BigDecimal amount, Object... cause) {
+	long start = System.nanoTime();
+	try {
+	    return backend.deposit(player, amount, cause);
+	} catch (Exception e) {
+	    logger.error("Error while depositing " + amount + " to " + player + ".", e);
+	    return false;
+	} finally {
+	    long nanos = depositLatency.recordSince(start);
+	    if (logger.isDebugEnabled()) {
+		logger.debug("Depositing " + amount + " to " + player + " took " + nanos / 1000 + "us.");
+	    }
+	}
+    }
+
+    /**
+     * Pays a player off the server thread.
+     *
+     * @param player the player to pay
+     * @param amount the amount to pay
+     * @param cause  what the payment is for
+     * @return a future completed on the server thread with whether the player was
+     *         paid
+     */
+    public CompletableFuture<Boolean> pay(UUID player, int amount, Object... cause) {
+	BigDecimal money = BigDecimal.valueOf(amount);
+	return CompletableFuture.supplyAsync(() -> deposit(player, money, cause), asyncExecutor)
+		.thenApplyAsync(paid -> paid, syncExecutor);
+    }
+
+    /**
+     * Pays money back to a player off the server thread, logging it if that
+     * fails.
+     *
+     * @param player the player to pay
+     * @param amount the amount to pay back
+     * @param cause  what the payment is for
+     */
+    public void refund(UUID player, int amount, Object... cause) {
+	refund(player, BigDecimal.valueOf(amount), cause);
+    }
+
+    private void refund(UUID player, BigDecimal amount, Object... cause) {
+	CompletableFuture.supplyAsync(() -> deposit(player, amount, cause), asyncExecutor).thenAccept(paid -> {
+	    if (!paid) {
+		logger.error("Could not refund " + amount + " to " + player + ".");
+	    }
+	});
+    }
+
+    public LatencyRecorder getWithdrawLatency() {
+	return withdrawLatency;
+    }
+
+    public LatencyRecorder getDepositLatency() {
+	return depositLatency;
+    }
+}
\ No newline at end of file
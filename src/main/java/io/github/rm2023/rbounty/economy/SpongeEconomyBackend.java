@@ -0,0 +1,90 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.economy;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import org.spongepowered.api.event.cause.Cause;
+import org.spongepowered.api.event.cause.EventContext;
+import org.spongepowered.api.event.cause.EventContextKeys;
+import org.spongepowered.api.plugin.PluginContainer;
+import org.spongepowered.api.service.economy.EconomyService;
+import org.spongepowered.api.service.economy.account.UniqueAccount;
+import org.spongepowered.api.service.economy.transaction.ResultType;
+
+import io.github.rm2023.rbounty.economy.EconomyPipeline.Status;
+
+/**
+ * An {@link EconomyBackend} backed by the server's {@link EconomyService}, using
+ * its default currency.
+ */
+public class SpongeEconomyBackend implements EconomyBackend {
+    private final EconomyService economyService;
+    private final PluginContainer container;
+
+    public SpongeEconomyBackend(EconomyService economyService, PluginContainer container) {
+	this.economyService = economyService;
+	this.container = container;
+    }
+
+    @Override
+    public Status withdraw(UUID player, BigDecimal amount, Object... cause) {
+	UniqueAccount account = economyService.getOrCreateAccount(player).orElse(null);
+	if (account == null) {
+	    return Status.NO_ACCOUNT;
+	}
+	if (account.hasBalance(economyService.getDefaultCurrency())
+		&& account.getBalance(economyService.getDefaultCurrency()).compareTo(amount) < 0) {
+	    return Status.NOT_ENOUGH_MONEY;
+	}
+	ResultType result = account.withdraw(economyService.getDefaultCurrency(), amount, cause(cause)).getResult();
+	switch (result) {
+	case SUCCESS:
+	    return Status.SUCCESS;
+	case ACCOUNT_NO_FUNDS:
+	    return Status.NOT_ENOUGH_MONEY;
+	default:
+	    return Status.FAILED;
+	}
+    }
+
+    @Override
+    public boolean deposit(UUID player, BigDecimal amount, Object... cause) {
+	UniqueAccount account = economyService.getOrCreateAccount(player).orElse(null);
+	if (account == null) {
+	    return false;
+	}
+	return account.deposit(economyService.getDefaultCurrency(), amount, cause(cause))
+		.getResult() == ResultType.SUCCESS;
+    }
+
+    @Override
+    public String format(BigDecimal amount) {
+	return economyService.getDefaultCurrency().format(amount).toPlain();
+    }
+
+    private Cause cause(Object... cause) {
+	Cause.Builder builder = Cause.builder();
+	for (Object object : cause) {
+	    builder.append(object);
+	}
+	return builder.append(container)
+		.build(EventContext.builder().add(EventContextKeys.PLUGIN, container).build());
+    }
+}
\ No newline at end of file
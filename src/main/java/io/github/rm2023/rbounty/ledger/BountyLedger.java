@@ -0,0 +1,294 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+
+import io.github.rm2023.rbounty.ledger.LedgerRecord.Type;
+
+/**
+ * An append-only record of every bounty change, kept on disk so disputes can be
+ * settled and contributors refunded.
+ *
+ * Records are appended to the newest of a series of {@link LedgerSegment}s,
+ * which is sealed and indexed once it holds segmentRecords records. A player's
+ * history is read by looking them up in each segment's index and reading only
+ * their records, never by scanning the log.
+ *
+ * {@link #compact} drops records older than a cutoff from sealed segments,
+ * deleting segments that end up empty.
+ */
+public class BountyLedger implements Closeable {
+    /**
+     * A page of a player's history and how many records they have in all.
+     */
+    public static class History {
+	private final List<LedgerRecord> records;
+	private final int total;
+
+	public History(List<LedgerRecord> records, int total) {
+	    this.records = records;
+	    this.total = total;
+	}
+
+	/**
+	 * @return the records on the page, newest first
+	 */
+	public List<LedgerRecord> getRecords() {
+	    return records;
+	}
+
+	/**
+	 * @return how many records mention the player, as target or actor
+	 */
+	public int getTotal() {
+	    return total;
+	}
+    }
+
+    private final Path directory;
+    private final int segmentRecords;
+    private final Logger logger;
+
+    private final List<LedgerSegment> sealed = new ArrayList<LedgerSegment>();
+    private LedgerSegment active;
+    private long nextSequence;
+    private long failures = 0;
+
+    // Held for a whole compaction, so two never run at once
+    private final Object compactionLock = new Object();
+
+    /**
+     * @param directory      the directory the segments are kept in
+     * @param segmentRecords how many records a segment holds before a new one
+     *                       is started
+     * @param logger         the plugin logger
+     */
+    public BountyLedger(Path directory, int segmentRecords, Logger logger) {
+	this.directory = directory;
+	this.segmentRecords = Math.max(1, segmentRecords);
+	this.logger = logger;
+    }
+
+    /**
+     * Opens every segment in the directory, creating it if needed. The newest
+     * segment is appended to.
+     *
+     * @throws IOException if the segments could not be opened
+     */
+    public synchronized void open() throws IOException {
+	Files.createDirectories(directory);
+	List<Long> bases = LedgerSegment.list(directory);
+	for (int i = 0; i < bases.size() - 1; i++) {
+	    sealed.add(LedgerSegment.open(directory, bases.get(i), false));
+	}
+	long base = bases.isEmpty() ? 0 : bases.get(bases.size() - 1);
+	active = LedgerSegment.open(directory, base, true);
+	nextSequence = base + active.size();
+	logger.info("Opened bounty ledger with " + (sealed.size() + 1) + " segments.");
+    }
+
+    /**
+     * Records a bounty change made now. Errors are logged rather than thrown, so
+     * the change itself still goes through.
+     *
+     * @param type   what happened
+     * @param target the player whose bounty changed
+     * @param actor  the player who changed it, or null for the console or the
+     *               server
+     * @param amount the amount added, set, claimed or refunded
+     * @param bounty the target's bounty afterwards
+     */
+    public void record(Type type, UUID target, UUID actor, int amount, int bounty) {
+	append(new LedgerRecord(type, System.currentTimeMillis(), target, actor, amount, bounty));
+    }
+
+    /**
+     * Appends a record, starting a new segment if the current one is full.
+     * Errors are logged rather than thrown.
+     *
+     * @param record the record to append
+     */
+    public synchronized void append(LedgerRecord record) {
+	if (active == null) {
+	    return;
+	}
+	try {
+	    if (active.size() >= segmentRecords) {
+		active.seal();
+		sealed.add(active);
+		active = LedgerSegment.open(directory, nextSequence, true);
+	    }
+	    active.append(record);
+	    nextSequence++;
+	} catch (IOException e) {
+	    failures++;
+	    logger.error("Could not write to the bounty ledger.", e);
+	}
+    }
+
+    /**
+     * Reads part of a player's history, newest first, along with how many records
+     * they have, both under one lock so they agree. Only the segments' indexes
+     * and the player's own records are read.
+     *
+     * @param player the player
+     * @param start  how many of the newest records to skip
+     * @param end    the position to stop before
+     * @return the player's records in that range and their total
+     * @throws IOException if the ledger could not be read
+     */
+    public synchronized History history(UUID player, int start, int end) throws IOException {
+	List<LedgerSegment> segments = new ArrayList<LedgerSegment>(sealed);
+	if (active != null) {
+	    segments.add(active);
+	}
+	List<List<Integer>> found = new ArrayList<List<Integer>>();
+	int total = 0;
+	for (LedgerSegment segment : segments) {
+	    List<Integer> positions = segment.positions(player);
+	    found.add(positions);
+	    total += positions.size();
+	}
+	List<LedgerRecord> records = new ArrayList<LedgerRecord>();
+	int skipped = 0;
+	for (int i = segments.size() - 1; i >= 0 && skipped + records.size() < end; i--) {
+	    List<Integer> positions = found.get(i);
+	    if (skipped + positions.size() <= start) {
+		// Nothing in this segment is on the page
+		skipped += positions.size();
+		continue;
+	    }
+	    for (int j = positions.size() - 1; j >= 0 && skipped + records.size() < end; j--) {
+		if (skipped < start) {
+		    skipped++;
+		} else {
+		    records.add(segments.get(i).read(positions.get(j)));
+		}
+	    }
+	}
+	return new History(records, total);
+    }
+
+    /**
+     * Drops every record older than the cutoff from the sealed segments. The
+     * segments are rewritten without holding the ledger lock, so records can
+     * still be appended and read meanwhile. If the ledger is closed meanwhile the
+     * rewritten segment is thrown away and compaction stops.
+     *
+     * @param cutoff the time of the oldest record to keep, in epoch milliseconds
+     * @return the number of records dropped
+     * @throws IOException if a segment could not be rewritten
+     */
+    public int compact(long cutoff) throws IOException {
+	synchronized (compactionLock) {
+	    List<LedgerSegment> segments;
+	    synchronized (this) {
+		segments = new ArrayList<LedgerSegment>(sealed);
+	    }
+	    int dropped = 0;
+	    for (LedgerSegment segment : segments) {
+		if (segment.getOldestTime() >= cutoff) {
+		    // Segments are in time order, so the rest are newer still
+		    break;
+		}
+		long base = segment.getBase();
+		Path log = directory.resolve(LedgerSegment.logFile(directory, base).getFileName() + ".compact");
+		Path index = directory.resolve(LedgerSegment.indexFile(directory, base).getFileName() + ".compact");
+		int kept;
+		try {
+		    kept = segment.newestTimeBefore(cutoff) ? 0 : segment.compactTo(cutoff, log, index);
+		} catch (IOException e) {
+		    Files.deleteIfExists(log);
+		    Files.deleteIfExists(index);
+		    throw e;
+		}
+		synchronized (this) {
+		    int position = sealed.indexOf(segment);
+		    if (position < 0 || active == null) {
+			// Closed while the segment was rewritten
+			Files.deleteIfExists(log);
+			Files.deleteIfExists(index);
+			break;
+		    }
+		    segment.close();
+		    if (kept == 0) {
+			Files.deleteIfExists(log);
+			Files.deleteIfExists(index);
+			segment.delete();
+			sealed.remove(position);
+		    } else {
+			Files.move(index, LedgerSegment.indexFile(directory, base), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+			Files.move(log, LedgerSegment.logFile(directory, base), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+			sealed.set(position, LedgerSegment.open(directory, base, false));
+		    }
+		}
+		dropped += segment.size() - kept;
+	    }
+	    if (dropped > 0) {
+		logger.info("Compacted the bounty ledger, dropping " + dropped + " old records.");
+	    }
+	    return dropped;
+	}
+    }
+
+    /**
+     * @return the number of segments, including the one being written to
+     */
+    public synchronized int getSegments() {
+	return sealed.size() + (active == null ? 0 : 1);
+    }
+
+    /**
+     * @return the sequence number the next record will get, which is also the
+     *         number of records ever written
+     */
+    public synchronized long getNextSequence() {
+	return nextSequence;
+    }
+
+    /**
+     * @return how many records could not be written
+     */
+    public synchronized long getFailures() {
+	return failures;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+	for (LedgerSegment segment : sealed) {
+	    segment.close();
+	}
+	sealed.clear();
+	if (active != null) {
+	    active.close();
+	    active = null;
+	}
+    }
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.ledger;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * One entry of the {@link BountyLedger}: a change to a player's bounty, who made
+ * it and when.
+ */
+public class LedgerRecord {
+    public enum Type {
+	/** A player added to the bounty. */
+	ADD,
+	/** An admin set the bounty. */
+	SET,
+	/** A player claimed the bounty. */
+	CLAIM,
+	/** The bounty expired. */
+	EXPIRE,
+	/** A contributor to an expired bounty was paid back. */
+	REFUND
+    }
+
+    /**
+     * The size of a record on disk: type, time, target, actor, amount and bounty.
+     */
+    static final int SIZE = 1 + 8 + 16 + 16 + 4 + 4;
+
+    private final Type type;
+    private final long time;
+    private final UUID target;
+    private final UUID actor;
+    private final int amount;
+    private final int bounty;
+
+    /**
+     * @param type   what happened
+     * @param time   when it happened, in epoch milliseconds
+     * @param target the player whose bounty changed
+     * @param actor  the player who changed it, or null for the console or the
+     *               server
+     * @param amount the amount added, set, claimed or refunded
+     * @param bounty the target's bounty afterwards
+     */
+    public LedgerRecord(Type type, long time, UUID target, UUID actor, int amount, int bounty) {
+	this.type = type;
+	this.time = time;
+	this.target = target;
+	this.actor = actor;
+	this.amount = amount;
+	this.bounty = bounty;
+    }
+
+    public Type getType() {
+	return type;
+    }
+
+    public long getTime() {
+	return time;
+    }
+
+    public UUID getTarget() {
+	return target;
+    }
+
+    /**
+     * @return the player who made the change, or null for the console or the
+     *         server
+     */
+    public UUID getActor() {
+	return actor;
+    }
+
+    public int getAmount() {
+	return amount;
+    }
+
+    public int getBounty() {
+	return bounty;
+    }
+
+    void write(ByteBuffer buffer) {
+	buffer.put((byte) type.ordinal());
+	buffer.putLong(time);
+	buffer.putLong(target.getMostSignificantBits());
+	buffer.putLong(target.getLeastSignificantBits());
+	// The nil UUID stands for no actor
+	buffer.putLong(actor == null ? 0 : actor.getMostSignificantBits());
+	buffer.putLong(actor == null ? 0 : actor.getLeastSignificantBits());
+	buffer.putInt(amount);
+	buffer.putInt(bounty);
+    }
+
+    static LedgerRecord read(ByteBuffer buffer) {
+	Type type = Type.values()[buffer.get()];
+	long time = buffer.getLong();
+	UUID target = new UUID(buffer.getLong(), buffer.getLong());
+	long actorMostSigBits = buffer.getLong();
+	long actorLeastSigBits = buffer.getLong();
+	UUID actor = actorMostSigBits == 0 && actorLeastSigBits == 0 ? null
+		: new UUID(actorMostSigBits, actorLeastSigBits);
+	return new LedgerRecord(type, time, target, actor, buffer.getInt(), buffer.getInt());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,353 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A file of fixed size ledger records, named after the sequence number of its
+ * first record. Records are only ever appended, to the newest segment.
+ *
+ * Each segment has an index of the records of every player it mentions. While
+ * the segment is written to, the index is kept in memory. Once the segment is
+ * sealed, it is written next to it as entries of the two UUID longs and the
+ * record number, sorted by UUID, and found by binary search.
+ */
+class LedgerSegment implements Closeable {
+    private static final int INDEX_ENTRY_SIZE = 20;
+
+    private final long base;
+    private final Path log;
+    private final Path index;
+    private final FileChannel channel;
+    private FileChannel indexChannel;
+    private int records;
+
+    // The index of a segment that is still being written to, or null once sealed
+    private Map<UUID, List<Integer>> activeIndex;
+
+    private LedgerSegment(long base, Path log, Path index, FileChannel channel) {
+	this.base = base;
+	this.log = log;
+	this.index = index;
+	this.channel = channel;
+    }
+
+    static Path logFile(Path directory, long base) {
+	return directory.resolve(String.format("%020d.log", base));
+    }
+
+    static Path indexFile(Path directory, long base) {
+	return directory.resolve(String.format("%020d.idx", base));
+    }
+
+    /**
+     * Opens a segment, creating it if it doesn't exist. A record cut off by a
+     * crash is dropped. A sealed segment whose index is missing is indexed again.
+     *
+     * @param directory the ledger directory
+     * @param base      the sequence number of the segment's first record
+     * @param active    whether records will be appended to the segment
+     */
+    static LedgerSegment open(Path directory, long base, boolean active) throws IOException {
+	Path log = logFile(directory, base);
+	Path index = indexFile(directory, base);
+	FileChannel channel = active
+		? FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+		: FileChannel.open(log, StandardOpenOption.READ);
+	LedgerSegment segment = new LedgerSegment(base, log, index, channel);
+	try {
+	    segment.records = (int) (channel.size() / LedgerRecord.SIZE);
+	    if (active) {
+		channel.truncate((long) segment.records * LedgerRecord.SIZE);
+		channel.position(channel.size());
+		segment.activeIndex = segment.scan();
+	    } else {
+		if (!Files.exists(index)) {
+		    writeIndex(index, segment.scan());
+		}
+		segment.indexChannel = FileChannel.open(index, StandardOpenOption.READ);
+	    }
+	} catch (IOException | RuntimeException e) {
+	    segment.close();
+	    throw e;
+	}
+	return segment;
+    }
+
+    /**
+     * Reads every record to build the index of the segment.
+     */
+    private Map<UUID, List<Integer>> scan() throws IOException {
+	Map<UUID, List<Integer>> players = new HashMap<UUID, List<Integer>>();
+	for (int record = 0; record < records; record++) {
+	    addToIndex(players, read(record), record);
+	}
+	return players;
+    }
+
+    private static void addToIndex(Map<UUID, List<Integer>> players, LedgerRecord record, int position) {
+	players.computeIfAbsent(record.getTarget(), uuid -> new ArrayList<Integer>()).add(position);
+	if (record.getActor() != null && !record.getActor().equals(record.getTarget())) {
+	    players.computeIfAbsent(record.getActor(), uuid -> new ArrayList<Integer>()).add(position);
+	}
+    }
+
+    private static void writeIndex(Path index, Map<UUID, List<Integer>> players) throws IOException {
+	List<UUID> sorted = new ArrayList<UUID>(players.keySet());
+	sorted.sort(LedgerSegment::compare);
+	int entries = 0;
+	for (List<Integer> positions : players.values()) {
+	    entries += positions.size();
+	}
+	ByteBuffer buffer = ByteBuffer.allocate(entries * INDEX_ENTRY_SIZE);
+	for (UUID uuid : sorted) {
+	    for (int position : players.get(uuid)) {
+		buffer.putLong(uuid.getMostSignificantBits());
+		buffer.putLong(uuid.getLeastSignificantBits());
+		buffer.putInt(position);
+	    }
+	}
+	buffer.flip();
+	Path temp = index.resolveSibling(index.getFileName() + ".tmp");
+	try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+		StandardOpenOption.TRUNCATE_EXISTING)) {
+	    while (buffer.hasRemaining()) {
+		out.write(buffer);
+	    }
+	    out.force(true);
+	}
+	Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING,
+		StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Orders UUIDs by their bits, the order of the index entries.
+     */
+    private static int compare(UUID a, UUID b) {
+	int compare = Long.compare(a.getMostSignificantBits(), b.getMostSignificantBits());
+	return compare != 0 ? compare : Long.compare(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
+    long getBase() {
+	return base;
+    }
+
+    int size() {
+	return records;
+    }
+
+    boolean isSealed() {
+	return activeIndex == null;
+    }
+
+    /**
+     * Appends a record. Only for the active segment.
+     */
+    void append(LedgerRecord record) throws IOException {
+	ByteBuffer buffer = ByteBuffer.allocate(LedgerRecord.SIZE);
+	record.write(buffer);
+	buffer.flip();
+	while (buffer.hasRemaining()) {
+	    channel.write(buffer);
+	}
+	addToIndex(activeIndex, record, records);
+	records++;
+    }
+
+    /**
+     * Writes the index of the active segment to disk, after which no more records
+     * can be appended.
+     */
+    void seal() throws IOException {
+	channel.force(true);
+	writeIndex(index, activeIndex);
+	indexChannel = FileChannel.open(index, StandardOpenOption.READ);
+	activeIndex = null;
+    }
+
+    /**
+     * Reads the record at a position of the segment.
+     */
+    LedgerRecord read(int record) throws IOException {
+	ByteBuffer buffer = ByteBuffer.allocate(LedgerRecord.SIZE);
+	long position = (long) record * LedgerRecord.SIZE;
+	while (buffer.hasRemaining()) {
+	    if (channel.read(buffer, position + buffer.position()) < 0) {
+		throw new IOException("Ledger segment " + log.getFileName() + " ended early.");
+	    }
+	}
+	buffer.flip();
+	try {
+	    return LedgerRecord.read(buffer);
+	} catch (ArrayIndexOutOfBoundsException e) {
+	    throw new IOException("Ledger segment " + log.getFileName() + " is corrupt at record " + record + ".", e);
+	}
+    }
+
+    /**
+     * @return the positions of every record mentioning the player, oldest first
+     */
+    List<Integer> positions(UUID uuid) throws IOException {
+	if (activeIndex != null) {
+	    List<Integer> positions = activeIndex.get(uuid);
+	    return positions == null ? new ArrayList<Integer>() : new ArrayList<Integer>(positions);
+	}
+	long entries = indexChannel.size() / INDEX_ENTRY_SIZE;
+	long low = 0;
+	long high = entries;
+	// Find the first entry for the player
+	while (low < high) {
+	    long middle = (low + high) >>> 1;
+	    if (compare(readIndexUuid(middle), uuid) < 0) {
+		low = middle + 1;
+	    } else {
+		high = middle;
+	    }
+	}
+	List<Integer> positions = new ArrayList<Integer>();
+	ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+	for (long entry = low; entry < entries; entry++) {
+	    buffer.clear();
+	    readIndex(buffer, entry);
+	    if (buffer.getLong() != uuid.getMostSignificantBits()
+		    || buffer.getLong() != uuid.getLeastSignificantBits()) {
+		break;
+	    }
+	    positions.add(buffer.getInt());
+	}
+	return positions;
+    }
+
+    private UUID readIndexUuid(long entry) throws IOException {
+	ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+	readIndex(buffer, entry);
+	return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private void readIndex(ByteBuffer buffer, long entry) throws IOException {
+	long position = entry * INDEX_ENTRY_SIZE;
+	while (buffer.hasRemaining()) {
+	    if (indexChannel.read(buffer, position + buffer.position()) < 0) {
+		throw new IOException("Ledger index " + index.getFileName() + " ended early.");
+	    }
+	}
+	buffer.flip();
+    }
+
+    /**
+     * Writes the records of this sealed segment made at or after the cutoff to a
+     * new segment file and index next to it, to replace this one with
+     * {@link #replace}.
+     *
+     * @param cutoff the time of the oldest record to keep, in epoch milliseconds
+     * @return the number of records kept
+     */
+    int compactTo(long cutoff, Path log, Path index) throws IOException {
+	Map<UUID, List<Integer>> players = new HashMap<UUID, List<Integer>>();
+	int kept = 0;
+	try (FileChannel out = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+		StandardOpenOption.TRUNCATE_EXISTING)) {
+	    ByteBuffer buffer = ByteBuffer.allocate(LedgerRecord.SIZE);
+	    for (int position = 0; position < records; position++) {
+		LedgerRecord record = read(position);
+		if (record.getTime() < cutoff) {
+		    continue;
+		}
+		buffer.clear();
+		record.write(buffer);
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+		    out.write(buffer);
+		}
+		addToIndex(players, record, kept++);
+	    }
+	    out.force(true);
+	}
+	writeIndex(index, players);
+	return kept;
+    }
+
+    /**
+     * Deletes the segment's files. The segment must be closed first.
+     */
+    void delete() throws IOException {
+	Files.deleteIfExists(log);
+	Files.deleteIfExists(index);
+    }
+
+    /**
+     * @return whether every record of the segment is older than the cutoff
+     */
+    boolean newestTimeBefore(long cutoff) throws IOException {
+	return records == 0 || read(records - 1).getTime() < cutoff;
+    }
+
+    /**
+     * @return the time of the oldest record, or 0 if the segment is empty
+     */
+    long getOldestTime() throws IOException {
+	return records == 0 ? 0 : read(0).getTime();
+    }
+
+    @Override
+    public void close() throws IOException {
+	try {
+	    if (activeIndex != null) {
+		channel.force(true);
+	    }
+	    channel.close();
+	} finally {
+	    if (indexChannel != null) {
+		indexChannel.close();
+	    }
+	}
+    }
+
+    /**
+     * @return the bases of every segment in the directory, oldest first
+     */
+    static List<Long> list(Path directory) throws IOException {
+	List<Long> bases = new ArrayList<Long>();
+	try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.log")) {
+	    for (Path file : files) {
+		String name = file.getFileName().toString();
+		try {
+		    bases.add(Long.parseLong(name.substring(0, name.length() - 4)));
+		} catch (NumberFormatException e) {
+		    // Not a segment
+		}
+	    }
+	}
+	bases.sort(null);
+	return bases;
+    }
+}
\ No newline at end of file
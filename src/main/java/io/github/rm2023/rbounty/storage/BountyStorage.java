@@ -0,0 +1,55 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.storage;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+import org.spongepowered.api.entity.living.player.User;
+
+/**
+ * Where bounties are persisted. {@link io.github.rm2023.rbounty.RBountyData}
+ * keeps every bounty in memory and only reads from storage while loading.
+ */
+public interface BountyStorage {
+    /**
+     * Reads a single user's bounty.
+     *
+     * @param user the user
+     * @return the user's bounty, or -1 if none is stored
+     */
+    int read(User user);
+
+    /**
+     * Writes a single user's bounty.
+     *
+     * @param user   the user
+     * @param bounty the new bounty
+     * @return whether it was written
+     */
+    boolean write(User user, int bounty);
+
+    /**
+     * Writes many bounties at once.
+     *
+     * @param bounties the new bounties by UUID
+     * @return the UUIDs whose bounty could not be written and should be retried
+     */
+    Collection<UUID> writeAll(Map<UUID, Integer> bounties);
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.storage;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.UUID;
+
+import io.github.rm2023.rbounty.UuidIntMap;
+
+/**
+ * A bounty storage in a database. Every bounty can be read with one query, so
+ * the cache is filled from it directly instead of being hydrated one user at a
+ * time, and bounties kept elsewhere before can be copied into it while the
+ * server runs.
+ */
+public interface DatabaseBountyStorage extends BountyStorage {
+    /**
+     * Reads every stored bounty.
+     *
+     * @param into the map to read the bounties into
+     * @throws IOException if the bounties could not be read
+     */
+    void loadAll(UuidIntMap into) throws IOException;
+
+    /**
+     * @param source names the storage bounties are copied from
+     * @return whether every bounty has been copied from that storage
+     * @throws IOException if it could not be read
+     */
+    boolean isMigrated(String source) throws IOException;
+
+    /**
+     * @param source names the storage bounties are copied from
+     * @return the users whose bounty was already copied from that storage, by a
+     *         copy that didn't finish
+     * @throws IOException if they could not be read
+     */
+    Set<UUID> getMigrated(String source) throws IOException;
+
+    /**
+     * Atomically adds a bounty copied from another storage to a user's stored
+     * bounty, marking the user as copied in the same transaction, so a copy cut
+     * short by a crash never adds a bounty twice.
+     *
+     * @param source names the storage the bounty is copied from
+     * @param uuid   the user's UUID
+     * @param amount the copied bounty
+     * @return the user's new stored bounty, or -1 if it could not be written, was
+     *         copied before or would overflow
+     */
+    int migrate(String source, UUID uuid, int amount);
+
+    /**
+     * Marks every bounty of a storage as copied, so they are never copied again.
+     *
+     * @param source names the storage bounties were copied from
+     * @throws IOException if it could not be written
+     */
+    void finishMigration(String source) throws IOException;
+}
\ No newline at end of file
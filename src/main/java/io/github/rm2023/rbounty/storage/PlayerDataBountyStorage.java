@@ -0,0 +1,115 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.storage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.spongepowered.api.data.DataTransactionResult;
+import org.spongepowered.api.entity.living.player.User;
+import org.spongepowered.api.profile.GameProfile;
+import org.spongepowered.api.service.user.UserStorageService;
+
+import io.github.rm2023.rbounty.RBountyPlugin;
+import io.github.rm2023.rbounty.data.BountyData;
+
+/**
+ * Stores bounties as custom data on each user's playerdata. Playerdata can only
+ * be read one user at a time and must be written on the main thread.
+ */
+public class PlayerDataBountyStorage implements BountyStorage {
+    private final UserStorageService userStorage;
+    private final Logger logger;
+    private final boolean sparse;
+
+    /**
+     * @param userStorage the user storage
+     * @param logger      the plugin logger
+     * @param sparse      whether bounties of 0 are removed instead of stored
+     */
+    public PlayerDataBountyStorage(UserStorageService userStorage, Logger logger, boolean sparse) {
+	this.userStorage = userStorage;
+	this.logger = logger;
+	this.sparse = sparse;
+    }
+
+    @Override
+    public int read(User user) {
+	return user.get(RBountyPlugin.BOUNTY).orElse(-1);
+    }
+
+    @Override
+    public boolean write(User user, int bounty) {
+	DataTransactionResult result;
+	if (sparse && bounty == 0) {
+	    if (!user.get(RBountyPlugin.BOUNTY).isPresent()) {
+		result = DataTransactionResult.successNoData();
+	    } else {
+		result = user.remove(BountyData.class);
+	    }
+	} else if (user.get(RBountyPlugin.BOUNTY).isPresent()) {
+	    result = user.offer(RBountyPlugin.BOUNTY, bounty);
+	} else {
+	    result = user.offer(new BountyData(bounty));
+	}
+	if (result.isSuccessful()) {
+	    return true;
+	}
+	logger.error(result.toString());
+	return false;
+    }
+
+    @Override
+    public Collection<UUID> writeAll(Map<UUID, Integer> bounties) {
+	List<UUID> failed = new ArrayList<UUID>();
+	for (Entry<UUID, Integer> entry : bounties.entrySet()) {
+	    User user = userStorage.get(entry.getKey()).orElse(null);
+	    if (user == null) {
+		logger.error("Dropped bounty of " + entry.getValue() + " for unknown user " + entry.getKey() + ".");
+	    } else if (!write(user, entry.getValue())) {
+		failed.add(entry.getKey());
+	    }
+	}
+	return failed;
+    }
+
+    /**
+     * Removes a user's bounty data from their playerdata if it holds a bounty of
+     * 0. In sparse mode that is the same as having no data at all.
+     *
+     * @param userProfile the profile of the user to strip
+     * @return whether bounty data was removed
+     */
+    public boolean stripZeroBounty(GameProfile userProfile) {
+	User user = userStorage.get(userProfile).orElse(null);
+	if (user == null || user.get(RBountyPlugin.BOUNTY).orElse(-1) != 0) {
+	    return false;
+	}
+	DataTransactionResult result = user.remove(BountyData.class);
+	if (!result.isSuccessful()) {
+	    logger.error("Error while removing bounty data for " + user.getName() + ": " + result);
+	    return false;
+	}
+	return true;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.storage;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import io.github.rm2023.rbounty.UuidIntMap;
+
+/**
+ * A bounty storage that several servers can use at once. Every change is
+ * numbered from one sequence shared by all servers, so each server can pick up
+ * the changes made by the others through {@link #poll}.
+ *
+ * Changes that depend on the current bounty are made by the storage itself,
+ * since another server may have changed it since it was cached.
+ */
+public interface SharedBountyStorage extends BountyStorage {
+    /**
+     * @return whether other servers use this storage too, so changes must be made
+     *         through {@link #add} and {@link #claim} and picked up with
+     *         {@link #poll}
+     */
+    boolean isShared();
+
+    /**
+     * @return the sequence number of the newest change
+     * @throws IOException if it could not be read
+     */
+    long getSequence() throws IOException;
+
+    /**
+     * Atomically adds to a user's stored bounty.
+     *
+     * @param uuid   the user's UUID
+     * @param amount the amount to add
+     * @return the user's new bounty, or -1 if it could not be written or would
+     *         overflow
+     */
+    int add(UUID uuid, int amount);
+
+    /**
+     * Atomically resets a user's stored bounty to 0. Of several servers claiming
+     * the same bounty at once, only one gets it.
+     *
+     * @param uuid the user's UUID
+     * @return the claimed bounty, 0 if there was none or -1 if it could not be
+     *         written
+     */
+    int claim(UUID uuid);
+
+    /**
+     * Reads the newest bounty of every user changed after the given sequence
+     * number.
+     *
+     * @param after the sequence number of the last change already seen
+     * @param into  the map to read the changed bounties into
+     * @return the sequence number of the newest change read, or after if there
+     *         were none
+     * @throws IOException if the changes could not be read
+     */
+    long poll(long after, UuidIntMap into) throws IOException;
+}
\ No newline at end of file
@@ -0,0 +1,446 @@
+/*  RBounty: A plugin allowing the placing and claiming of player bounties.
+ *   Copyright (C) 2019 rm2023
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.rm2023.rbounty.storage;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.spongepowered.api.entity.living.player.User;
+
+import io.github.rm2023.rbounty.UuidIntMap;
+
+/**
+ * Stores bounties in a table of an embedded SQL database such as H2 or SQLite.
+ * Unlike playerdata, every bounty can be read with one query and writes are
+ * safe off the main thread, so they are sent in batches from an async task.
+ *
+ * Every write takes the next number from a one row sequence table and stamps
+ * it on the rows it writes. Updating that row locks it until the write commits,
+ * so writes from every server are serialized and committed in sequence order,
+ * and a server that has seen a change has also seen every change before it.
+ */
+public class SqlBountyStorage implements SharedBountyStorage, DatabaseBountyStorage {
+    private static final String TABLE = "rbounty_bounties";
+    private static final String SEQUENCE_TABLE = "rbounty_sequence";
+    private static final String META_TABLE = "rbounty_meta";
+    private static final String MIGRATED_TABLE = "rbounty_migrated";
+    private static final String MIGRATED = "migrated_from_";
+
+    private final DataSource dataSource;
+    private final Logger logger;
+    private final boolean sparse;
+    private final boolean shared;
+
+    /**
+     * @param dataSource the database to store bounties in
+     * @param logger     the plugin logger
+     * @param sparse     whether bounties of 0 are deleted instead of stored
+     */
+    public SqlBountyStorage(DataSource dataSource, Logger logger, boolean sparse) {
+	this(dataSource, logger, sparse, false);
+    }
+
+    /**
+     * @param dataSource the database to store bounties in
+     * @param logger     the plugin logger
+     * @param sparse     whether bounties of 0 are deleted instead of stored
+     * @param shared     whether other servers use the same database
+     */
+    public SqlBountyStorage(DataSource dataSource, Logger logger, boolean sparse, boolean shared) {
+	this.dataSource = dataSource;
+	this.logger = logger;
+	// Other servers can't poll a deleted row, so shared bounties of 0 are kept
+	this.sparse = sparse && !shared;
+	this.shared = shared;
+    }
+
+    /**
+     * Creates the tables and the index on bounties if they don't exist yet.
+     *
+     * @throws SQLException if the schema could not be created
+     */
+    public void createSchema() throws SQLException {
+	try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+	    statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLE
+		    + " (uuid CHAR(36) NOT NULL PRIMARY KEY, bounty INT NOT NULL, seq BIGINT NOT NULL)");
+	    statement.executeUpdate("CREATE INDEX IF NOT EXISTS " + TABLE + "_seq ON " + TABLE + " (seq)");
+	    statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + SEQUENCE_TABLE
+		    + " (id INT NOT NULL PRIMARY KEY, seq BIGINT NOT NULL)");
+	    statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + META_TABLE
+		    + " (name VARCHAR(64) NOT NULL PRIMARY KEY, val VARCHAR(255))");
+	    statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + MIGRATED_TABLE
+		    + " (source VARCHAR(64) NOT NULL, uuid CHAR(36) NOT NULL, PRIMARY KEY (source, uuid))");
+	}
+	if (readSequence() < 0) {
+	    try (Connection connection = dataSource.getConnection();
+		    Statement statement = connection.createStatement()) {
+		statement.executeUpdate("INSERT INTO " + SEQUENCE_TABLE + " (id, seq) VALUES (0, 0)");
+	    } catch (SQLException e) {
+		// Another server may have created it first
+		if (readSequence() < 0) {
+		    throw e;
+		}
+	    }
+	}
+    }
+
+    @Override
+    public void loadAll(UuidIntMap into) throws IOException {
+	try (Connection connection = dataSource.getConnection();
+		Statement statement = connection.createStatement();
+		ResultSet results = statement.executeQuery("SELECT uuid, bounty FROM " + TABLE)) {
+	    while (results.next()) {
+		into.put(UUID.fromString(results.getString(1)), results.getInt(2));
+	    }
+	} catch (SQLException | IllegalArgumentException e) {
+	    throw new IOException("Could not read bounties from the database.", e);
+	}
+    }
+
+    @Override
+    public int read(User user) {
+	try (Connection connection = dataSource.getConnection();
+		PreparedStatement statement = connection
+			.prepareStatement("SELECT bounty FROM " + TABLE + " WHERE uuid = ?")) {
+	    statement.setString(1, user.getUniqueId().toString());
+	    try (ResultSet results = statement.executeQuery()) {
+		return results.next() ? results.getInt(1) : -1;
+	    }
+	} catch (SQLException e) {
+	    logger.error("Error while reading bounty for " + user.getName() + ".", e);
+	    return -1;
+	}
+    }
+
+    @Override
+    public boolean isMigrated(String source) throws IOException {
+	try {
+	    return getMeta(MIGRATED + source) != null;
+	} catch (SQLException e) {
+	    throw new IOException("Could not read whether bounties were copied from " + source + ".", e);
+	}
+    }
+
+    @Override
+    public Set<UUID> getMigrated(String source) throws IOException {
+	Set<UUID> migrated = new HashSet<UUID>();
+	try (Connection connection = dataSource.getConnection();
+		PreparedStatement statement = connection
+			.prepareStatement("SELECT uuid FROM " + MIGRATED_TABLE + " WHERE source = ?")) {
+	    statement.setString(1, source);
+	    try (ResultSet results = statement.executeQuery()) {
+		while (results.next()) {
+		    migrated.add(UUID.fromString(results.getString(1)));
+		}
+	    }
+	} catch (SQLException | IllegalArgumentException e) {
+	    throw new IOException("Could not read the bounties copied from " + source + ".", e);
+	}
+	return migrated;
+    }
+
+    @Override
+    public int migrate(String source, UUID uuid, int amount) {
+	try {
+	    return inTransaction(connection -> {
+		// Fails on the primary key if the bounty was copied before
+		try (PreparedStatement insert = connection
+			.prepareStatement("INSERT INTO " + MIGRATED_TABLE + " (source, uuid) VALUES (?, ?)")) {
+		    insert.setString(1, source);
+		    insert.setString(2, uuid.toString());
+		    insert.executeUpdate();
+		}
+		long sequence = nextSequence(connection);
+		int current = Math.max(0, readBounty(connection, uuid));
+		if (amount > Integer.MAX_VALUE - current) {
+		    throw new SQLException("The bounty would overflow.");
+		}
+		writeRow(connection, uuid, current + amount, sequence);
+		return current + amount;
+	    });
+	} catch (SQLException e) {
+	    logger.error("Error while copying the bounty of " + uuid + " from " + source + ".", e);
+	    return -1;
+	}
+    }
+
+    @Override
+    public void finishMigration(String source) throws IOException {
+	try {
+	    setMeta(MIGRATED + source, Long.toString(System.currentTimeMillis()));
+	} catch (SQLException e) {
+	    throw new IOException("Could not mark the bounties copied from " + source + ".", e);
+	}
+    }
+
+    @Override
+    public boolean isShared() {
+	return shared;
+    }
+
+    @Override
+    public long getSequence() throws IOException {
+	try {
+	    return Math.max(0, readSequence());
+	} catch (SQLException e) {
+	    throw new IOException("Could not read the bounty sequence.", e);
+	}
+    }
+
+    @Override
+    public int add(UUID uuid, int amount) {
+	try {
+	    return inTransaction(connection -> {
+		long sequence = nextSequence(connection);
+		int current = Math.max(0, readBounty(connection, uuid));
+		if (amount > Integer.MAX_VALUE - current) {
+		    return -1;
+		}
+		writeRow(connection, uuid, current + amount, sequence);
+		return current + amount;
+	    });
+	} catch (SQLException e) {
+	    logger.error("Error while adding to the bounty of " + uuid + ".", e);
+	    return -1;
+	}
+    }
+
+    @Override
+    public int claim(UUID uuid) {
+	try {
+	    return inTransaction(connection -> {
+		long sequence = nextSequence(connection);
+		int current = readBounty(connection, uuid);
+		if (current <= 0) {
+		    return 0;
+		}
+		writeRow(connection, uuid, 0, sequence);
+		return current;
+	    });
+	} catch (SQLException e) {
+	    logger.error("Error while claiming the bounty of " + uuid + ".", e);
+	    return -1;
+	}
+    }
+
+    @Override
+    public long poll(long after, UuidIntMap into) throws IOException {
+	long newest = after;
+	try (Connection connection = dataSource.getConnection();
+		PreparedStatement statement = connection
+			.prepareStatement("SELECT uuid, bounty, seq FROM " + TABLE + " WHERE seq > ? ORDER BY seq")) {
+	    statement.setLong(1, after);
+	    try (ResultSet results = statement.executeQuery()) {
+		while (results.next()) {
+		    into.put(UUID.fromString(results.getString(1)), results.getInt(2));
+		    newest = Math.max(newest, results.getLong(3));
+		}
+	    }
+	} catch (SQLException | IllegalArgumentException e) {
+	    throw new IOException("Could not read bounty changes from the database.", e);
+	}
+	return newest;
+    }
+
+    @Override
+    public boolean write(User user, int bounty) {
+	return writeAll(Collections.singletonMap(user.getUniqueId(), bounty)).isEmpty();
+    }
+
+    @Override
+    public Collection<UUID> writeAll(Map<UUID, Integer> bounties) {
+	try {
+	    writeBatch(bounties);
+	    return Collections.emptyList();
+	} catch (SQLException e) {
+	    logger.error("Error while writing " + bounties.size() + " bounties to the database.", e);
+	    return new ArrayList<UUID>(bounties.keySet());
+	}
+    }
+
+    /**
+     * Writes bounties in one transaction. Each row is deleted and inserted again
+     * rather than upserted, since H2 and SQLite don't share an upsert syntax.
+     *
+     * @return the number of bounties written
+     */
+    private int writeBatch(Map<UUID, Integer> bounties) throws SQLException {
+	if (bounties.isEmpty()) {
+	    return 0;
+	}
+	return inTransaction(connection -> {
+	    long sequence = nextSequence(connection);
+	    try (PreparedStatement delete = connection.prepareStatement("DELETE FROM " + TABLE + " WHERE uuid = ?");
+		    PreparedStatement insert = connection
+			    .prepareStatement("INSERT INTO " + TABLE + " (uuid, bounty, seq) VALUES (?, ?, ?)")) {
+		boolean inserts = false;
+		for (Entry<UUID, Integer> entry : bounties.entrySet()) {
+		    String uuid = entry.getKey().toString();
+		    delete.setString(1, uuid);
+		    delete.addBatch();
+		    if (!sparse || entry.getValue() != 0) {
+			insert.setString(1, uuid);
+			insert.setInt(2, entry.getValue());
+			insert.setLong(3, sequence);
+			insert.addBatch();
+			inserts = true;
+		    }
+		}
+		delete.executeBatch();
+		if (inserts) {
+		    insert.executeBatch();
+		}
+	    }
+	    return bounties.size();
+	});
+    }
+
+    /**
+     * Work done in a single transaction by {@link #inTransaction}.
+     */
+    private interface Transaction<T> {
+	T run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Runs the work in a transaction that is committed if it returns and rolled
+     * back if it throws.
+     */
+    private <T> T inTransaction(Transaction<T> transaction) throws SQLException {
+	try (Connection connection = dataSource.getConnection()) {
+	    boolean autoCommit = connection.getAutoCommit();
+	    connection.setAutoCommit(false);
+	    try {
+		T result = transaction.run(connection);
+		connection.commit();
+		return result;
+	    } catch (SQLException | RuntimeException e) {
+		connection.rollback();
+		throw e;
+	    } finally {
+		connection.setAutoCommit(autoCommit);
+	    }
+	}
+    }
+
+    /**
+     * Takes the next sequence number. The sequence row stays locked until the
+     * transaction ends, so no other write can start in between.
+     */
+    private static long nextSequence(Connection connection) throws SQLException {
+	try (Statement statement = connection.createStatement()) {
+	    statement.executeUpdate("UPDATE " + SEQUENCE_TABLE + " SET seq = seq + 1 WHERE id = 0");
+	    try (ResultSet results = statement.executeQuery("SELECT seq FROM " + SEQUENCE_TABLE + " WHERE id = 0")) {
+		if (!results.next()) {
+		    throw new SQLException("The bounty sequence is missing.");
+		}
+		return results.getLong(1);
+	    }
+	}
+    }
+
+    /**
+     * @return the newest sequence number, or -1 if the sequence doesn't exist yet
+     */
+    private long readSequence() throws SQLException {
+	try (Connection connection = dataSource.getConnection();
+		Statement statement = connection.createStatement();
+		ResultSet results = statement.executeQuery("SELECT seq FROM " + SEQUENCE_TABLE + " WHERE id = 0")) {
+	    return results.next() ? results.getLong(1) : -1;
+	}
+    }
+
+    /**
+     * @return the stored bounty, or -1 if none is stored
+     */
+    private static int readBounty(Connection connection, UUID uuid) throws SQLException {
+	try (PreparedStatement statement = connection
+		.prepareStatement("SELECT bounty FROM " + TABLE + " WHERE uuid = ?")) {
+	    statement.setString(1, uuid.toString());
+	    try (ResultSet results = statement.executeQuery()) {
+		return results.next() ? results.getInt(1) : -1;
+	    }
+	}
+    }
+
+    private void writeRow(Connection connection, UUID uuid, int bounty, long sequence) throws SQLException {
+	if (sparse && bounty == 0) {
+	    try (PreparedStatement delete = connection.prepareStatement("DELETE FROM " + TABLE + " WHERE uuid = ?")) {
+		delete.setString(1, uuid.toString());
+		delete.executeUpdate();
+	    }
+	    return;
+	}
+	try (PreparedStatement update = connection
+		.prepareStatement("UPDATE " + TABLE + " SET bounty = ?, seq = ? WHERE uuid = ?")) {
+	    update.setInt(1, bounty);
+	    update.setLong(2, sequence);
+	    update.setString(3, uuid.toString());
+	    if (update.executeUpdate() > 0) {
+		return;
+	    }
+	}
+	try (PreparedStatement insert = connection
+		.prepareStatement("INSERT INTO " + TABLE + " (uuid, bounty, seq) VALUES (?, ?, ?)")) {
+	    insert.setString(1, uuid.toString());
+	    insert.setInt(2, bounty);
+	    insert.setLong(3, sequence);
+	    insert.executeUpdate();
+	}
+    }
+
+    private String getMeta(String name) throws SQLException {
+	try (Connection connection = dataSource.getConnection();
+		PreparedStatement statement = connection
+			.prepareStatement("SELECT val FROM " + META_TABLE + " WHERE name = ?")) {
+	    statement.setString(1, name);
+	    try (ResultSet results = statement.executeQuery()) {
+		return results.next() ? results.getString(1) : null;
+	    }
+	}
+    }
+
+    private void setMeta(String name, String value) throws SQLException {
+	try (Connection connection = dataSource.getConnection();
+		PreparedStatement delete = connection
+			.prepareStatement("DELETE FROM " + META_TABLE + " WHERE name = ?");
+		PreparedStatement insert = connection
+			.prepareStatement("INSERT INTO " + META_TABLE + " (name, val) VALUES (?, ?)")) {
+	    delete.setString(1, name);
+	    delete.executeUpdate();
+	    insert.setString(1, name);
+	    insert.setString(2, value);
+	    insert.executeUpdate();
+	}
+    }
+}
\ No newline at end of file